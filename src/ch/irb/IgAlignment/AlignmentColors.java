@@ -0,0 +1,244 @@
+/*Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ *
+ * This class computes the colors of the boxes of the alignment, for each mode, and keeps them for the next alignment
+ * panels of the same tree (when the user changes the mode, the zoom or the Igs to show).
+ * The color of a box is stored as the index of the color in the PALETTE, in one byte, with the DASHED bit set if the
+ * box has a reverse or double mutation. The rows (one for each Ig) are computed in parallel.
+ */
+
+package ch.irb.IgAlignment;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import ch.irb.nodes.NodeGraph;
+import ch.irb.translation.AminoAcidProperties;
+import ch.irb.translation.MutationClassifier;
+
+public class AlignmentColors {
+    static Logger logger = Logger.getLogger(AlignmentColors.class);
+    public static final byte NO_COLOR = 0;
+    public static final byte RED = 1;
+    public static final byte GREEN = 2;
+    public static final byte LIGHT_GREY = 3;
+    public static final byte YELLOW = 4;
+    public static final byte BLUE = 5;
+    public static final byte WHITE = 6;
+    public static final byte DASHED = (byte) 0x80;
+    public static final byte COLOR_MASK = 0x7F;
+    // the colors of the indexes above
+    public static final Color[] PALETTE = {null, AlignmentPanel.redColor, AlignmentPanel.greenColor,
+            AlignmentPanel.lightGreyColor, AlignmentPanel.yellowColor, AlignmentPanel.blueColor, Color.white};
+    // the color of each amino acid in the chemistry mode
+    private static final byte[] CHEMISTRY_COLORS = new byte[128];
+
+    static {
+        AminoAcidProperties aminoAcidProperties = new AminoAcidProperties();
+        for (char aminoAcid = 0; aminoAcid < CHEMISTRY_COLORS.length; aminoAcid++) {
+            byte color = WHITE;
+            String property = aminoAcidProperties.getAminoAcidProperty(String.valueOf(aminoAcid));
+            if (property != null) {
+                if (property.equals("hydrophobic")) {
+                    color = YELLOW;
+                } else if (property.equals("hydrophilic")) {
+                    color = BLUE;
+                } else if (property.equals("charged")) {
+                    color = GREEN;
+                }
+            }
+            CHEMISTRY_COLORS[aminoAcid] = color;
+        }
+    }
+
+    private NodeGraph rootNode;
+    private ArrayList<NodeGraph> nodes = new ArrayList<NodeGraph>();
+    // for each mode, the colors of the boxes of each Ig (the UCA excepted)
+    private HashMap<Integer, HashMap<NodeGraph, byte[]>> fromModeToRows =
+            new HashMap<Integer, HashMap<NodeGraph, byte[]>>();
+
+    /*
+     * The colors are computed for these Igs, the first time a mode is displayed
+     */
+    public AlignmentColors(ArrayList<NodeGraph> nodeGraphs) {
+        for (NodeGraph node : nodeGraphs) {
+            if (node.isRoot()) {
+                rootNode = node;
+            } else {
+                nodes.add(node);
+            }
+        }
+    }
+
+    /*
+     * The colors of the boxes of an Ig in this mode. Nothing is colored in the sequences which are not mutated
+     */
+    public synchronized byte[] getColors(NodeGraph node, int mode) {
+        HashMap<NodeGraph, byte[]> rows = getRows(mode);
+        byte[] colors = rows.get(node);
+        if (colors == null) {
+            // an Ig which was not given at the beginning
+            colors = computeColors(node, mode, getSequence(rootNode, mode));
+            rows.put(node, colors);
+        }
+        return colors;
+    }
+
+    /*
+     * The UCA has a color at the positions where at least one of these Igs is mutated: grey, or the color of its
+     * amino acid in the chemistry mode
+     */
+    public byte[] getRootColors(ArrayList<NodeGraph> nodeGraphs, int mode) {
+        String rootSequence = getSequence(rootNode, mode);
+        byte[] rootColors = new byte[rootSequence.length()];
+        for (NodeGraph node : nodeGraphs) {
+            if (node.equals(rootNode)) {
+                continue;
+            }
+            byte[] colors = getColors(node, mode);
+            int length = Math.min(colors.length, rootColors.length);
+            for (int pos = 0; pos < length; pos++) {
+                if ((colors[pos] & COLOR_MASK) != NO_COLOR && rootColors[pos] == NO_COLOR) {
+                    if (mode == 2) {
+                        rootColors[pos] = getChemistryColor(rootSequence.charAt(pos));
+                    } else {
+                        rootColors[pos] = LIGHT_GREY;
+                    }
+                }
+            }
+        }
+        return rootColors;
+    }
+
+    /*
+     * The rows of all the Igs are computed once for each mode, by several threads
+     */
+    private HashMap<NodeGraph, byte[]> getRows(final int mode) {
+        HashMap<NodeGraph, byte[]> rows = fromModeToRows.get(mode);
+        if (rows != null) {
+            return rows;
+        }
+        rows = new HashMap<NodeGraph, byte[]>();
+        final String rootSequence = getSequence(rootNode, mode);
+        int threadsNumber = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), nodes.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadsNumber);
+        try {
+            ArrayList<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for (final NodeGraph node : nodes) {
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    public byte[] call() {
+                        return computeColors(node, mode, rootSequence);
+                    }
+                }));
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                rows.put(nodes.get(i), futures.get(i).get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            // we compute the colors in this thread
+            for (NodeGraph node : nodes) {
+                rows.put(node, computeColors(node, mode, rootSequence));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        fromModeToRows.put(mode, rows);
+        return rows;
+    }
+
+    /*
+     * The colors depend on the mode the user chose. We compare each Ig with the UCA, like the IMGT output web site:
+     * nucleotide mode: green for the silent mutations, red for the others, and dashes for the reverse/double
+     * mutations; amino acid by chemistry mode: 1 color for each AA group (hydrophobic, hydrophilic, charged); amino
+     * acid by highlighting mode: the mutations in red
+     */
+    private byte[] computeColors(NodeGraph node, int mode, String rootSequence) {
+        String sequence = getSequence(node, mode);
+        byte[] colors = new byte[sequence.length()];
+        byte[] mutationClasses = null;
+        if (mode == 1) {
+            mutationClasses = MutationClassifier.classify(rootNode.getPackedSequence(), node.getPackedSequence())
+                    .getClasses();
+        }
+        int length = Math.min(sequence.length(), rootSequence.length());
+        for (int pos = 0; pos < length; pos++) {
+            char box = sequence.charAt(pos);
+            if (box == rootSequence.charAt(pos)) {
+                continue;
+            }
+            if (mode == 1) {
+                colors[pos] = MutationClassifier.isReplacement(mutationClasses[pos]) ? RED : GREEN;
+            } else if (mode == 2) {
+                colors[pos] = getChemistryColor(box);
+            } else if (mode == 3) {
+                colors[pos] = RED;
+            }
+        }
+        if (mode == 1) {// we check also the double/reverse mutation
+            setDashes(colors, node.getReverseInformation(), " // Reverse at position ");
+            setDashes(colors, node.getDoubleMutationInformation(), " // Double Mutation at position ");
+        }
+        return colors;
+    }
+
+    /*
+     * The information is like " // Reverse at position 81:..." for each mutation
+     */
+    private static void setDashes(byte[] colors, String information, String separator) {
+        if (information == null) {
+            return;
+        }
+        String[] mutations = information.split(separator);
+        for (int i = 1; i < mutations.length; i++) {
+            int position = Integer.parseInt(mutations[i].split(":")[0].trim());
+            if (position >= 0 && position < colors.length) {
+                colors[position] |= DASHED;
+            }
+        }
+    }
+
+    private static String getSequence(NodeGraph node, int mode) {
+        if (mode == 1) {
+            return node.getSequence();
+        }
+        return node.getProteinSequence();
+    }
+
+    private static byte getChemistryColor(char aminoAcid) {
+        if (aminoAcid < CHEMISTRY_COLORS.length) {
+            return CHEMISTRY_COLORS[aminoAcid];
+        }
+        return WHITE;
+    }
+
+    /*
+     * The color of a box as a Color, null if the box has no color
+     */
+    public static Color getColor(byte box) {
+        return PALETTE[box & COLOR_MASK];
+    }
+
+    public static boolean isDashed(byte box) {
+        return (box & DASHED) != 0;
+    }
+}
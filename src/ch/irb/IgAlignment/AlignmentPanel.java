@@ -21,45 +21,43 @@
 
 package ch.irb.IgAlignment;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.FlowLayout;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.GridBagConstraints;
-import java.awt.GridBagLayout;
-import java.awt.GridLayout;
-import java.awt.Insets;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.TreeMap;
 
-import javax.swing.BorderFactory;
-import javax.swing.JButton;
-import javax.swing.JCheckBoxMenuItem;
-import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.border.Border;
+import javax.swing.JScrollPane;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
 
 import org.apache.log4j.Logger;
 
 import ch.irb.IgGenealogicTreeViewer.SetImgtInfo;
 import ch.irb.kabat.ProcessKabatNumbering;
 import ch.irb.nodes.NodeGraph;
-import ch.irb.translation.AminoAcidProperties;
-import ch.irb.translation.Codon;
-import ch.irb.translation.Translator;
+import ch.irb.saveImages.DrawingCanvas;
+import ch.irb.saveImages.Graphics2DCanvas;
+import ch.irb.saveImages.JPanelToExport;
 
 @SuppressWarnings("serial")
-public class AlignmentPanel extends JPanel {
+public class AlignmentPanel extends JPanel implements Scrollable, JPanelToExport {
     static Logger logger = Logger.getLogger(AlignmentPanel.class);
-    static AminoAcidProperties aminoAcidProperties = new AminoAcidProperties();
     static Color redColor = new Color(255, 159, 159);
     static Color pinkColor = new Color(255, 191, 191);
     static Color cyanColor = new Color(223, 255, 255);
@@ -67,47 +65,76 @@ public class AlignmentPanel extends JPanel {
     static Color greenColor = new Color(179, 255, 179);
     static Color yellowColor = new Color(255, 255, 138);
     static Color lightGreyColor = new Color(211, 211, 211);
-    static String OS = System.getProperty("os.name").toLowerCase();
-    static RegionBorder regionBorder = new RegionBorder();
-    static Border whiteBorder = new WhiteBorder();
-    static Border compound = BorderFactory.createCompoundBorder(regionBorder,
-            BorderFactory.createLineBorder(Color.white));
+    static final int REGIONS_HEIGHT = 60;
+    static final int POSITIONS_HEIGHT = 58;
+    static final int CHECKS_HEIGHT = 18;
+    static final int CHECK_SIZE = 11;
+    static final int MAX_VIEWPORT_WIDTH = 1200;
+    static final int MAX_VIEWPORT_HEIGHT = 800;
+    static BasicStroke plain = new BasicStroke(1);
+    static BasicStroke dashed = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[] {3, 3},
+            0);
     private Font fontId;
     private Font fontId2;
     private Font regionFontZoomIn = new Font("Arial", Font.BOLD, 35); // was 27
     private Font regionFontZoomOut = new Font("Arial", Font.BOLD, 22); // was 16
     private Font regionFontZoomIn_forVL = new Font("Arial", Font.BOLD, 18);
     private Font regionFontZoomOut_forVL = new Font("Arial", Font.BOLD, 12);
-    private GridBagConstraints c = new GridBagConstraints();
+    private Font positionFont = new Font("Courier", Font.BOLD, 18);
     private ArrayList<NodeGraph> allNodeGraphs = new ArrayList<NodeGraph>();
     private NodeGraph rootNode = null;
     private ArrayList<NodeGraph> isNodeACluster = new ArrayList<NodeGraph>();
     private ArrayList<NodeGraph> orderedNodeGraphs = new ArrayList<NodeGraph>();
-    private HashMap<NodeGraph, TreeMap<Integer, Color>> fromNodeIndexesToColor = new HashMap<NodeGraph, TreeMap<Integer, Color>>();
-    private HashMap<NodeGraph, ArrayList<Integer>> fromNodeIndexesToDashes = new HashMap<NodeGraph, ArrayList<Integer>>();
+    private AlignmentColors alignmentColors;
     private int mode = 1; // 1 is nucleotide mode, 2 is AA by chemistry,
     //3 is AA by highlighting
     private boolean zoomMode = true; // only in zoom mode the user can
     // select/deselect columns
     private int boxesNumber = 0;
-    private CheckColumnsPanel checkColumnPanel = null;
     private TreeMap<Integer, Boolean> selectedColumns = new TreeMap<Integer, Boolean>();
-    private AlignmentPanel alignmentPanel = this;
-    private AllSequencesPanel sequencesPanel;
-    private PositionsPanel positionsPanel = null;
     private SequencesIdPanel sequenceIdPanel = null;
-    private CdrFrPanel cdrFrPanel = null;
+    private ColumnsHeaderPanel columnsHeaderPanel = null;
     private SetImgtInfo setImgtInfo = null;
     private TreeMap<Integer, String> positionToCdrFrRegions = new TreeMap<Integer, String>();
     private HashMap<String, ArrayList<Integer>> fromRegionToColumns = new HashMap<String, ArrayList<Integer>>();
     private ArrayList<Integer> indexWithRegionBorder = new ArrayList<>();
     private HashMap<String, Boolean> regionON = new HashMap<String, Boolean>();
-    private ArrayList<JCheckBoxMenuItem> checkColumns = new ArrayList<JCheckBoxMenuItem>();
+    private ArrayList<String> regionNames = new ArrayList<String>();
+    private ArrayList<Integer> regionStarts = new ArrayList<Integer>();
     private boolean updateSequenceIdsPanel = false;
+    // what is drawn: one row for each Ig, one column for each box
+    private String[] rowIds;
+    private String[] rowToolTips;
+    private char[][] glyphs;
+    private byte[][] boxColors; // see AlignmentColors
+    private boolean[] isColumnSelected;
+    // the selection drawn by the exports, copied when the first of them starts (see getSizeToExport)
+    private boolean[] exportedColumnSelected;
+    private int exportsNumber = 0;
+    private String[] positions;
+    // the sizes in pixels, the characters are centered in the boxes with their offset
+    private int boxWidth = 0;
+    private int boxHeight = 0;
+    private int glyphBaseline = 0;
+    private int idsWidth = 0;
+    private int headerHeight = 0;
+    private int positionOffset = 0;
+    private String[] glyphStrings = new String[128];
+    private int[] glyphOffsets = new int[128];
 
     public AlignmentPanel(ArrayList<NodeGraph> allNodeGraphs, int mode, boolean zoomMode,
                           TreeMap<Integer, Boolean> selectedColumns) {
+        this(allNodeGraphs, mode, zoomMode, selectedColumns, new AlignmentColors(allNodeGraphs));
+    }
+
+    /*
+     * The colors of the boxes are shared by the alignment panels of the same tree, they are computed only the first
+     * time a mode is displayed
+     */
+    public AlignmentPanel(ArrayList<NodeGraph> allNodeGraphs, int mode, boolean zoomMode,
+                          TreeMap<Integer, Boolean> selectedColumns, AlignmentColors alignmentColors) {
         this.mode = mode;
+        this.alignmentColors = alignmentColors;
         this.zoomMode = zoomMode;
         // we set the font Id, used for the boxes and the Ig names
         if (zoomMode) {
@@ -118,7 +145,7 @@ public class AlignmentPanel extends JPanel {
             fontId2 = new Font("Arial", Font.PLAIN, 15);
         }
         this.setBackground(Color.white);
-        this.setLayout(new GridBagLayout());
+        this.setOpaque(true);
 
         this.allNodeGraphs = allNodeGraphs;
         // set the SetImgtInfo object with a node
@@ -144,11 +171,14 @@ public class AlignmentPanel extends JPanel {
             this.selectedColumns = selectedColumns;
         }
         setNodesOrder();
-        setBoxesColors();
         setRegionBorders();
-        // we initialize the sequences panel to get some variable value (like
-        // box width)
-        setComponents();
+        setBoxes();
+        setPositions();
+        setSizes();
+        updateSelectedColumns();
+        sequenceIdPanel = new SequencesIdPanel();
+        columnsHeaderPanel = new ColumnsHeaderPanel();
+        setToolTipText("");
     }
 
     /*
@@ -255,615 +285,468 @@ public class AlignmentPanel extends JPanel {
     }
 
     /*
-     * we store the color of each box, depending on the mode the user chose
+     * we store the boxes that have to show the CDR/Fr region borders, and the columns of each region
      */
-    private void setBoxesColors() {
-        TreeMap<Integer, Color> fromIndexToColorROOT = new TreeMap<Integer, Color>();
-        for (NodeGraph node : orderedNodeGraphs) {
-            // logger.info("setBox color for orederned node: "+node.getNodeId());
-            //we display if the user checked the ID
-            if (!node.equals(rootNode) && allNodeGraphs.contains(node)) {//
-                // logger.info("........setBox color for ordered node:
-                // "+node.getNodeId());
-                TreeMap<Integer, Color> fromIndexToColor = new TreeMap<Integer, Color>();
-                String sequence = node.getSequence();
-                if (mode != 1) {
-                    sequence = node.getProteinSequence();
-                }
-                int pos = 0;
-                for (char box : sequence.toCharArray()) {
-                    String rootSequence = rootNode.getSequence();
-                    if (mode != 1) {
-                        rootSequence = rootNode.getProteinSequence();
-                    }
-                    String rootBox = String.valueOf(rootSequence.charAt(pos));
-                    // logger.info("Compare box "+box+" with rootBox
-                    // "+rootBox);
-                    if (!rootBox.equals(String.valueOf(box))) { // there is a
-                        // mutation
-
-                        Color color = null;
-                        if (mode == 1) { // nucleotide mode: if mutation, grey
-                            // for UCA, red or green for the Ig,
-                            // and dashes if reverse/double mutation
-                            //logger.debug("Processing node " + node.getNodeId() + " with its parent "
-                            //		+ node.getParent().getNodeId());
-                            String nodeSequence = node.getSequence();
-                            // HERE we compare the codon with the UCA codon!!
-                            // To do like IMGT output website
-                            String codon = new Codon(nodeSequence, pos).getCodon();
-                            String codonParent = new Codon(rootSequence, pos).getCodon();
-                            Translator translator = new Translator(codon, true);
-                            String aa = translator.getProteinSequence();
-                            translator = new Translator(codonParent, true);
-                            String parentAA = translator.getProteinSequence();
-                            if (aa.equals(parentAA)) {
-                                color = greenColor;
-                            } else {
-                                color = redColor;
-                            }
-                            if (fromNodeIndexesToColor.containsKey(node)) {
-                                fromIndexToColor = fromNodeIndexesToColor.get(node);
-                            }
-                            fromIndexToColor.put(pos, color);
-                            fromNodeIndexesToColor.put(node, fromIndexToColor);
-
-                            // we put the position in grey in the UCA
-                            if (fromNodeIndexesToColor.containsKey(rootNode)) {
-                                fromIndexToColorROOT = fromNodeIndexesToColor.get(rootNode);
-                            }
-                            fromIndexToColorROOT.put(pos, lightGreyColor);
-                            fromNodeIndexesToColor.put(rootNode, fromIndexToColorROOT);
-
-                        } else if (mode == 2) {// prot mode: chemistry mode: 1
-                            // color for a AA group (hydrophobic,
-                            // hydrophilic, charged )
-                            String aminoAcid = String.valueOf(box);
-                            color = getColorByChemistryAA(aminoAcid);
-                            // logger.debug("we got a color for aa "+aminoAcid+"
-                            // is "+color);
-                            if (fromNodeIndexesToColor.containsKey(node)) {
-                                fromIndexToColor = fromNodeIndexesToColor.get(node);
-                            }
-                            fromIndexToColor.put(pos, color);
-                            fromNodeIndexesToColor.put(node, fromIndexToColor);
-
-                            // we also get the color for the UCA
-                            if (fromNodeIndexesToColor.containsKey(rootNode)) {
-                                fromIndexToColorROOT = fromNodeIndexesToColor.get(rootNode);
-                            }
-                            {
-                                color = getColorByChemistryAA(String.valueOf(rootSequence.charAt(pos)));
-                            }
-                            fromIndexToColorROOT.put(pos, color);
-                            fromNodeIndexesToColor.put(rootNode, fromIndexToColorROOT);
-
-                        } else if (mode == 3) {// prot mode, by highlighting:
-                            // grey GL , mut in red
-                            color = redColor;
-
-                            if (fromNodeIndexesToColor.containsKey(node)) {
-                                fromIndexToColor = fromNodeIndexesToColor.get(node);
-                            }
-                            fromIndexToColor.put(pos, color);
-                            fromNodeIndexesToColor.put(node, fromIndexToColor);
-
-                            // we put the position in grey in the UCA
-                            if (fromNodeIndexesToColor.containsKey(rootNode)) {
-                                fromIndexToColorROOT = fromNodeIndexesToColor.get(rootNode);
-                            }
-                            fromIndexToColorROOT.put(pos, lightGreyColor);
-                            fromNodeIndexesToColor.put(rootNode, fromIndexToColorROOT);
-                        }
-                    }
-                    pos++;
-                }
-                if (mode == 1) {// we check also the double/reverse mutation
-                    ArrayList<Integer> reverseOrDoublePositions = new ArrayList<Integer>();
-                    String revMutation = node.getReverseInformation();
-                    if (revMutation != null) {
-                        String[] revMut = revMutation.split(" // Reverse at position ");
-                        for (int i = 1; i < revMut.length; i++) {
-                            String[] muta = revMut[i].split(":");
-                            String position = muta[0];
-                            if (fromNodeIndexesToDashes.containsKey(node)) {
-                                reverseOrDoublePositions = fromNodeIndexesToDashes.get(node);
-                            }
-                            if (!reverseOrDoublePositions.contains(Integer.valueOf(position))) {
-                                reverseOrDoublePositions.add(Integer.valueOf(position));
-                            }
-                            fromNodeIndexesToDashes.put(node, reverseOrDoublePositions);
-                        }
-                    }
-                    String doubleMutation = node.getDoubleMutationInformation();
-                    if (doubleMutation != null) {
-                        String[] douMut = doubleMutation.split(" // Double Mutation at position ");
-                        for (int i = 1; i < douMut.length; i++) {
-                            String[] muta = douMut[i].split(":");
-                            String position = muta[0];
-                            if (fromNodeIndexesToDashes.containsKey(node)) {
-                                reverseOrDoublePositions = fromNodeIndexesToDashes.get(node);
-                            }
-                            if (!reverseOrDoublePositions.contains(Integer.valueOf(position))) {
-                                reverseOrDoublePositions.add(Integer.valueOf(position));
-                            }
-                            fromNodeIndexesToDashes.put(node, reverseOrDoublePositions);
-                        }
-                    }
-                }
+    private void setRegionBorders() {
+        String region = "FR1";
+        regionNames.add(region);
+        regionStarts.add(0);
+        for (int i = 0; i < boxesNumber; i++) {
+            String reg = positionToCdrFrRegions.get(i);
+            // logger.debug("For position "+i+" we have region "+reg);
+            if (!reg.equals(region)) {
+                indexWithRegionBorder.add(i);
+                region = reg;
+                regionNames.add(region);
+                regionStarts.add(i);
+            }
+        }
+        regionStarts.add(boxesNumber);
+        for (int r = 0; r < regionNames.size(); r++) {
+            ArrayList<Integer> columns = new ArrayList<Integer>();
+            for (int i = regionStarts.get(r); i < regionStarts.get(r + 1); i++) {
+                columns.add(i);
             }
+            fromRegionToColumns.put(regionNames.get(r), columns);
+            regionON.put(regionNames.get(r), Boolean.TRUE);
         }
     }
 
-    private Color getColorByChemistryAA(String aminoAcid) {
-        Color color = Color.white;
-        String property = aminoAcidProperties.getAminoAcidProperty(aminoAcid);
-        if (property != null) {
-            if (property.equals("hydrophobic")) {
-                color = yellowColor;
-            } else if (property.equals("hydrophilic")) {
-                color = blueColor;
-            } else if (property.equals("charged")) {
-                color = greenColor;
-            } else if (property.equals("deletion")) {
-                color = Color.white;
+    /*
+     * We store what is drawn in each box: the character, its color and if it has dashes (reverse/double mutation).
+     * The Ig names are written on the left, in the order we calculated previously
+     */
+    private void setBoxes() {
+        ArrayList<NodeGraph> rows = new ArrayList<NodeGraph>();
+        HashSet<NodeGraph> nodesToShow = new HashSet<NodeGraph>(allNodeGraphs);
+        for (NodeGraph node : orderedNodeGraphs) {
+            if (nodesToShow.contains(node)) {// we display if the user checked the ID
+                rows.add(node);
+            }
+        }
+        rowIds = new String[rows.size()];
+        rowToolTips = new String[rows.size()];
+        glyphs = new char[rows.size()][];
+        boxColors = new byte[rows.size()][];
+        for (int row = 0; row < rows.size(); row++) {
+            NodeGraph node = rows.get(row);
+            String id = node.getNodeId();
+            String fullNodeId = node.getNodeId();
+            if (node.hasDuplicateNodes()) {
+                for (NodeGraph dup : node.getDuplicatedNodes()) {
+                    id += ", " + dup.getNodeId();
+                    fullNodeId += "," + dup.getNodeId();
+                }
+            }
+            rowIds[row] = id;
+            rowToolTips[row] = fullNodeId;
+            String sequence = node.getSequence();
+            if (mode != 1) {
+                sequence = node.getProteinSequence();
+            }
+            byte[] colors;
+            if (node.isRoot()) {
+                colors = alignmentColors.getRootColors(rows, mode);
+            } else {
+                colors = alignmentColors.getColors(node, mode);
+            }
+            // the rows are shared with the other panels, they are never modified
+            boxColors[row] = colors;
+            glyphs[row] = new char[boxesNumber];
+            for (int index = 0; index < boxesNumber; index++) {
+                char box = index < sequence.length() ? sequence.charAt(index) : ' ';
+                boolean hasColor = index < colors.length && AlignmentColors.getColor(colors[index]) != null;
+                if (!hasColor && !node.isRoot()) {
+                    box = '.';
+                }
+                glyphs[row][index] = box;
             }
         }
-        return color;
     }
 
     /*
-     * we store the boxes that have to show the CDR/Fr region borders
+     * The positions written above the columns: the position of the nucleotide or the Kabat numbering of the AA
      */
-    private void setRegionBorders() {
-        String region = "FR1";
+    private void setPositions() {
+        TreeMap<Integer, String> fromPositionToKabatnumbering = new TreeMap<>();
+        if (mode != 1) { // AA mode
+            try {
+                // we get the kabat numbering
+                String protSeqForKabat = rootNode.getProteinSequence();
+                ProcessKabatNumbering processKabatNumbering = new ProcessKabatNumbering(protSeqForKabat);
+                fromPositionToKabatnumbering = processKabatNumbering.getFromPositionToKabatnumbering();
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this,
+                        "No Kabat numbering could be found.\n We use the default amino acid position.",
+                        "Could not connect to Abnum web site", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+        positions = new String[boxesNumber];
         for (int i = 0; i < boxesNumber; i++) {
-            String reg = positionToCdrFrRegions.get(i);
-            // logger.debug("For position "+i+" we have region "+reg);
-            if (!reg.equals(region)) {
-                // logger.debug("create a jbutton with lenght " + lenght + " for
-                // region " + region);
-                indexWithRegionBorder.add(i);
-                region = reg;
+            positions[i] = String.valueOf(i + 1);
+            if (mode != 1 && fromPositionToKabatnumbering.size() > 1) {
+                positions[i] = fromPositionToKabatnumbering.get(i);
             }
         }
     }
 
     /*
-     * this method set all the component of this panel
+     * The size of the boxes is set with the fonts, all the boxes have the same size
      */
-    private void setComponents() {
-        // we initialize first the sequencesPanel because it contains some
-        // variable used for the other panels
-        sequencesPanel = new AllSequencesPanel();
-        // we put the CDR/FR panel
-        c.fill = GridBagConstraints.HORIZONTAL;
-        c.gridx = 1;
-        c.gridy = 0;
-        c.gridheight = 1;
-        c.insets = new Insets(0, 25, 6, 10);
-        cdrFrPanel = new CdrFrPanel();
-        cdrFrPanel.setOpaque(true);
-        this.add(cdrFrPanel, c);
-        // we put the positions panel
-        c.gridy = 1;
-        c.insets = new Insets(0, 14, 0, 10);
-        positionsPanel = new PositionsPanel();
-        this.add(positionsPanel, c);
-        // we put the sequences IDs panel
-        c.gridx = 0;
-        if (zoomMode) {
-            c.gridy = 3;
-        } else {
-            c.gridy = 2;
+    private void setSizes() {
+        FontMetrics boxMetrics = getFontMetrics(fontId);
+        for (char[] row : glyphs) {
+            for (char box : row) {
+                if (box >= glyphOffsets.length) {
+                    boxWidth = Math.max(boxWidth, boxMetrics.charWidth(box));
+                } else if (glyphStrings[box] == null) {
+                    glyphStrings[box] = String.valueOf(box);
+                    boxWidth = Math.max(boxWidth, boxMetrics.charWidth(box));
+                }
+            }
         }
-        sequenceIdPanel = new SequencesIdPanel();
-        sequenceIdPanel.setOpaque(true);
-        c.insets = new Insets(0, 0, 10, 0);
-        this.add(sequenceIdPanel, c);
-
-        // we put the radio buttons panel to select/unselect columns if we are
-        // in zoom mode
+        boxWidth += 6;
+        boxHeight = boxMetrics.getHeight() + 4;
+        glyphBaseline = 2 + boxMetrics.getAscent();
+        for (int box = 0; box < glyphOffsets.length; box++) {
+            if (glyphStrings[box] != null) {
+                glyphOffsets[box] = (boxWidth - boxMetrics.charWidth(box)) / 2;
+            }
+        }
+        FontMetrics idMetrics = getFontMetrics(fontId2);
+        idsWidth = 0;
+        for (String id : rowIds) {
+            idsWidth = Math.max(idsWidth, idMetrics.stringWidth(id));
+        }
+        idsWidth += 15;
+        // the digits are written vertically, they are centered with their height
+        positionOffset = (boxWidth - getFontMetrics(positionFont).getAscent() * 3 / 4) / 2;
+        headerHeight = REGIONS_HEIGHT + POSITIONS_HEIGHT;
         if (zoomMode) {
-            checkColumnPanel = new CheckColumnsPanel();
-            c.gridx = 1;
-            c.gridy = 2;
-            c.insets = new Insets(0, 10, 0, 10);
-            checkColumnPanel.setOpaque(true);
-            this.add(checkColumnPanel, c);
-            c.gridy = 3;
-        } else {
-            c.gridy = 2;
-        }
-        // we add the sequences panel
-        c.gridx = 1;
-        c.insets = new Insets(0, 0, 10, 10);
-        sequencesPanel.setOpaque(true);
-        this.add(sequencesPanel, c);
-        revalidate();
-        repaint();
+            headerHeight += CHECKS_HEIGHT;
+        }
     }
 
     /*
-     * This panel display the Ig names the user selected (all by default) in the
-     * order we calculated previously
+     * The TreeMap of the selected columns is copied in an array, which is read for each box drawn. The array is
+     * filled before it replaces the previous one, it is never modified afterwards
      */
-    public class SequencesIdPanel extends JPanel {
-        public SequencesIdPanel() {
-            setLayout(new GridLayout(0, 1));
-            setBackground(Color.white);
-            for (NodeGraph node : orderedNodeGraphs) {
-                if (allNodeGraphs.contains(node)) {// we display if the user
-                    // checked the ID
-                    String id = node.getNodeId();
-                    // logger.debug("we display id " + id);
-                    if (node.hasDuplicateNodes()) {
-                        ArrayList<NodeGraph> dup = node.getDuplicatedNodes();
-                        for (NodeGraph du : dup) {
-                            id += ", " + du.getNodeId();
-                        }
-                    }
-                    JLabel label = new JLabel(id);
-                    label.setFont(fontId2);
-                    if (!updateSequenceIdsPanel) {
-                        Border border = BorderFactory.createLineBorder(Color.white);
-                        label.setBorder(border);
-                    }
-                    label.setPreferredSize(new Dimension((int) label.getPreferredSize().getWidth() + 5,
-                            sequencesPanel.getBoxHeight()));
-                    label.setBackground(Color.white);
-                    label.setOpaque(true);
-                    add(label);
-                }
+    private void updateSelectedColumns() {
+        boolean[] newColumnSelected = new boolean[boxesNumber];
+        int numbUnselectedColumns = 0;
+        for (int i = 0; i < boxesNumber; i++) {
+            Boolean selected = selectedColumns.get(i);
+            newColumnSelected[i] = selected != null && selected;
+            if (!newColumnSelected[i]) {
+                numbUnselectedColumns++;
             }
         }
+        isColumnSelected = newColumnSelected;
+        updateSequenceIdsPanel = numbUnselectedColumns == selectedColumns.size();
     }
 
     /*
-     * This panel display the CDR/FR regions, each region is a button that the
-     * user can select or unselect in order to show or not show the mutations
-     * below
+     * The ids of the sequences and the header of the columns (regions, positions, check boxes) stay visible when the
+     * alignment is scrolled
      */
-    public class CdrFrPanel extends JPanel {
-        public CdrFrPanel() {
-            Font regionFont = regionFontZoomIn;
-            if (!zoomMode) {
-                regionFont = regionFontZoomOut;
-            }
-            int aaCDR2 = setImgtInfo.getNumberAAForCDR2();
-            if (aaCDR2 <= 3) {
-                if (zoomMode) {
-                    regionFont = regionFontZoomIn_forVL;
-                } else {
-                    regionFont = regionFontZoomOut_forVL;
-                }
-            }
-            setBackground(Color.white);
-            FlowLayout flowLayout = new FlowLayout(FlowLayout.LEADING, 0, 2);
-            setLayout(flowLayout);
-            int toAdd = 2;
-            // logger.debug("toadd is "+toAdd);
-            if (updateSequenceIdsPanel) {
-                toAdd = 0;
-            }
-            setPreferredSize(new Dimension(
-                    boxesNumber * (sequencesPanel.getBoxWidth() + toAdd) + sequencesPanel.getBoxWidth() + 6, 60));
-            // 6 is for the region borders
-            String region = "FR1";
-            int lenght = 0;
-            ArrayList<Integer> columns = new ArrayList<Integer>();
-            int index = 0;
-            for (int i = 0; i < boxesNumber; i++) {
-                String reg = positionToCdrFrRegions.get(i);
-                // logger.debug("For position "+i+" we have region "+reg);
-                if (!reg.equals(region)) {
-                    // logger.debug("create a jbutton with lenght " + lenght + "
-                    // for region " + region);
-                    for (int j = index; j < i; j++) {
-                        columns.add(j);
-                    }
-                    fromRegionToColumns.put(region, columns);
-                    if (!regionON.containsKey(region)) { // to initialize it the
-                        // first time
-                        regionON.put(region, Boolean.TRUE);
-                    }
-                    columns = new ArrayList<Integer>();
-                    index = i;
-                    JButton button = new JButton(region);
-                    button.setBorder(BorderFactory.createLineBorder(Color.black));
-                    button.setFont(regionFont);
-                    if (OS.matches(".*mac.*")) { // in order the color of the
-                        // button appears on MAC
-                        button.setOpaque(true);
-                    }
-                    if (region.matches("CDR.*")) {
-                        button.setBackground(pinkColor);
-                    } else {
-                        button.setBackground(cyanColor);
+    public void setScrollPaneHeaders(JScrollPane scrollPane) {
+        scrollPane.setRowHeaderView(sequenceIdPanel);
+        scrollPane.setColumnHeaderView(columnsHeaderPanel);
+        JPanel corner = new JPanel();
+        corner.setBackground(Color.white);
+        scrollPane.setCorner(JScrollPane.UPPER_LEFT_CORNER, corner);
+        scrollPane.getViewport().setBackground(Color.white);
+    }
+
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        drawBoxes(new Graphics2DCanvas((Graphics2D) g), 0, 0, g.getClipBounds(), isColumnSelected);
+    }
+
+    /*
+     * We draw only the boxes which are in the clip (i.e. the visible part of the alignment), (x, y) is the top left
+     * corner of the first box
+     */
+    private void drawBoxes(DrawingCanvas canvas, int x, int y, Rectangle clip, boolean[] isColumnSelected) {
+        int firstRow = 0;
+        int lastRow = glyphs.length - 1;
+        int firstColumn = 0;
+        int lastColumn = boxesNumber - 1;
+        if (clip != null) {
+            firstRow = Math.max(firstRow, Math.floorDiv(clip.y - y, boxHeight));
+            lastRow = Math.min(lastRow, Math.floorDiv(clip.y + clip.height - 1 - y, boxHeight));
+            firstColumn = Math.max(firstColumn, Math.floorDiv(clip.x - x, boxWidth));
+            lastColumn = Math.min(lastColumn, Math.floorDiv(clip.x + clip.width - 1 - x, boxWidth));
+        }
+        canvas.setFont(fontId);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int yBox = y + row * boxHeight;
+            char[] rowGlyphs = glyphs[row];
+            byte[] rowColors = boxColors[row];
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int xBox = x + column * boxWidth;
+                if (isColumnSelected[column] && column < rowColors.length) {
+                    Color color = AlignmentColors.getColor(rowColors[column]);
+                    if (color != null) {
+                        canvas.setColor(color);
+                        canvas.fillRect(xBox + 1, yBox + 1, boxWidth - 2, boxHeight - 2);
                     }
-                    if (region.equals("CDR2") && (aaCDR2 <= 3) && (mode != 1)) {
-                        button.setText("CD2");
-                        button.setMargin(new Insets(0, 0, 0, 0));
+                    if (AlignmentColors.isDashed(rowColors[column])) {
+                        canvas.setColor(Color.black);
+                        canvas.setStroke(dashed);
+                        canvas.drawRect(xBox, yBox, boxWidth - 1, boxHeight - 1);
+                        canvas.setStroke(plain);
                     }
-                    button.setActionCommand(region);
-                    button.addActionListener(new ButtonListener());
-                    button.setPreferredSize(new Dimension(lenght * (sequencesPanel.getBoxWidth() + toAdd), 55));
-                    add(button);
-                    region = reg;
-                    lenght = 1;
+                }
+                char box = rowGlyphs[column];
+                canvas.setColor(Color.black);
+                if (box < glyphOffsets.length) {
+                    canvas.drawString(glyphStrings[box], xBox + glyphOffsets[box], yBox + glyphBaseline);
                 } else {
-                    lenght++;
+                    canvas.drawString(String.valueOf(box), xBox + 2, yBox + glyphBaseline);
                 }
             }
-            lenght--;
-            for (int j = index; j < boxesNumber; j++) {
-                columns.add(j);
-            }
-            fromRegionToColumns.put(region, columns);
-            JButton button = new JButton(region);
-            if (!regionON.containsKey(region)) { // to initialize it the first
-                // time
-                regionON.put(region, Boolean.TRUE);
-            }
-            button.addActionListener(new ButtonListener());
-            button.setActionCommand(region);
-            if (region.matches("CDR.*")) {
-                button.setBackground(pinkColor);
-            } else {
-                button.setBackground(cyanColor);
-            }
-            if (OS.matches(".*mac.*")) { // in order the color of the button
-                // appears on MAC
-                button.setOpaque(true);
+        }
+        // the black line at the beginning of each CDR/FR region
+        if (firstRow <= lastRow) {
+            canvas.setColor(Color.black);
+            for (Integer index : indexWithRegionBorder) {
+                if (index >= firstColumn && index <= lastColumn) {
+                    canvas.drawLine(x + index * boxWidth, y + firstRow * boxHeight, x + index * boxWidth,
+                            y + (lastRow + 1) * boxHeight - 1);
+                }
             }
-            button.setFont(regionFont);
-            button.setBorder(BorderFactory.createLineBorder(Color.black));
-            int w = ((lenght) * (sequencesPanel.getBoxWidth() + toAdd)) + (sequencesPanel.getBoxWidth()) - 1;
-            button.setPreferredSize(new Dimension(w, 55));
-            add(button);
+        }
+    }
+
+    private void drawIds(DrawingCanvas canvas, int x, int y, Rectangle clip) {
+        int firstRow = 0;
+        int lastRow = rowIds.length - 1;
+        if (clip != null) {
+            firstRow = Math.max(firstRow, Math.floorDiv(clip.y - y, boxHeight));
+            lastRow = Math.min(lastRow, Math.floorDiv(clip.y + clip.height - 1 - y, boxHeight));
+        }
+        canvas.setFont(fontId2);
+        canvas.setColor(Color.black);
+        for (int row = firstRow; row <= lastRow; row++) {
+            canvas.drawString(rowIds[row], x + 5, y + row * boxHeight + glyphBaseline);
         }
     }
 
     /*
-     * This class is the listener for the Region buttons
+     * The header of the columns: the CDR/FR regions, the positions and the check boxes (in zoom mode), (x, y) is its
+     * top left corner
      */
-    private class ButtonListener implements ActionListener {
-
-        public void actionPerformed(ActionEvent event) {
-            JButton button = (JButton) event.getSource();
-            String command = button.getActionCommand();
-            ArrayList<Integer> columns = fromRegionToColumns.get(command);
-            if (regionON.get(command)) {
-                for (Integer index : columns) {
-                    selectedColumns.put(index, Boolean.FALSE);
-                }
-                regionON.put(command, Boolean.FALSE);
+    private void drawColumnsHeader(DrawingCanvas canvas, int x, int y, Rectangle clip, boolean[] isColumnSelected) {
+        int firstColumn = 0;
+        int lastColumn = boxesNumber - 1;
+        if (clip != null) {
+            firstColumn = Math.max(firstColumn, Math.floorDiv(clip.x - x, boxWidth));
+            lastColumn = Math.min(lastColumn, Math.floorDiv(clip.x + clip.width - 1 - x, boxWidth));
+        }
+        // the regions
+        Font regionFont = regionFontZoomIn;
+        if (!zoomMode) {
+            regionFont = regionFontZoomOut;
+        }
+        int aaCDR2 = setImgtInfo.getNumberAAForCDR2();
+        if (aaCDR2 <= 3) {
+            if (zoomMode) {
+                regionFont = regionFontZoomIn_forVL;
+            } else {
+                regionFont = regionFontZoomOut_forVL;
+            }
+        }
+        canvas.setFont(regionFont);
+        for (int r = 0; r < regionNames.size(); r++) {
+            int start = regionStarts.get(r);
+            int end = regionStarts.get(r + 1);
+            if (start == end || end <= firstColumn || start > lastColumn) {
+                continue;
+            }
+            String region = regionNames.get(r);
+            int xRegion = x + start * boxWidth;
+            int width = (end - start) * boxWidth;
+            if (region.matches("CDR.*")) {
+                canvas.setColor(pinkColor);
             } else {
-                for (Integer index : columns) {
-                    selectedColumns.put(index, Boolean.TRUE);
+                canvas.setColor(cyanColor);
+            }
+            canvas.fillRect(xRegion, y + 3, width, REGIONS_HEIGHT - 5);
+            canvas.setColor(Color.black);
+            canvas.drawRect(xRegion, y + 3, width - 1, REGIONS_HEIGHT - 6);
+            if (region.equals("CDR2") && (aaCDR2 <= 3) && (mode != 1)) {
+                region = "CD2";
+            }
+            Rectangle2D rect = regionFont.getStringBounds(region, canvas.getFontRenderContext());
+            canvas.drawString(region, (int) (xRegion + (width - rect.getWidth()) / 2),
+                    (int) (y + 3 + (REGIONS_HEIGHT - 5 - rect.getHeight()) / 2 - rect.getY()));
+        }
+        // the positions
+        canvas.setFont(positionFont);
+        canvas.setColor(Color.black);
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            if (positions[column] != null) {
+                canvas.drawVerticalString(positions[column], x + column * boxWidth + positionOffset,
+                        y + REGIONS_HEIGHT + 3);
+            }
+        }
+        // the check boxes to select/unselect a column
+        if (zoomMode) {
+            int yCheck = y + REGIONS_HEIGHT + POSITIONS_HEIGHT + (CHECKS_HEIGHT - CHECK_SIZE) / 2;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int xCheck = x + column * boxWidth + (boxWidth - CHECK_SIZE) / 2;
+                canvas.setColor(Color.white);
+                canvas.fillRect(xCheck, yCheck, CHECK_SIZE, CHECK_SIZE);
+                canvas.setColor(Color.darkGray);
+                canvas.drawRect(xCheck, yCheck, CHECK_SIZE, CHECK_SIZE);
+                if (isColumnSelected[column]) {
+                    canvas.drawLine(xCheck + 2, yCheck + 5, xCheck + 4, yCheck + 8);
+                    canvas.drawLine(xCheck + 4, yCheck + 8, xCheck + 9, yCheck + 2);
                 }
-                regionON.put(command, Boolean.TRUE);
             }
-            // update the display
-            alignmentPanel.removeAll();
-            setComponents();
         }
     }
 
     /*
-     * This panel writes the position of the nucleotide and the kabat numbering
-     * for the AA.
+     * The user clicked in the header: a region selects/unselects all its columns, a check box selects/unselects its
+     * column
      */
-    public class PositionsPanel extends JPanel {
-        public PositionsPanel() {
-            TreeMap<Integer, String> fromPositionToKabatnumbering = new TreeMap<>();
-            if (mode != 1) { // AA mode
-                // we get the Kabat numbering
-                try {
-                    // we get the kabat numbering
-                    String protSeqForKabat = rootNode.getProteinSequence();
-                    ProcessKabatNumbering processKabatNumbering = new ProcessKabatNumbering(protSeqForKabat);
-                    fromPositionToKabatnumbering = processKabatNumbering.getFromPositionToKabatnumbering();
-                } catch (IOException e) {
-                    JOptionPane.showMessageDialog(this,
-                            "No Kabat numbering could be found.\n We use the default amino acid position.",
-                            "Could not connect to Abnum web site", JOptionPane.WARNING_MESSAGE);
+    private void headerClicked(Point point) {
+        int column = point.x / boxWidth;
+        if (point.x < 0 || column >= boxesNumber) {
+            return;
+        }
+        if (point.y < REGIONS_HEIGHT) {
+            String region = positionToCdrFrRegions.get(column);
+            for (int r = 0; r < regionNames.size(); r++) {
+                if (column >= regionStarts.get(r) && column < regionStarts.get(r + 1)) {
+                    region = regionNames.get(r);
                 }
             }
-            setLayout(new GridLayout(1, boxesNumber));
-            setBackground(Color.white);
-            int toAdd = 2;
-            if (updateSequenceIdsPanel) {
-                toAdd = 0;
-            }
-            setPreferredSize(new Dimension(boxesNumber * (sequencesPanel.getBoxWidth() + toAdd) + 6, 58));
-            for (int i = 0; i < boxesNumber; i++) {
-                String positionToWrite = String.valueOf(i + 1);
-                if (mode != 1 && fromPositionToKabatnumbering.size()>1) {
-                    positionToWrite = fromPositionToKabatnumbering.get(new Integer(i));
-                }
-                if (positionToWrite != null) {
-                    MyRotatedLabel lab = new MyRotatedLabel(positionToWrite);
-                    lab.setOpaque(true);
-                    add(lab);
-                }
-                setOpaque(true);
+            ArrayList<Integer> columns = fromRegionToColumns.get(region);
+            Boolean isON = !regionON.get(region);
+            for (Integer index : columns) {
+                selectedColumns.put(index, isON);
             }
+            regionON.put(region, isON);
+        } else if (zoomMode && point.y >= REGIONS_HEIGHT + POSITIONS_HEIGHT) {
+            selectedColumns.put(column, !selectedColumns.get(column));
+        } else {
+            return;
+        }
+        // update the display, the colors of the boxes don't change
+        updateSelectedColumns();
+        repaint();
+        columnsHeaderPanel.repaint();
+    }
+
+    public String getToolTipText(MouseEvent event) {
+        int row = event.getY() / boxHeight;
+        if (row < 0 || row >= rowToolTips.length) {
+            return null;
         }
+        return rowToolTips[row];
     }
 
-    public class MyRotatedLabel extends JPanel {
-        private String txt;
+    public Dimension getPreferredSize() {
+        return new Dimension(boxesNumber * boxWidth + 1, glyphs.length * boxHeight + 1);
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        Dimension size = getPreferredSize();
+        return new Dimension(Math.min(size.width, MAX_VIEWPORT_WIDTH), Math.min(size.height, MAX_VIEWPORT_HEIGHT));
+    }
 
-        public MyRotatedLabel(String txt) {
-            this.txt = txt;
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.HORIZONTAL) {
+            return boxWidth;
         }
+        return boxHeight;
+    }
 
-        public void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            final Font font = new Font("Courier", Font.BOLD, 18);
-            // set the derived font in the Graphics2D context
-            Graphics2D g2d = ((Graphics2D) g);
-            g2d.setFont(font);
-            this.setBackground(Color.white);
-            g2d.rotate(Math.toRadians(90.0));
-            g2d.drawString(txt, 3, 1);
-            g2d.dispose();
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.HORIZONTAL) {
+            return Math.max(boxWidth, visibleRect.width - boxWidth);
         }
+        return Math.max(boxHeight, visibleRect.height - boxHeight);
+    }
 
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
     }
 
-    /*
-     * This panel allows the user (in zoom mode only) to check/uncheck a
-     * column/position on the sequence
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    /**
+     * The exported image has the ids, the header of the columns and the boxes. The selected columns are copied
+     * because the user can click in the header while the threads of the export are drawing
      */
-    public class CheckColumnsPanel extends JPanel {
-        public CheckColumnsPanel() {
-            setLayout(new GridLayout(1, boxesNumber));
-            setBackground(Color.white);
-            int toAdd = 2;
-            if (updateSequenceIdsPanel) {
-                toAdd = 0;
-            }
-            setPreferredSize(new Dimension(boxesNumber * (sequencesPanel.getBoxWidth() + toAdd) + 6, 18));
-            for (int i = 0; i < boxesNumber; i++) {
-                final JCheckBoxMenuItem check = new JCheckBoxMenuItem();
-                check.setAlignmentX(LEFT_ALIGNMENT);
-                check.setIconTextGap(0);
-                check.setBackground(Color.white);
-                if (selectedColumns.get(i)) {
-                    check.setSelected(true);
-                }
-                final int index = i;
-                add(check);
-                check.addActionListener(new ActionListener() {
-                    public void actionPerformed(ActionEvent event) {
-                        if (check.isSelected()) {
-                            selectedColumns.put(index, Boolean.TRUE);
-                        } else {
-                            selectedColumns.put(index, Boolean.FALSE);
-                        }
-                        // update the display
-                        alignmentPanel.removeAll();
-                        setComponents();
-                    }
-                });
-                checkColumns.add(check);
-            }
+    public Dimension getSizeToExport() {
+        if (exportsNumber == 0) {
+            exportedColumnSelected = isColumnSelected.clone();
         }
+        exportsNumber++;
+        return new Dimension(idsWidth + boxesNumber * boxWidth + 1, headerHeight + glyphs.length * boxHeight + 1);
+    }
+
+    /**
+     * The next export will copy the selected columns again
+     */
+    public void exportFinished() {
+        exportsNumber--;
+    }
+
+    public void drawToExport(DrawingCanvas canvas) {
+        Rectangle clip = canvas.getClipBounds();
+        drawIds(canvas, 0, headerHeight, clip);
+        drawColumnsHeader(canvas, idsWidth, 0, clip, exportedColumnSelected);
+        drawBoxes(canvas, idsWidth, headerHeight, clip, exportedColumnSelected);
     }
 
     /*
-     * This panel displays each sequence. We have then one panel for each
-     * sequence.
+     * This panel displays the Ig names the user selected (all by default), on the left of the boxes
      */
-    public class AllSequencesPanel extends JPanel {
-
-        private int boxWidth = 0;
-        private int boxHeight = 0;
-
-        public AllSequencesPanel() {
-            this.setOpaque(true);
-            this.setBackground(Color.white);
-            this.setOpaque(true);
-            this.setLayout(new GridLayout(0, 1));
-            for (NodeGraph node : orderedNodeGraphs) {
-                if (allNodeGraphs.contains(node)) {// we display if the user
-                    // checked the ID
-                    SequencePanel sequencePanel = new SequencePanel(node);
-                    this.add(sequencePanel);
-                }
-            }
-            int numbUnselectedColumns = 0;
-            for (Integer ind : selectedColumns.keySet()) {
-                if (!selectedColumns.get(Integer.valueOf(ind))) {
-                    numbUnselectedColumns++;
-                }
-            }
-            updateSequenceIdsPanel = numbUnselectedColumns == selectedColumns.size();
+    public class SequencesIdPanel extends JPanel {
+        public SequencesIdPanel() {
+            setBackground(Color.white);
+            setOpaque(true);
         }
 
-        private class SequencePanel extends JPanel {
+        public Dimension getPreferredSize() {
+            return new Dimension(idsWidth, glyphs.length * boxHeight + 1);
+        }
 
-            public SequencePanel(NodeGraph node) {
-                String nodeId = node.getNodeId();
-                String fullNodeId = nodeId;
-                if (node.hasDuplicateNodes()) {
-                    for (NodeGraph dup : node.getDuplicatedNodes()) {
-                        fullNodeId += "," + dup.getNodeId();
-                    }
-                }
-                this.setOpaque(true);
-                this.setBackground(Color.white);
-                String sequence = node.getSequence();
-                if (mode != 1) {
-                    sequence = node.getProteinSequence();
-                }
-                this.setLayout(new GridLayout(1, boxesNumber));
-                char[] boxes = sequence.toCharArray();
-                int index = 0;
-                TreeMap<Integer, Color> fromIndexToColor = new TreeMap<>();
-                ArrayList<Integer> reverseOrDoubleMutations = new ArrayList<>();
-                if (fromNodeIndexesToColor.containsKey(node)) {
-                    fromIndexToColor = fromNodeIndexesToColor.get(node);
-                }
-                if (fromNodeIndexesToDashes.containsKey(node)) {
-                    reverseOrDoubleMutations = fromNodeIndexesToDashes.get(node);
-                }
-                for (char box : boxes) {
-                    JLabel label = new JLabel(String.valueOf(box), JLabel.CENTER);
-                    label.setToolTipText(fullNodeId);
-                    label.setFont(fontId);
-                    if (selectedColumns.get(index)) {
-                        if (fromIndexToColor.containsKey(index)) {
-                            Color color = fromIndexToColor.get(index);
-                            label.setBackground(color);
-                            label.setOpaque(true);
-                            if (!indexWithRegionBorder.contains(index)) {
-                                label.setBorder(whiteBorder);
-                            }
-                            if (indexWithRegionBorder.contains(index)) {
-                                label.setBorder(regionBorder);
-                            }
-                        } else if (!node.isRoot()) {
-                            label.setText(".");
-                        }
-                        if (reverseOrDoubleMutations.contains(index)) {
-                            label.setBorder(BorderFactory.createDashedBorder(null));
-                        }
-                    } else if (!node.isRoot() && !fromIndexToColor.containsKey(index)) {
-                        label.setText(".");
-                    }
+        public void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            drawIds(new Graphics2DCanvas((Graphics2D) g), 0, 0, g.getClipBounds());
+        }
+    }
 
-                    if (label.getBorder() == null && indexWithRegionBorder.contains(index)) {
-                        label.setBorder(compound);
-                    }
-                    this.add(label);
-                    int boxW = (int) label.getPreferredSize().getWidth();
-                    int boxH = (int) label.getPreferredSize().getHeight();
-                    if (boxWidth < boxW) {
-                        boxWidth = boxW;
-                    }
-                    if (boxHeight < boxH) {
-                        boxHeight = boxH;
-                    }
-                    index++;
+    /*
+     * This panel displays the CDR/FR regions (the user can click on a region to show or not show the mutations
+     * below), the positions and, in zoom mode, the check boxes to select/unselect each column
+     */
+    public class ColumnsHeaderPanel extends JPanel {
+        public ColumnsHeaderPanel() {
+            setBackground(Color.white);
+            setOpaque(true);
+            addMouseListener(new MouseAdapter() {
+                public void mouseClicked(MouseEvent event) {
+                    headerClicked(event.getPoint());
                 }
-            }
+            });
         }
 
-        /**
-         * @return the boxWidth
-         */
-        public int getBoxWidth() {
-            return boxWidth;
+        public Dimension getPreferredSize() {
+            return new Dimension(boxesNumber * boxWidth + 1, headerHeight);
         }
 
-        /**
-         * @return the boxHeight
-         */
-        public int getBoxHeight() {
-            return boxHeight;
+        public void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            drawColumnsHeader(new Graphics2DCanvas((Graphics2D) g), 0, 0, g.getClipBounds(), isColumnSelected);
         }
     }
 
@@ -906,6 +789,21 @@ public class AlignmentPanel extends JPanel {
      * @return the fromNodeIndexesToColor
      */
     public HashMap<NodeGraph, TreeMap<Integer, Color>> getFromNodeIndexesToColor() {
+        HashMap<NodeGraph, TreeMap<Integer, Color>> fromNodeIndexesToColor =
+                new HashMap<NodeGraph, TreeMap<Integer, Color>>();
+        for (NodeGraph node : allNodeGraphs) {
+            byte[] colors = getColors(node);
+            TreeMap<Integer, Color> fromIndexToColor = new TreeMap<Integer, Color>();
+            for (int index = 0; index < colors.length; index++) {
+                Color color = AlignmentColors.getColor(colors[index]);
+                if (color != null) {
+                    fromIndexToColor.put(index, color);
+                }
+            }
+            if (!fromIndexToColor.isEmpty()) {
+                fromNodeIndexesToColor.put(node, fromIndexToColor);
+            }
+        }
         return fromNodeIndexesToColor;
     }
 
@@ -913,9 +811,29 @@ public class AlignmentPanel extends JPanel {
      * @return the fromNodeIndexesToDashes
      */
     public HashMap<NodeGraph, ArrayList<Integer>> getFromNodeIndexesToDashes() {
+        HashMap<NodeGraph, ArrayList<Integer>> fromNodeIndexesToDashes = new HashMap<NodeGraph, ArrayList<Integer>>();
+        for (NodeGraph node : allNodeGraphs) {
+            byte[] colors = getColors(node);
+            ArrayList<Integer> reverseOrDoublePositions = new ArrayList<Integer>();
+            for (int index = 0; index < colors.length; index++) {
+                if (AlignmentColors.isDashed(colors[index])) {
+                    reverseOrDoublePositions.add(index);
+                }
+            }
+            if (!reverseOrDoublePositions.isEmpty()) {
+                fromNodeIndexesToDashes.put(node, reverseOrDoublePositions);
+            }
+        }
         return fromNodeIndexesToDashes;
     }
 
+    private byte[] getColors(NodeGraph node) {
+        if (node.isRoot()) {
+            return alignmentColors.getRootColors(allNodeGraphs, mode);
+        }
+        return alignmentColors.getColors(node, mode);
+    }
+
     /**
      * @return the mode
      */
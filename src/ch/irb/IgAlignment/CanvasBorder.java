@@ -0,0 +1,50 @@
+/*Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ *
+ * This class is the parent of the borders of the boxes of the alignment: they are drawn on a DrawingCanvas, the same
+ * way on the screen and in the exported images (see ExportAlignmentPanel)
+ */
+
+package ch.irb.IgAlignment;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+
+import javax.swing.border.AbstractBorder;
+
+import ch.irb.saveImages.DrawingCanvas;
+import ch.irb.saveImages.Graphics2DCanvas;
+
+@SuppressWarnings("serial")
+public abstract class CanvasBorder extends AbstractBorder {
+    public boolean isBorderOpaque() {
+        return true;
+    }
+
+    public Insets getBorderInsets(Component c) {
+        return new Insets(1, 1, 1, 1);
+    }
+
+    public void paintBorder(Component c, Graphics g, int x, int y, int width, int height) {
+        paintBorder(new Graphics2DCanvas((Graphics2D) g), x, y, width, height);
+    }
+
+    /*
+     * Draw the border of a box whose top left corner is (x, y)
+     */
+    public abstract void paintBorder(DrawingCanvas canvas, int x, int y, int width, int height);
+
+}
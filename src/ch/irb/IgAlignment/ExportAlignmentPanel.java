@@ -14,11 +14,16 @@
    
  * This panel displays the alignment view that the user previously chose by selecting/unselecting the positions of the nucleotide or the sequence.
  * The interest to have this panel is to make the image shorter to export when the user unselected a lot of positions. 
+ * The panel is exported (PNG tiles, EPS, SVG, PDF) from a list of drawing operations taken from its components when
+ * the export starts (see ExportOperation), so the export threads never read the Swing components.
  */
 
 package ch.irb.IgAlignment;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
@@ -29,28 +34,37 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.Insets;
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.TreeMap;
 
+import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
+import javax.swing.border.CompoundBorder;
+import javax.swing.border.LineBorder;
+import javax.swing.border.StrokeBorder;
 
 import org.apache.log4j.Logger;
 
 import ch.irb.IgGenealogicTreeViewer.SetImgtInfo;
 import ch.irb.kabat.ProcessKabatNumbering;
 import ch.irb.nodes.NodeGraph;
+import ch.irb.saveImages.DrawingCanvas;
+import ch.irb.saveImages.JPanelToExport;
 import ch.irb.translation.AminoAcidProperties;
 
 @SuppressWarnings("serial")
-public class ExportAlignmentPanel extends JPanel {
+public class ExportAlignmentPanel extends JPanel implements JPanelToExport {
 	static Logger logger = Logger.getLogger(AlignmentPanel.class);
     static AminoAcidProperties aminoAcidProperties = new AminoAcidProperties();
     static Color redColor = new Color(255, 159, 159);
@@ -63,6 +77,7 @@ public class ExportAlignmentPanel extends JPanel {
     static Color superLightGreyColor = new Color(245, 245, 245);
     static String OS = System.getProperty("os.name").toLowerCase();
     static Border empytyBorder = BorderFactory.createEmptyBorder();
+    static Font positionFont = new Font("Courier", Font.BOLD, 18);
     static RegionBorder regionBorder = new RegionBorder();
     static ShortRegionBorder shortRegionBorder = new ShortRegionBorder();
     static Border whiteBorder = new WhiteBorder();
@@ -95,6 +110,8 @@ public class ExportAlignmentPanel extends JPanel {
     private ArrayList<Integer> fromBoxIndexToSequenceIndex = new ArrayList<Integer>();
     private boolean shorterView = false;
     private SetImgtInfo setImgtInfo = null;
+    // what the export draws, taken from the components in getSizeToExport
+    private ArrayList<ExportOperation> exportOperations = new ArrayList<ExportOperation>();
 
     public ExportAlignmentPanel(AlignmentPanel alignmentPanel, boolean shorterView) {
         setBackground(Color.white);
@@ -168,6 +185,217 @@ public class ExportAlignmentPanel extends JPanel {
         repaint();
     }
 
+    /**
+     * The drawing operations of the components are taken here, in the thread of
+     * the GUI: the panel is drawn as it is displayed
+     */
+    public Dimension getSizeToExport() {
+        if (getWidth() == 0 || getHeight() == 0) {
+            setSize(getPreferredSize());
+        }
+        validate();
+        ArrayList<ExportOperation> operations = new ArrayList<ExportOperation>();
+        addOperations(this, 0, 0, operations);
+        exportOperations = operations;
+        return getSize();
+    }
+
+    /**
+     * Nothing to do, the export does not read the components
+     */
+    public void exportFinished() {
+    }
+
+    public void drawToExport(DrawingCanvas canvas) {
+        Rectangle clip = canvas.getClipBounds();
+        for (ExportOperation operation : exportOperations) {
+            if (clip == null || clip.intersects(operation.bounds)) {
+                operation.draw(canvas);
+            }
+        }
+    }
+
+    /*
+     * The operations of a component and of its children, in the order Swing paints them: the background, the text,
+     * the border, then the children
+     */
+    private void addOperations(Component component, int x, int y, ArrayList<ExportOperation> operations) {
+        if (!component.isVisible()) {
+            return;
+        }
+        int width = component.getWidth();
+        int height = component.getHeight();
+        if (component instanceof JComponent && ((JComponent) component).isOpaque()) {
+            operations.add(ExportOperation.fillRect(component.getBackground(), x, y, width, height));
+        }
+        if (component instanceof MyRotatedLabel) {
+            MyRotatedLabel label = (MyRotatedLabel) component;
+            // the label is rotated around its origin, the text starts at (3, 1) in the rotated coordinates
+            operations.add(ExportOperation.drawString(label.getForeground(), positionFont, label.txt, x - 1,
+                    y + 3, true, new Rectangle(x - 1, y, width + 1, height)));
+        } else if (component instanceof JLabel || component instanceof AbstractButton) {
+            addTextOperation((JComponent) component, x, y, operations);
+        }
+        if (component instanceof JComponent) {
+            addBorderOperations(((JComponent) component).getBorder(), component, x, y, width, height, operations);
+        }
+        if (component instanceof Container) {
+            Component[] children = ((Container) component).getComponents();
+            for (int i = children.length - 1; i >= 0; i--) {
+                addOperations(children[i], x + children[i].getX(), y + children[i].getY(), operations);
+            }
+        }
+    }
+
+    /*
+     * The text of a label or a button is placed like the Swing UI does it
+     */
+    private void addTextOperation(JComponent component, int x, int y, ArrayList<ExportOperation> operations) {
+        String text;
+        int verticalAlignment;
+        int horizontalAlignment;
+        int verticalTextPosition;
+        int horizontalTextPosition;
+        int iconTextGap;
+        if (component instanceof JLabel) {
+            JLabel label = (JLabel) component;
+            text = label.getText();
+            verticalAlignment = label.getVerticalAlignment();
+            horizontalAlignment = label.getHorizontalAlignment();
+            verticalTextPosition = label.getVerticalTextPosition();
+            horizontalTextPosition = label.getHorizontalTextPosition();
+            iconTextGap = label.getIconTextGap();
+        } else {
+            AbstractButton button = (AbstractButton) component;
+            text = button.getText();
+            verticalAlignment = button.getVerticalAlignment();
+            horizontalAlignment = button.getHorizontalAlignment();
+            verticalTextPosition = button.getVerticalTextPosition();
+            horizontalTextPosition = button.getHorizontalTextPosition();
+            iconTextGap = button.getIconTextGap();
+        }
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        Font font = component.getFont();
+        FontMetrics metrics = component.getFontMetrics(font);
+        Insets insets = component.getInsets();
+        Rectangle viewR = new Rectangle(insets.left, insets.top, component.getWidth() - insets.left - insets.right,
+                component.getHeight() - insets.top - insets.bottom);
+        Rectangle iconR = new Rectangle();
+        Rectangle textR = new Rectangle();
+        String clippedText = SwingUtilities.layoutCompoundLabel(component, metrics, text, null, verticalAlignment,
+                horizontalAlignment, verticalTextPosition, horizontalTextPosition, viewR, iconR, textR, iconTextGap);
+        operations.add(ExportOperation.drawString(component.getForeground(), font, clippedText, x + textR.x,
+                y + textR.y + metrics.getAscent(), false,
+                new Rectangle(x, y, component.getWidth(), component.getHeight())));
+    }
+
+    /*
+     * The borders used in this panel: the region borders, the lines and the dashes of the reverse/double mutations
+     */
+    private void addBorderOperations(Border border, Component component, int x, int y, int width, int height,
+                                     ArrayList<ExportOperation> operations) {
+        if (border instanceof CompoundBorder) {
+            CompoundBorder compoundBorder = (CompoundBorder) border;
+            Insets insets = compoundBorder.getOutsideBorder().getBorderInsets(component);
+            addBorderOperations(compoundBorder.getOutsideBorder(), component, x, y, width, height, operations);
+            addBorderOperations(compoundBorder.getInsideBorder(), component, x + insets.left, y + insets.top,
+                    width - insets.left - insets.right, height - insets.top - insets.bottom, operations);
+        } else if (border instanceof LineBorder) {
+            operations.add(ExportOperation.drawRect(((LineBorder) border).getLineColor(), null, x, y, width - 1,
+                    height - 1));
+        } else if (border instanceof StrokeBorder) {
+            StrokeBorder strokeBorder = (StrokeBorder) border;
+            Color color = strokeBorder.getPaint() instanceof Color ? (Color) strokeBorder.getPaint()
+                    : component.getForeground();
+            operations.add(ExportOperation.drawRect(color, strokeBorder.getStroke(), x, y, width - 1, height - 1));
+        } else if (border instanceof CanvasBorder) {
+            // the region borders and the white borders draw themselves on the canvas
+            operations.add(ExportOperation.drawBorder((CanvasBorder) border, x, y, width, height));
+        }
+    }
+
+    /**
+     * One drawing operation of the export: a filled rectangle, a rectangle
+     * (with its stroke), a String or a border of a box
+     */
+    private static class ExportOperation {
+        private static final BasicStroke PLAIN = new BasicStroke();
+        private CanvasBorder border;
+        private Color color;
+        private BasicStroke stroke;
+        private Font font;
+        private String text;
+        private boolean isVertical;
+        private boolean isFilled;
+        private int x;
+        private int y;
+        private Rectangle bounds;
+
+        static ExportOperation fillRect(Color color, int x, int y, int width, int height) {
+            ExportOperation operation = new ExportOperation();
+            operation.color = color;
+            operation.isFilled = true;
+            operation.bounds = new Rectangle(x, y, width, height);
+            return operation;
+        }
+
+        static ExportOperation drawRect(Color color, BasicStroke stroke, int x, int y, int width, int height) {
+            ExportOperation operation = new ExportOperation();
+            operation.color = color;
+            operation.stroke = stroke;
+            operation.bounds = new Rectangle(x, y, width + 1, height + 1);
+            return operation;
+        }
+
+        static ExportOperation drawBorder(CanvasBorder border, int x, int y, int width, int height) {
+            ExportOperation operation = new ExportOperation();
+            operation.border = border;
+            operation.bounds = new Rectangle(x, y, width, height);
+            return operation;
+        }
+
+        static ExportOperation drawString(Color color, Font font, String text, int x, int y, boolean isVertical,
+                                          Rectangle bounds) {
+            ExportOperation operation = new ExportOperation();
+            operation.color = color;
+            operation.font = font;
+            operation.text = text;
+            operation.x = x;
+            operation.y = y;
+            operation.isVertical = isVertical;
+            operation.bounds = bounds;
+            return operation;
+        }
+
+        void draw(DrawingCanvas canvas) {
+            if (border != null) {
+                border.paintBorder(canvas, bounds.x, bounds.y, bounds.width, bounds.height);
+                return;
+            }
+            canvas.setColor(color);
+            if (text != null) {
+                canvas.setFont(font);
+                if (isVertical) {
+                    canvas.drawVerticalString(text, x, y);
+                } else {
+                    canvas.drawString(text, x, y);
+                }
+            } else if (isFilled) {
+                canvas.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+            } else {
+                if (stroke != null) {
+                    canvas.setStroke(stroke);
+                }
+                canvas.drawRect(bounds.x, bounds.y, bounds.width - 1, bounds.height - 1);
+                if (stroke != null) {
+                    canvas.setStroke(PLAIN);
+                }
+            }
+        }
+    }
+
     /*
      * This panel display the Ig names the user selected (all by default) in the
      * order we calculated previously
@@ -327,10 +555,9 @@ public class ExportAlignmentPanel extends JPanel {
 
         public void paintComponent(Graphics g) {
             super.paintComponent(g);
-            final Font font = new Font("Courier", Font.BOLD, 18);
             // set the derived font in the Graphics2D context
             Graphics2D g2d = ((Graphics2D) g);
-            g2d.setFont(font);
+            g2d.setFont(positionFont);
             this.setBackground(Color.white);
             g2d.rotate(Math.toRadians(90.0));
             g2d.drawString(txt, 3, 1);
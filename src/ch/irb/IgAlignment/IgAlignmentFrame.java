@@ -56,6 +56,7 @@ import ch.irb.currentDirectory.GetSetCurrentDirectory;
 import ch.irb.kabat.ProcessKabatNumbering;
 import ch.irb.nodes.NodeGraph;
 import ch.irb.saveImages.ExportAsEPSListener;
+import ch.irb.saveImages.ExportAsVectorListener;
 import ch.irb.saveImages.SaveImageAsPngListener;
 import ch.irb.saveImages.TSVFilter;
 
@@ -67,6 +68,7 @@ public class IgAlignmentFrame extends JFrame {
     private ArrayList<NodeGraph> nodeGraphsToShow = new ArrayList<NodeGraph>();
     private JScrollPane jScrollPane = new JScrollPane();
     private AlignmentPanel alignmentPanel;
+    private AlignmentColors alignmentColors;
     private int mode = 1; // by default we display the nucleotide mode
     private boolean zoomMode = true;
     private JMenu exportMenu = new JMenu("Export");
@@ -77,9 +79,13 @@ public class IgAlignmentFrame extends JFrame {
     private JMenuItem exportItem_shorted = new JMenuItem("Shrink image");
     private JMenuItem exportItem_withoutLetter = new JMenuItem("Mutations Map");
     private JMenuItem exportItemPNG = new JMenuItem("Export image as .PNG");
+    private JMenuItem exportItemSVG = new JMenuItem("Export image as .SVG");
+    private JMenuItem exportItemPDF = new JMenuItem("Export image as .PDF");
     private JMenuItem exportItemExcel = new JMenuItem("Export protein alignment as .TSV");
     private ExportAsEPSListener exportAsEPSListener;
     private SaveImageAsPngListener saveImageAsPngListener;
+    private ExportAsVectorListener exportAsSVGListener;
+    private ExportAsVectorListener exportAsPDFListener;
     private GetSetCurrentDirectory getSetCurrentDir;
     private JRadioButton zoomInButton = new JRadioButton("Zoom in");
     private JRadioButton zoomOutButton = new JRadioButton("Zoom out");
@@ -108,9 +114,12 @@ public class IgAlignmentFrame extends JFrame {
                 nodeGraphsToShow.add(nodeGraph);
             }
         }
-        alignmentPanel = new AlignmentPanel(nodeGraphsToShow, mode, zoomMode, null);
+        // the colors of each mode are computed once for all the Igs
+        alignmentColors = new AlignmentColors(nodeGraphsToShow);
+        alignmentPanel = new AlignmentPanel(nodeGraphsToShow, mode, zoomMode, null, alignmentColors);
         alignmentPanel.setOpaque(true);
         jScrollPane.getViewport().setView(alignmentPanel);
+        alignmentPanel.setScrollPaneHeaders(jScrollPane);
         this.getContentPane().add(jScrollPane);
 
         // set the menus
@@ -218,6 +227,12 @@ public class IgAlignmentFrame extends JFrame {
         saveImageAsPngListener = new SaveImageAsPngListener(alignmentPanel, getSetCurrentDir);
         exportItemPNG.addActionListener(saveImageAsPngListener);
         exportMenu.add(exportItemPNG);
+        exportAsSVGListener = new ExportAsVectorListener(alignmentPanel, getSetCurrentDir, ExportAsVectorListener.SVG);
+        exportItemSVG.addActionListener(exportAsSVGListener);
+        exportMenu.add(exportItemSVG);
+        exportAsPDFListener = new ExportAsVectorListener(alignmentPanel, getSetCurrentDir, ExportAsVectorListener.PDF);
+        exportItemPDF.addActionListener(exportAsPDFListener);
+        exportMenu.add(exportItemPDF);
         exportItem_shorted.addActionListener(new ActionListener() {
             @SuppressWarnings("unused")
             @Override
@@ -264,7 +279,7 @@ public class IgAlignmentFrame extends JFrame {
         jScrollPane.remove(alignmentPanel);
         getContentPane().remove(jScrollPane);
         jScrollPane = new JScrollPane();
-        alignmentPanel = new AlignmentPanel(nodeGraphsToShow, mode, zoomMode, selectedColumns);
+        alignmentPanel = new AlignmentPanel(nodeGraphsToShow, mode, zoomMode, selectedColumns, alignmentColors);
         alignmentPanel.setOpaque(true);
         exportItemEPS.removeActionListener(exportAsEPSListener);
         exportAsEPSListener = new ExportAsEPSListener(alignmentPanel, getSetCurrentDir);
@@ -272,7 +287,14 @@ public class IgAlignmentFrame extends JFrame {
         exportItemPNG.removeActionListener(saveImageAsPngListener);
         saveImageAsPngListener = new SaveImageAsPngListener(alignmentPanel, getSetCurrentDir);
         exportItemPNG.addActionListener(saveImageAsPngListener);
+        exportItemSVG.removeActionListener(exportAsSVGListener);
+        exportAsSVGListener = new ExportAsVectorListener(alignmentPanel, getSetCurrentDir, ExportAsVectorListener.SVG);
+        exportItemSVG.addActionListener(exportAsSVGListener);
+        exportItemPDF.removeActionListener(exportAsPDFListener);
+        exportAsPDFListener = new ExportAsVectorListener(alignmentPanel, getSetCurrentDir, ExportAsVectorListener.PDF);
+        exportItemPDF.addActionListener(exportAsPDFListener);
         jScrollPane.getViewport().setView(alignmentPanel);
+        alignmentPanel.setScrollPaneHeaders(jScrollPane);
         getContentPane().add(jScrollPane);
         jScrollPane.revalidate();
         revalidate();
@@ -377,6 +399,14 @@ public class IgAlignmentFrame extends JFrame {
                     getSetCurrentDir);
             exportItemPNG.addActionListener(saveImageAsPngListener);
             exportMenu.add(exportItemPNG);
+            JMenuItem exportItemSVG = new JMenuItem("Export image as .SVG");
+            exportItemSVG.addActionListener(new ExportAsVectorListener(exportAlignmentPanel, getSetCurrentDir,
+                    ExportAsVectorListener.SVG));
+            exportMenu.add(exportItemSVG);
+            JMenuItem exportItemPDF = new JMenuItem("Export image as .PDF");
+            exportItemPDF.addActionListener(new ExportAsVectorListener(exportAlignmentPanel, getSetCurrentDir,
+                    ExportAsVectorListener.PDF));
+            exportMenu.add(exportItemPDF);
             JMenuBar bar = new JMenuBar();
             setJMenuBar(bar);
             bar.add(exportMenu);
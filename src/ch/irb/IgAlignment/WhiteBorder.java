@@ -18,27 +18,16 @@
 package ch.irb.IgAlignment;
 
 import java.awt.Color;
-import java.awt.Component;
-import java.awt.Graphics;
-import java.awt.Insets;
 
-import javax.swing.border.AbstractBorder;
+import ch.irb.saveImages.DrawingCanvas;
 
 @SuppressWarnings("serial")
-public class WhiteBorder extends AbstractBorder {
-    public boolean isBorderOpaque() {
-        return true;
-    }
-
-    public Insets getBorderInsets(Component c) {
-        return new Insets(1, 1, 1, 1);
-    }
-
-    public void paintBorder(Component c, Graphics g, int x, int y, int width, int height) {
-        g.setColor(Color.white);
-        g.fillRect(0, 0, 1, height);
-        g.fillRect(0, 0, width - 1, 1);
-        g.fillRect(width - 1, 0, 1, height);
-        g.fillRect(0, height - 1, width - 1, 1);
+public class WhiteBorder extends CanvasBorder {
+    public void paintBorder(DrawingCanvas canvas, int x, int y, int width, int height) {
+        canvas.setColor(Color.white);
+        canvas.fillRect(x, y, 1, height);
+        canvas.fillRect(x, y, width - 1, 1);
+        canvas.fillRect(x + width - 1, y, 1, height);
+        canvas.fillRect(x, y + height - 1, width - 1, 1);
     }
 }
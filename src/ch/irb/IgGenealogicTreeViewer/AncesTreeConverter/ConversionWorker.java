@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class runs the conversion of a tree (see InputParser) in a background thread, so the GUI is not frozen by the
+   big clones. Each stage of the conversion (sequences, tree, FR/CDR regions, BASELINe files, XML file) is shown in
+   a progress dialog where the user can cancel the conversion, the output folder is then deleted. The XML file is
+   also read in the background: only the display of the new tree in the IgTreeViewerFrame is done in the event
+   dispatch thread.
+ */
+package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
+
+import java.awt.Component;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+import org.apache.log4j.Logger;
+
+import ch.irb.IgGenealogicTreeViewer.IgTreeReader;
+import ch.irb.IgGenealogicTreeViewer.IgTreeViewerFrame;
+
+public abstract class ConversionWorker extends SwingWorker<IgTreeReader, String> implements InputParser.StageListener {
+    static Logger logger = Logger.getLogger(ConversionWorker.class);
+    private Component parent;
+    private IgTreeViewerFrame igTreeViewerFrame;
+    private boolean isDnamlTree = true;
+    private ProgressMonitor progressMonitor;
+    private InputParser parser;
+    private String xmlFile;
+    private long start;
+
+    /*
+     * This constructor is called in the event dispatch thread, the progress dialog is shown over the parent
+     */
+    public ConversionWorker(Component parent, IgTreeViewerFrame igTreeViewerFrame, String name) {
+        this.parent = parent;
+        this.igTreeViewerFrame = igTreeViewerFrame;
+        if (igTreeViewerFrame != null) {
+            isDnamlTree = igTreeViewerFrame.isDnamlTree();
+        }
+        progressMonitor = new ProgressMonitor(parent, "Converting " + name, "", 0, 100);
+        progressMonitor.setMillisToDecideToPopup(0);
+        progressMonitor.setMillisToPopup(0);
+        addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent event) {
+                if ("progress".equals(event.getPropertyName())) {
+                    progressMonitor.setProgress((Integer) event.getNewValue());
+                }
+            }
+        });
+    }
+
+    /*
+     * Run the conversion with this parser, it returns the path of the XML file or null if the input is not valid (see
+     * InputParser.convertDnaml and InputParser.convertAirr). This method is called in the background thread
+     */
+    protected abstract String convert(InputParser parser) throws Exception;
+
+    @Override
+    protected IgTreeReader doInBackground() throws Exception {
+        start = System.currentTimeMillis();
+        parser = new InputParser(igTreeViewerFrame);
+        try {
+            xmlFile = convert(parser);
+            if (xmlFile == null || igTreeViewerFrame == null) {
+                return null;
+            }
+            stageStarted("Reading the tree", 90);
+            return new IgTreeReader(xmlFile, isDnamlTree);
+        } catch (InterruptedException e) {
+            parser.deleteProjectDirectory();
+            throw e;
+        }
+    }
+
+    /*
+     * The conversion is stopped between 2 stages if the user canceled it
+     */
+    public void stageStarted(String stage, int progress) throws InterruptedException {
+        if (isCancelled() || progressMonitor.isCanceled()) {
+            throw new InterruptedException("The conversion was canceled");
+        }
+        logger.info(stage + " (" + (System.currentTimeMillis() - start) + " ms)");
+        publish(stage);
+        setProgress(progress);
+    }
+
+    @Override
+    protected void process(List<String> stages) {
+        progressMonitor.setNote(stages.get(stages.size() - 1));
+    }
+
+    @Override
+    protected void done() {
+        progressMonitor.close();
+        IgTreeReader igTreeReader;
+        try {
+            igTreeReader = get();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                logger.info(cause.getMessage());
+                return;
+            }
+            cause.printStackTrace();
+            JOptionPane.showMessageDialog(parent, cause.getMessage(), "The tree could not be converted",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        logger.info("Conversion done in " + (System.currentTimeMillis() - start) + " ms");
+        if (igTreeReader != null) {
+            igTreeViewerFrame.updateIgTreeViewerFrame(xmlFile, igTreeReader);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class computes the distance matrix between the nodes of a clone, in nucleotides or in amino acids:
+   - the tree edges: the number of mutations between a parent and its child, 0 for the nodes which are not linked
+   - the Hamming distances between all the pairs of sequences.
+   The nodes are in the preorder of the tree, so a parent is always before its children. The tree edges are kept in
+   memory (one edge per node). The Hamming distances are streamed to the file: a band of BLOCK_SIZE rows is computed
+   by blocks of columns in parallel, on the fork-join pool of the caller (i.e. the pool of the batch conversion) or on
+   the common pool, then written before the next band is computed. Only the upper triangle is computed and written,
+   as TSV (the cells below the diagonal are empty) or as a binary file with short or float values (the float values
+   have no limit on the sequence length).
+ */
+package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
+
+import ch.irb.nodes.Node;
+import ch.irb.nodes.PackedSequence;
+import ch.irb.nodes.SequenceDiff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+public class DistanceMatrix {
+
+    static String ls = System.getProperty("line.separator");
+    // the formats of the matrix files
+    public static final String TSV = "tsv";
+    public static final String BINARY_SHORT = "binary";
+    public static final String BINARY_FLOAT = "float";
+    private static final int MATRIX_MAGIC = 0x444D4154; // "DMAT"
+    // version 2: the type of the values (short or float) is written after the DNA flag
+    private static final int MATRIX_VERSION = 2;
+    // the number of rows of a band, and of columns of a block computed by one task
+    private static final int BLOCK_SIZE = 64;
+    // the distances read from a binary file are stored in chunks, the upper triangle can have more than 2^31 values
+    private static final int CHUNK_BITS = 24;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private boolean isTreeEdges;
+    private boolean isDNA;
+    private String[] nodeIds;
+    // the tree edges: the index of the parent of each node (-1 for the root) and the edge to its parent
+    private int[] parentIndexes;
+    private int[] edges;
+    // the upper triangle read from a binary file, row by row: (0,1), (0,2)... (0,n-1), (1,2)...
+    private short[][] shortDistances;
+    private float[][] floatDistances;
+
+    private DistanceMatrix(boolean isTreeEdges, boolean isDNA, String[] nodeIds) {
+        this.isTreeEdges = isTreeEdges;
+        this.isDNA = isDNA;
+        this.nodeIds = nodeIds;
+    }
+
+    /*
+     * The number of nucleotidic (or AA) mutations between each parent and its children
+     */
+    public static DistanceMatrix computeTreeEdges(Node rootNode, boolean isDNA) {
+        ArrayList<Node> nodes = getPreorderNodes(rootNode);
+        DistanceMatrix matrix = new DistanceMatrix(true, isDNA, getNodeIds(nodes));
+        matrix.parentIndexes = new int[nodes.size()];
+        matrix.edges = new int[nodes.size()];
+        // the nodes are in preorder so the index of a child is after the index of its parent
+        HashMap<Node, Integer> nodeToIndex = new HashMap<>();
+        for (int index = 0; index < nodes.size(); index++) {
+            Node node = nodes.get(index);
+            Integer parentIndex = nodeToIndex.get(node.getParent());
+            matrix.parentIndexes[index] = parentIndex == null ? -1 : parentIndex;
+            if (parentIndex != null) {
+                matrix.edges[index] = isDNA ? node.getNumberOfNucMutationsWithParent()
+                        : node.getNumberOfAAMutationsWithParent();
+            }
+            nodeToIndex.put(node, index);
+        }
+        return matrix;
+    }
+
+    /*
+     * Write the Hamming distances between all the nodes of the tree, in the preorder of the tree, in the given format
+     * (TSV, BINARY_SHORT or BINARY_FLOAT)
+     */
+    public static void writeHammingDistances(Node rootNode, boolean isDNA, File matrixFile, String format)
+            throws Exception {
+        writeHammingDistances(getPreorderNodes(rootNode), isDNA, matrixFile, format);
+    }
+
+    public static void writeHammingDistances(List<Node> nodes, boolean isDNA, File matrixFile, String format)
+            throws Exception {
+        final int n = nodes.size();
+        final PackedSequence[] sequences = new PackedSequence[n];
+        final String[] proteinSequences = new String[n];
+        for (int i = 0; i < n; i++) {
+            Node node = nodes.get(i);
+            if (isDNA) {
+                sequences[i] = node.getPackedSequence();
+            } else {
+                proteinSequences[i] = node.getProteinSequence();
+            }
+            int length = isDNA ? sequences[i].length() : proteinSequences[i].length();
+            if (format.equals(BINARY_SHORT) && length > Short.MAX_VALUE) {
+                throw new Exception("The sequence of " + node.getNodeId() + " is too long for a distance matrix of "
+                        + "shorts (" + length + "), use the float format.");
+            }
+        }
+        String[] nodeIds = getNodeIds(nodes);
+        boolean isTsv = format.equals(TSV);
+        final int[][] band = new int[BLOCK_SIZE][n];
+        BufferedWriter tsv = null;
+        DataOutputStream binary = null;
+        try {
+            if (isTsv) {
+                tsv = new BufferedWriter(new FileWriter(matrixFile), 1 << 16);
+                writeTsvHeader(tsv, nodeIds);
+            } else {
+                binary = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(matrixFile), 1 << 16));
+                writeHeader(binary, false, isDNA, format.equals(BINARY_FLOAT), nodeIds);
+            }
+            for (int bandStart = 0; bandStart < n; bandStart += BLOCK_SIZE) {
+                final int firstRow = bandStart;
+                final int lastRow = Math.min(bandStart + BLOCK_SIZE, n);
+                ArrayList<RecursiveAction> blocks = new ArrayList<>();
+                for (int columnStart = firstRow; columnStart < n; columnStart += BLOCK_SIZE) {
+                    final int firstColumn = columnStart;
+                    blocks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            int lastColumn = Math.min(firstColumn + BLOCK_SIZE, n);
+                            for (int i = firstRow; i < lastRow; i++) {
+                                int[] row = band[i - firstRow];
+                                for (int j = Math.max(i + 1, firstColumn); j < lastColumn; j++) {
+                                    row[j] = sequences[i] != null
+                                            ? SequenceDiff.countDifferences(sequences[i], sequences[j])
+                                            : SequenceDiff.countDifferences(proteinSequences[i], proteinSequences[j]);
+                                }
+                            }
+                        }
+                    });
+                }
+                ForkJoinTask.invokeAll(blocks);
+                // the band is written before the next one is computed
+                StringBuilder line = new StringBuilder();
+                for (int i = firstRow; i < lastRow; i++) {
+                    int[] row = band[i - firstRow];
+                    if (isTsv) {
+                        line.setLength(0);
+                        line.append(nodeIds[i]);
+                        for (int j = 0; j < i; j++) {
+                            line.append('\t');
+                        }
+                        line.append("\t0");
+                        for (int j = i + 1; j < n; j++) {
+                            line.append('\t').append(row[j]);
+                        }
+                        tsv.write(line.toString());
+                        tsv.write(ls);
+                    } else {
+                        for (int j = i + 1; j < n; j++) {
+                            writeValue(binary, row[j], format.equals(BINARY_FLOAT));
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (binary != null) {
+                binary.close();
+            }
+            if (tsv != null) {
+                tsv.close();
+            }
+        }
+    }
+
+    private static ArrayList<Node> getPreorderNodes(Node rootNode) {
+        ArrayList<Node> nodes = new ArrayList<>();
+        ArrayDeque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(rootNode);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            nodes.add(node);
+            ArrayList<Node> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                toVisit.push(children.get(i));
+            }
+        }
+        return nodes;
+    }
+
+    private static String[] getNodeIds(List<Node> nodes) {
+        String[] nodeIds = new String[nodes.size()];
+        for (int i = 0; i < nodeIds.length; i++) {
+            nodeIds[i] = nodes.get(i).getNodeId();
+        }
+        return nodeIds;
+    }
+
+    /*
+     * The index of (row, column) in the upper triangle, as a long: it has n*(n-1)/2 values
+     */
+    private long getIndex(int row, int column) {
+        long n = nodeIds.length;
+        return row * (2 * n - row - 1) / 2 + column - row - 1;
+    }
+
+    /*
+     * The Hamming matrix is symmetric, the tree edges go from the parent (row) to the child (column)
+     */
+    public float getDistance(int row, int column) {
+        if (row == column) {
+            return 0;
+        }
+        if (row > column) {
+            if (isTreeEdges) {
+                return 0;
+            }
+            int swap = row;
+            row = column;
+            column = swap;
+        }
+        if (parentIndexes != null) {
+            return parentIndexes[column] == row ? edges[column] : 0;
+        }
+        long index = getIndex(row, column);
+        int chunk = (int) (index >>> CHUNK_BITS);
+        int offset = (int) (index & CHUNK_MASK);
+        return shortDistances != null ? shortDistances[chunk][offset] : floatDistances[chunk][offset];
+    }
+
+    public String[] getNodeIds() {
+        return nodeIds;
+    }
+
+    public int size() {
+        return nodeIds.length;
+    }
+
+    public boolean isTreeEdges() {
+        return isTreeEdges;
+    }
+
+    public boolean isDNA() {
+        return isDNA;
+    }
+
+    /*
+     * The first line has the node ids, then each line is a node id followed by its distances in the upper triangle
+     * (the cells before the diagonal are empty), like the TSV files of writeHammingDistances
+     */
+    public void writeTsv(File matrixFile) throws IOException {
+        BufferedWriter out = new BufferedWriter(new FileWriter(matrixFile), 1 << 16);
+        try {
+            writeTsvHeader(out, nodeIds);
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < nodeIds.length; i++) {
+                line.setLength(0);
+                line.append(nodeIds[i]);
+                for (int j = 0; j < i; j++) {
+                    line.append('\t');
+                }
+                for (int j = i; j < nodeIds.length; j++) {
+                    float distance = getDistance(i, j);
+                    line.append('\t');
+                    if (distance == (int) distance) {
+                        line.append((int) distance);
+                    } else {
+                        line.append(distance);
+                    }
+                }
+                out.write(line.toString());
+                out.write(ls);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeTsvHeader(BufferedWriter out, String[] nodeIds) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String nodeId : nodeIds) {
+            line.append('\t').append(nodeId);
+        }
+        out.write(line.toString());
+        out.write(ls);
+    }
+
+    /*
+     * Binary format: magic, version, tree edges or Hamming, DNA or AA, float or short values, number of nodes, the node
+     * ids, then the upper triangle row by row
+     */
+    public void writeBinary(File matrixFile, boolean isFloat) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(matrixFile),
+                1 << 16));
+        try {
+            writeHeader(out, isTreeEdges, isDNA, isFloat, nodeIds);
+            for (int i = 0; i < nodeIds.length; i++) {
+                for (int j = i + 1; j < nodeIds.length; j++) {
+                    writeValue(out, getDistance(i, j), isFloat);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, boolean isTreeEdges, boolean isDNA, boolean isFloat,
+                                    String[] nodeIds) throws IOException {
+        out.writeInt(MATRIX_MAGIC);
+        out.writeInt(MATRIX_VERSION);
+        out.writeBoolean(isTreeEdges);
+        out.writeBoolean(isDNA);
+        out.writeBoolean(isFloat);
+        out.writeInt(nodeIds.length);
+        for (String nodeId : nodeIds) {
+            out.writeUTF(nodeId);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, float distance, boolean isFloat) throws IOException {
+        if (isFloat) {
+            out.writeFloat(distance);
+        } else {
+            out.writeShort((short) distance);
+        }
+    }
+
+    public static DistanceMatrix readBinary(File matrixFile) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(matrixFile), 1 << 16));
+        try {
+            if (in.readInt() != MATRIX_MAGIC) {
+                throw new Exception("The file " + matrixFile.getName() + " is not a distance matrix file.");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > MATRIX_VERSION) {
+                throw new Exception("The distance matrix file " + matrixFile.getName() + " has an unknown version ("
+                        + version + ").");
+            }
+            boolean isTreeEdges = in.readBoolean();
+            boolean isDNA = in.readBoolean();
+            // the version 1 files have only short values
+            boolean isFloat = version >= 2 && in.readBoolean();
+            String[] nodeIds = new String[in.readInt()];
+            for (int i = 0; i < nodeIds.length; i++) {
+                nodeIds[i] = in.readUTF();
+            }
+            DistanceMatrix matrix = new DistanceMatrix(isTreeEdges, isDNA, nodeIds);
+            long valuesNumber = (long) nodeIds.length * (nodeIds.length - 1) / 2;
+            int chunksNumber = (int) ((valuesNumber + CHUNK_MASK) >>> CHUNK_BITS);
+            if (isFloat) {
+                matrix.floatDistances = new float[chunksNumber][];
+            } else {
+                matrix.shortDistances = new short[chunksNumber][];
+            }
+            for (int chunk = 0; chunk < chunksNumber; chunk++) {
+                int chunkSize = (int) Math.min(CHUNK_MASK + 1, valuesNumber - ((long) chunk << CHUNK_BITS));
+                if (isFloat) {
+                    float[] values = new float[chunkSize];
+                    for (int i = 0; i < chunkSize; i++) {
+                        values[i] = in.readFloat();
+                    }
+                    matrix.floatDistances[chunk] = values;
+                } else {
+                    short[] values = new short[chunkSize];
+                    for (int i = 0; i < chunkSize; i++) {
+                        values[i] = in.readShort();
+                    }
+                    matrix.shortDistances[chunk] = values;
+                }
+            }
+            return matrix;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -714,38 +714,7 @@ public class DnamlOutputParser {
 
     private void createMatrixTreeFile()throws IOException{
         File matrixFile = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName + fs + projectName + "_matrixTree.tsv");
-        BufferedWriter out = new BufferedWriter(new FileWriter(matrixFile));
-        ArrayList<Node> orderedNodes = new ArrayList<>();
-        writeNodeAndChildrenIds(out,rootNode,orderedNodes);
-        out.write(ls);
-        for (Node node: orderedNodes){
-            out.write(node.getNodeId());
-            ArrayList<Node> children = node.getChildren();
-            //determine the relation
-            for (Node node2: orderedNodes){
-                int edge=0;
-                for (Node kid: children){
-                    if (kid.getNodeId().equals(node2.getNodeId())){
-                        edge = kid.getNumberOfNucMutationsWithParent();
-                        break;
-                    }
-                }
-                out.write("\t"+edge);
-            }
-            out.write(ls);
-        }
-        out.close();
-    }
-
-    private void writeNodeAndChildrenIds(BufferedWriter out, Node node,ArrayList<Node> orderedNodes) throws IOException {
-        orderedNodes.add(node);
-        if (!node.isRoot()){
-            out.write("\t");
-        }
-        out.write(node.getNodeId());
-        for (Node kid :node.getChildren()){
-            writeNodeAndChildrenIds(out,kid,orderedNodes);
-        }
+        DistanceMatrix.computeTreeEdges(rootNode, isDNA).writeTsv(matrixFile);
     }
 
 
@@ -36,9 +36,6 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.xml.bind.JAXBException;
-
-import org.xml.sax.SAXException;
 
 import ch.irb.IgGenealogicTreeViewer.IgTreeViewerFrame;
 import ch.irb.ManageFastaFiles.FastaFilter;
@@ -163,11 +160,7 @@ public class DnamlTreeChooserFrame extends JFrame implements ActionListener {
             }
         } else if (e.getSource() == runButton) {
             //Finally launch the parser
-            try {
-                launchParser();
-            } catch (FastaFormatException e1) {
-                e1.printStackTrace();
-            }
+            launchParser();
         } else if (e.getSource() == checkBoxNGS) {
             hasReadsInId = checkBoxNGS.isSelected();
         }
@@ -185,18 +178,26 @@ public class DnamlTreeChooserFrame extends JFrame implements ActionListener {
         }
     }
 
-    private void launchParser() throws FastaFormatException {
-        try {
-            @SuppressWarnings("unused")
-            InputParser parser = new InputParser(dnamlFile, imgtFile, igTreeViewerFrame, hasReadsInId);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (JAXBException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /*
+     * The conversion runs in a background thread, the RUN button is enabled again when it is finished
+     */
+    private void launchParser() {
+        final File dnamlFile = this.dnamlFile;
+        final File imgtFile = this.imgtFile;
+        final boolean hasReadsInId = this.hasReadsInId;
+        runButton.setEnabled(false);
+        ConversionWorker worker = new ConversionWorker(this, igTreeViewerFrame, dnamlFile.getName()) {
+            @Override
+            protected String convert(InputParser parser) throws Exception {
+                return parser.convertDnaml(dnamlFile, imgtFile, hasReadsInId, this);
+            }
+
+            @Override
+            protected void done() {
+                super.done();
+                runButton.setEnabled(true);
+            }
+        };
+        worker.execute();
     }
 }
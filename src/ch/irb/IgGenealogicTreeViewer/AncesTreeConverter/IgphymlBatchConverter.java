@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class converts all the clones of an IgPhyML run into AncesTree XML files, without GUI.
+   The change-o AIRR file and the fasta file of intermediate sequences are indexed once, the IgPhyML tab file is read
+   only once, then the clones are processed in parallel. A summary of the conversion is written in the output folder.
+   If a distance matrix format is given (tsv, binary for shorts or float), the nucleotidic and AA distance matrices of
+   each clone are written next to its XML file.
+
+   Usage: java -cp AncesTree.jar ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.IgphymlBatchConverter
+          <change-o AIRR file> <IgPhyML tab file> [number of threads]
+          [distance matrix format: tsv, binary or float]
+ */
+package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
+
+import ch.irb.IgGenealogicTreeViewer.airr.AirrFileIndex;
+import ch.irb.IgGenealogicTreeViewer.airr.IgPhyMLParser;
+import ch.irb.ManageFastaFiles.FastaFileIndex;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class IgphymlBatchConverter {
+
+    static Logger logger = Logger.getLogger(IgphymlBatchConverter.class);
+    static String fs = System.getProperty("file.separator");
+    static String ls = System.getProperty("line.separator");
+
+    private File airrFile;
+    private File igPhyMLfile;
+    private int threadsNumber;
+    private String matrixFormat = null; // no distance matrix if null
+    private ArrayList<CloneResult> cloneResults = new ArrayList<>();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 2) {
+            System.err.println("Usage: IgphymlBatchConverter <change-o AIRR file> <IgPhyML tab file> [number of threads]"
+                    + " [distance matrix format: tsv, binary or float]");
+            System.exit(1);
+        }
+        int threadsNumber = Runtime.getRuntime().availableProcessors();
+        if (args.length > 2) {
+            threadsNumber = Integer.parseInt(args[2]);
+        }
+        try {
+            IgphymlBatchConverter converter = new IgphymlBatchConverter(new File(args[0]), new File(args[1]),
+                    threadsNumber);
+            if (args.length > 3) {
+                converter.setMatrixFormat(args[3]);
+            }
+            converter.convertAllClones();
+            File summaryFile = converter.writeSummary();
+            System.out.println(converter.getSuccessNumber() + " clone(s) converted, " + converter.getFailureNumber()
+                    + " failed. Summary written in " + summaryFile.getPath());
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public IgphymlBatchConverter(File airrFile, File igPhyMLfile, int threadsNumber) {
+        this.airrFile = airrFile.getAbsoluteFile();
+        this.igPhyMLfile = igPhyMLfile.getAbsoluteFile();
+        this.threadsNumber = threadsNumber;
+    }
+
+    public void setMatrixFormat(String matrixFormat) throws Exception {
+        if (!matrixFormat.equals(DistanceMatrix.TSV) && !matrixFormat.equals(DistanceMatrix.BINARY_SHORT)
+                && !matrixFormat.equals(DistanceMatrix.BINARY_FLOAT)) {
+            throw new Exception("Unknown distance matrix format '" + matrixFormat
+                    + "', it should be tsv, binary or float.");
+        }
+        this.matrixFormat = matrixFormat;
+    }
+
+    /*
+     * We parse the input files once, then each clone is converted on a fork-join pool sized to the number of threads
+     */
+    public ArrayList<CloneResult> convertAllClones() throws Exception {
+        File outputDir = new File(System.getProperty("user.dir") + fs + "output");
+        if (!outputDir.exists()) {
+            outputDir.mkdir();
+        }
+        File asrFastaFile = new File(igPhyMLfile.getParent() + fs + igPhyMLfile.getName()
+                .replace(".tab", "_hlp_asr.fasta"));
+        if (!asrFastaFile.exists()) {
+            throw new Exception("The fasta file which contains the tree intermediate sequences is not found: '"
+                    + asrFastaFile.getName() + "'.");
+        }
+        final IgPhyMLParser igPhyMLParser = IgPhyMLParser.getParser(igPhyMLfile);
+        // the indexes are built (or loaded) here, then each clone reads only its own rows and sequences
+        AirrFileIndex.getIndex(airrFile);
+        FastaFileIndex.getIndex(asrFastaFile);
+
+        ArrayList<Callable<CloneResult>> tasks = new ArrayList<>();
+        for (final String cloneId : igPhyMLParser.getCloneIds()) {
+            tasks.add(new Callable<CloneResult>() {
+                @Override
+                public CloneResult call() {
+                    try {
+                        InputParser parser = new InputParser(airrFile, igPhyMLfile, cloneId, igPhyMLParser);
+                        if (matrixFormat != null) {
+                            parser.writeDistanceMatrices(matrixFormat);
+                        }
+                        return new CloneResult(cloneId, true, parser.getIgTree_xml());
+                    } catch (Throwable e) {
+                        String error = e.getMessage() != null ? e.getMessage() : e.toString();
+                        logger.error("Clone id " + cloneId + " failed: " + error, e);
+                        return new CloneResult(cloneId, false, error);
+                    }
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threadsNumber);
+        try {
+            List<Future<CloneResult>> futures = pool.invokeAll(tasks);
+            for (Future<CloneResult> future : futures) {
+                cloneResults.add(future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return cloneResults;
+    }
+
+    /*
+     * The summary is a TSV file with one line per clone: clone_id, status and XML file (or error message)
+     */
+    public File writeSummary() throws IOException {
+        File summaryFile = new File(System.getProperty("user.dir") + fs + "output" + fs + igPhyMLfile.getName()
+                .replace("_igphyml-pass.tab", "").replace(".tab", "") + "_batch_summary.tsv");
+        BufferedWriter out = new BufferedWriter(new FileWriter(summaryFile));
+        out.write("clone_id\tstatus\tresult" + ls);
+        for (CloneResult cloneResult : cloneResults) {
+            String status = cloneResult.isSuccess() ? "OK" : "FAILED";
+            out.write(cloneResult.getCloneId() + "\t" + status + "\t"
+                    + cloneResult.getMessage().replaceAll("\\s+", " ") + ls);
+        }
+        out.close();
+        return summaryFile;
+    }
+
+    public int getSuccessNumber() {
+        int number = 0;
+        for (CloneResult cloneResult : cloneResults) {
+            if (cloneResult.isSuccess()) {
+                number++;
+            }
+        }
+        return number;
+    }
+
+    public int getFailureNumber() {
+        return cloneResults.size() - getSuccessNumber();
+    }
+
+    public ArrayList<CloneResult> getCloneResults() {
+        return cloneResults;
+    }
+
+    public static class CloneResult {
+        private String cloneId;
+        private boolean success;
+        private String message; // XML file path if success, error otherwise
+
+        public CloneResult(String cloneId, boolean success, String message) {
+            this.cloneId = cloneId;
+            this.success = success;
+            this.message = message;
+        }
+
+        public String getCloneId() {
+            return cloneId;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -19,13 +19,12 @@ package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
 
 import ch.irb.IgGenealogicTreeViewer.IgTreeViewerFrame;
 import ch.irb.IgGenealogicTreeViewer.airr.AirrFilter;
+import ch.irb.IgGenealogicTreeViewer.airr.IgPhyMLParser;
 import ch.irb.IgGenealogicTreeViewer.airr.TabFilter;
 import ch.irb.ManageFastaFiles.FastaFormatException;
 import ch.irb.currentDirectory.GetSetCurrentDirectory;
-import org.xml.sax.SAXException;
 
 import javax.swing.*;
-import javax.xml.bind.JAXBException;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -36,7 +35,6 @@ import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.IOException;
 import java.util.*;
 
 @SuppressWarnings("serial")
@@ -205,28 +203,20 @@ public class IgphymlTreeChooserFrame extends JFrame implements ActionListener {
             }
         } else if (e.getSource() == runButton) {
             //Finally launch the parser
-            try {
-                launchParser();
-            } catch (FastaFormatException ex) {
-                ex.printStackTrace();
-            }
+            launchParser();
 
         }
     }
 
     private void checkValidAIRRfile() throws Exception {
+        //only the header is read here, the index of the file (see AirrFileIndex) is built or loaded by the conversion,
+        //in its background thread
         BufferedReader fileReader = new BufferedReader(new FileReader(changeoAirrFile));
-        String line = "";
-        int index = 0;
-        String header = "";
-        while ((line = fileReader.readLine()) != null) {
-            if (index == 0) {
-                header = line;
-                break;
-            }
-            index++;
-        }
+        String header = fileReader.readLine();
         fileReader.close();
+        if (header == null) {
+            header = "";
+        }
         //check that we have the required field!!
         ArrayList<String> requiredAirrFields = new ArrayList<>();
         requiredAirrFields.add("sequence_id");
@@ -280,32 +270,24 @@ public class IgphymlTreeChooserFrame extends JFrame implements ActionListener {
         ArrayList<String> cloneIdsArray = new ArrayList<>();
         //The cloneIds list is sorted by size, we want to sort it by name too
         TreeMap<Integer, ArrayList<String>> sizeToCloneIds = new TreeMap<>();
-        BufferedReader fileReader = new BufferedReader(new FileReader(igphymlFile));
-        String line = "";
-        int index = 0;
-        String header = "";
-        while ((line = fileReader.readLine()) != null) {
-            if (index == 0) {
-                header = line;
-            } else if (index > 1) { //we store the clone Ids
-                String[] cells = line.split("\t");
-                if (cells == null) {
-                    throw new Exception("The IgPhyML file '" + igphymlFile.getName() + "' is not a TAB file.");
-                }
-                //System.out.println("We store clone id "+cells[0]);
-                cloneIdsArray.add(cells[0] + " (NSEQ= " + cells[1] + ")");
-                ArrayList<String> cloneIds= new ArrayList<>();
-                int size= Integer.parseInt(cells[1]);
-                if (sizeToCloneIds.containsKey(size)){
-                    cloneIds= sizeToCloneIds.get(size);
-                }
-                cloneIds.add(cells[0] + " (NSEQ= " + cells[1] + ")");
-                sizeToCloneIds.put(size,cloneIds);
-                //System.out.println(size+": "+cloneIds);
+        //the clone list is served by the index of the IgPhyML file, the same index is used to get the tree of the clone
+        IgPhyMLParser igPhyMLParser = IgPhyMLParser.getParser(igphymlFile);
+        String header = igPhyMLParser.getHeader();
+        for (String cloneIdInFile : igPhyMLParser.getCloneIds()) {
+            int size = igPhyMLParser.getNseq(cloneIdInFile);
+            if (size < 0) {
+                throw new Exception("The IgPhyML file '" + igphymlFile.getName() + "' is not a TAB file.");
+            }
+            //System.out.println("We store clone id "+cloneIdInFile);
+            cloneIdsArray.add(cloneIdInFile + " (NSEQ= " + size + ")");
+            ArrayList<String> cloneIds= new ArrayList<>();
+            if (sizeToCloneIds.containsKey(size)){
+                cloneIds= sizeToCloneIds.get(size);
             }
-            index++;
+            cloneIds.add(cloneIdInFile + " (NSEQ= " + size + ")");
+            sizeToCloneIds.put(size,cloneIds);
+            //System.out.println(size+": "+cloneIds);
         }
-        fileReader.close();
         if (!header.matches("CLONE.*TREE")) {
             throw new Exception("CLONE and TREE fields are not found in the IgPhyML file '" + igphymlFile.getName() + "'.");
         }
@@ -349,19 +331,27 @@ public class IgphymlTreeChooserFrame extends JFrame implements ActionListener {
     }
 
 
-    private void launchParser() throws FastaFormatException {
-        try {
-            @SuppressWarnings("unused")
-            InputParser parser = new InputParser(changeoAirrFile, igphymlFile, cloneId, igTreeViewerFrame);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (JAXBException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /*
+     * The conversion runs in a background thread, the RUN button is enabled again when it is finished
+     */
+    private void launchParser() {
+        final File changeoAirrFile = this.changeoAirrFile;
+        final File igphymlFile = this.igphymlFile;
+        final String cloneId = this.cloneId;
+        runButton.setEnabled(false);
+        ConversionWorker worker = new ConversionWorker(this, igTreeViewerFrame, "clone " + cloneId) {
+            @Override
+            protected String convert(InputParser parser) throws Exception {
+                return parser.convertAirr(changeoAirrFile, igphymlFile, cloneId, this);
+            }
+
+            @Override
+            protected void done() {
+                super.done();
+                runButton.setEnabled(true);
+            }
+        };
+        worker.execute();
     }
 
 
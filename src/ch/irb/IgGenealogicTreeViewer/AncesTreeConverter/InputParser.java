@@ -23,24 +23,24 @@ import ch.irb.IgGenealogicTreeMaker.NodesSorting;
 import ch.irb.IgGenealogicTreeViewer.IgTreeViewerFrame;
 import ch.irb.IgGenealogicTreeViewer.airr.IgPhyMLParser;
 import ch.irb.IgGenealogicTreeViewer.airr.TsvAirrParser;
-import ch.irb.ManageFastaFiles.FastaFileParser;
+import ch.irb.ManageFastaFiles.FastaFileIndex;
 import ch.irb.ManageFastaFiles.FastaFormatException;
 import ch.irb.IgGenealogicTreeViewer.airr.ProcessAIRRdata;
 import ch.irb.imgt.ProcessIMGTData;
 import ch.irb.nodes.Node;
+import ch.irb.nodes.PackedSequence;
 import org.apache.log4j.Logger;
 import org.xml.sax.SAXException;
 
 import javax.swing.*;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 import java.awt.*;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -79,12 +79,27 @@ public class InputParser {
     @XmlTransient
     private String igTree_xml = "";
 
-    private ArrayList<String> bpIsIg = new ArrayList<>();
+    // the patterns used for each node/edge of the tree
+    private static final Pattern BP_ID_PATTERN = Pattern.compile("BP\\d+");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+    private static final Pattern SPACES_PATTERN = Pattern.compile("\\s{2,}");
+    // the IUPAC codes we resolve and their 2 possible nucleotides (index in NUCLEOTIDES)
+    private static final String NUCLEOTIDES = "ACGT";
+    private static final String IUPAC_CODES = "RYSMKW";
+    private static final int[][] IUPAC_NUCLEOTIDES = {{0, 2}, {3, 1}, {2, 1}, {0, 1}, {2, 3}, {0, 3}};
+
+    private HashSet<String> bpIsIg = new HashSet<>();
     private HashMap<String, String> idToSequence = new HashMap<>();
     private HashMap<Node, ArrayList<Ig>> nodeToIgsList = new HashMap<>();
-    private HashMap<String, Node> sequenceToNode = new HashMap<>();
-    private HashMap<String, ArrayList<String>> sequenceToIds = new HashMap<>();
+    // the sequences used as keys are packed (2 bits per nucleotide) to open big clones
+    private HashMap<PackedSequence, Node> sequenceToNode = new HashMap<>();
+    private HashMap<PackedSequence, ArrayList<String>> sequenceToIds = new HashMap<>();
     private ArrayList<Node> nodes = new ArrayList<>();
+    // to build the tree in linear time: the nodes already in 'nodes', the ids of the Igs already linked to a node and
+    // the ids of the children of each parent
+    private HashSet<Node> nodesSet = new HashSet<>();
+    private HashSet<String> linkedIgIds = new HashSet<>();
+    private HashMap<Node, HashSet<String>> parentToChildIds = new HashMap<>();
     private File dnamlOutputFile;
     private File airrInputFile;
     private File igPhyMLfile;
@@ -95,7 +110,21 @@ public class InputParser {
     private HashMap<String, String> originalBPidtoBPid = new HashMap<>();
     private TsvAirrParser tsvAirrParser;
     private IgPhyMLParser igPhyMLParser;
+    private NewickTree newickTree;
     private HashSet<String> nodeNames = new HashSet<>();
+    private boolean isHeadless = false;
+    private StageListener stageListener = null;
+
+    /**
+     * The listener of the stages of a conversion (see ConversionWorker), it is called in the thread of the conversion.
+     */
+    interface StageListener {
+        /*
+         * A new stage starts, progress is the part of the conversion already done (from 0 to 100). The conversion is
+         * stopped if an InterruptedException is thrown
+         */
+        void stageStarted(String stage, int progress) throws InterruptedException;
+    }
 
     public static void main(String[] args) {
         try {
@@ -134,59 +163,77 @@ public class InputParser {
      */
     public InputParser(File dnamlOutputFile, File IMGTFile, IgTreeViewerFrame igTreeViewerFrame,
                        boolean hasReadsInId) throws Exception {
-        this.isDnamlInput = true;
+        this(igTreeViewerFrame);
+        if (convertDnaml(dnamlOutputFile, IMGTFile, hasReadsInId, null) != null) {
+            launchGUI2();
+        }
+    }
+
+    /*
+   This constructor is used in the case of an airr format tab file, generated by changeo + IgPhyML output + cloneId to process
+    */
+    public InputParser(File airrInputFile, File igPhyMLfile, String cloneId, IgTreeViewerFrame igTreeViewerFrame) throws Exception {
+        this(igTreeViewerFrame);
+        if (convertAirr(airrInputFile, igPhyMLfile, cloneId, null) != null) {
+            launchGUI2();
+        }
+    }
+
+    /*
+    This constructor is used by ConversionWorker, which runs the conversion in a background thread and then shows the
+    tree in this IgTreeViewerFrame
+     */
+    InputParser(IgTreeViewerFrame igTreeViewerFrame) {
         this.igTreeViewerFrame = igTreeViewerFrame;
+    }
+
+    /*
+     * Convert a dnaml output file, the stages are reported to the listener (it can be null). Return the path of the
+     * XML file, or null if the input is not valid (the error was shown to the user)
+     */
+    String convertDnaml(File dnamlOutputFile, File IMGTFile, boolean hasReadsInId, StageListener stageListener)
+            throws Exception {
+        this.isDnamlInput = true;
         this.dnamlOutputFile = dnamlOutputFile;
         this.hasReadsInId = hasReadsInId;
+        this.stageListener = stageListener;
         // //logger.debug("Parse file " + dnamlOutputFile.getName());
         // We create a project by taking the name of the dnaml output file
         projectName = dnamlOutputFile.getName().replaceAll("\\..*", "");
         // create the directory if it doesnt exist
-        File dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
-        if (!dir.exists()) {
-            dir.mkdir();
-        } else { //we add a number
-            int i = 2;
-            while (dir.exists()) {
-                if (projectName.matches(".*_\\d+")) {
-                    int indexUnderscore = projectName.lastIndexOf("_");
-                    projectName = projectName.substring(0, indexUnderscore);
-                }
-                projectName += "_" + i;
-                dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
-                i++;
-            }
-            dir.mkdir();
-        }
+        projectName = createProjectDirectory(projectName);
+        startStage("Checking the dnaml output file", 0);
         String error = checkIfValidInputDnaml();
         if (error != null) {
             // here the related JFrame has to be passed in arguments!!!
-            JOptionPane.showMessageDialog(igTreeViewerFrame, error, "Invalid dnaml output file",
-                    JOptionPane.ERROR_MESSAGE);
-            return;
+            showMessage(error, "Invalid dnaml output file", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
         // we store the IMGT info
         if (IMGTFile != null) {
             isImgtFormatLoaded = true;
         }
+        startStage("Storing the sequences", 10);
         storeSequencesDnaml();
+        startStage("Rebuilding the tree", 25);
         rebuildTree(null);
         // In the case of insertion/deletion, if there is information about the
         // CDR/FR regions we change them
         // and we set these regions for the BPs sequences as well
         if (isImgtFormatLoaded) {
+            startStage("Processing the IMGT data", 50);
             try {
                 @SuppressWarnings("unused")
                 ProcessIMGTData process = new ProcessIMGTData(IMGTFile, nodes);
             } catch (Exception e) {
                 // get error from IMGT file parser
-                JOptionPane.showMessageDialog(igTreeViewerFrame, e.getMessage(), "Wrong IMGT data sequence",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
+                showMessage(e.getMessage(), "Wrong IMGT data sequence", JOptionPane.ERROR_MESSAGE);
+                return null;
             }
         }
 
         if (isImgtFormatLoaded) {
+            startStage("Writing the BASELINe fasta files", 65);
             // we sort the Ig like it will appear into the alignment
             NodesSorting nodesSorting = new NodesSorting(nodes);
             ArrayList<Node> sortedNodes = nodesSorting.getOrderedNodes();
@@ -194,24 +241,22 @@ public class InputParser {
             createFileForBaselineWithoutCDR3(sortedNodes);
         }
 
-        HashMap<String, String> fastaIdToSeq = new HashMap<>();
-        for (Node node : nodes) {
-            if (!node.isRoot() && !node.isBP()) {
-                fastaIdToSeq.put(node.getNodeId(), node.getSequence());
-            }
-        }
+        startStage("Writing the XML file", 75);
         createXMLFile();
         //not necessary for the release
         //createMatrixTreeFile();
-        launchGUI2();
+        return igTree_xml;
     }
 
     /*
-   This constructor is used in the case of an airr format tab file, generated by changeo + IgPhyML output + cloneId to process
-    */
-    public InputParser(File airrInputFile, File igPhyMLfile, String cloneId, IgTreeViewerFrame igTreeViewerFrame) throws Exception {
+     * Convert an airr format tab file and the IgPhyML output for one clone, the stages are reported to the listener
+     * (it can be null). Return the path of the XML file, or null if the input is not valid (the error was shown to
+     * the user). In a headless conversion the error is thrown instead (see showMessage)
+     */
+    String convertAirr(File airrInputFile, File igPhyMLfile, String cloneId, StageListener stageListener)
+            throws Exception {
         this.isDnamlInput = false;
-        this.igTreeViewerFrame = igTreeViewerFrame;
+        this.stageListener = stageListener;
         this.airrInputFile = airrInputFile;
         this.igPhyMLfile = igPhyMLfile;
         igPhyMLfastafile = new File(igPhyMLfile.getParent() + System.getProperty("file.separator") + igPhyMLfile.getName()
@@ -221,62 +266,127 @@ public class InputParser {
         // We create a project by taking the name of the airr file + the cloneId
         projectName = igPhyMLfile.getName().replace("_igphyml-pass.tab", "") + "_cloneId" + cloneId;
         // create the directory if it doesnt exist
-        File dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
-        if (!dir.exists()) {
-            dir.mkdir();
-        } else { //we add a number
-            int i = 2;
-            while (dir.exists()) {
-                if (projectName.matches(".*_\\d+")) {
-                    int indexUnderscore = projectName.lastIndexOf("_");
-                    projectName = projectName.substring(0, indexUnderscore);
-                }
-                projectName += "_" + i;
-                dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
-                i++;
-            }
-            dir.mkdir();
-        }
+        projectName = createProjectDirectory(projectName);
         //
+        startStage("Checking the IgPhyML and AIRR files", 0);
         String error = checkIfValidAirrIgPhyMLInput(cloneId);
         if (error != null) {
             // here the related JFrame has to be passed in arguments!!!
-            JOptionPane.showMessageDialog(igTreeViewerFrame, error, "Invalid IgPhyML file",
-                    JOptionPane.ERROR_MESSAGE);
-            return;
+            showMessage(error, "Invalid IgPhyML file", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
 
+        startStage("Storing the sequences", 10);
         storeSequencesAirr(cloneId);
+        startStage("Rebuilding the tree", 25);
         rebuildTree(cloneId);
+        startStage("Setting the FR/CDR regions from the AIRR data", 50);
         boolean imgtInfo = true;
         try {
             // we set the FR/CDR regions using the AIRR data
             ProcessAIRRdata processAIRRdata = new ProcessAIRRdata(tsvAirrParser, cloneId, nodes);
         } catch (Exception e) {
             // get warning from IMGT file parser
-            JOptionPane.showMessageDialog(igTreeViewerFrame, e.getMessage(), "No FR/CDR regions information",
-                    JOptionPane.WARNING_MESSAGE);
+            showMessage(e.getMessage(), "No FR/CDR regions information", JOptionPane.WARNING_MESSAGE);
             imgtInfo = false;
         }
         // we sort the Ig like it will appear into the alignment
         if (imgtInfo) {
+            startStage("Writing the BASELINe fasta files", 65);
             NodesSorting nodesSorting = new NodesSorting(nodes);
             ArrayList<Node> sortedNodes = nodesSorting.getOrderedNodes();
             createFileForBaselineWithCDR3(sortedNodes);
             createFileForBaselineWithoutCDR3(sortedNodes);
         }
 
-
-        HashMap<String, String> fastaIdToSeq = new HashMap<>();
-        for (Node node : nodes) {
-            if (!node.isRoot() && !node.isBP()) {
-                fastaIdToSeq.put(node.getNodeId(), node.getSequence());
-            }
-        }
+        startStage("Writing the XML file", 75);
         createXMLFile();
         //not necessary for the release
         //createMatrixTreeFile();
-        launchGUI2();
+        return igTree_xml;
+    }
+
+    /*
+    This constructor is used by the headless batch conversion (IgphymlBatchConverter): the IgPhyML file is parsed once
+    and shared by all the clones, the AIRR file and the fasta file of intermediate sequences are read through their
+    indexes. No dialog is shown and no GUI is launched, the errors are thrown to the caller.
+     */
+    InputParser(File airrInputFile, File igPhyMLfile, String cloneId, IgPhyMLParser igPhyMLParser) throws Exception {
+        this.isHeadless = true;
+        this.igPhyMLParser = igPhyMLParser;
+        convertAirr(airrInputFile, igPhyMLfile, cloneId, null);
+    }
+
+    private void startStage(String stage, int progress) throws InterruptedException {
+        if (stageListener != null) {
+            stageListener.stageStarted(stage, progress);
+        }
+    }
+
+    /*
+     * The dialogs are shown in the event dispatch thread, the conversion waits until the user closed them. In a
+     * headless conversion an error is thrown to the caller and a warning is logged
+     */
+    private void showMessage(final String message, final String title, final int messageType) throws Exception {
+        if (isHeadless) {
+            if (messageType == JOptionPane.ERROR_MESSAGE) {
+                throw new Exception(message);
+            }
+            logger.warn(projectName + ": " + message);
+            return;
+        }
+        Runnable dialog = new Runnable() {
+            public void run() {
+                JOptionPane.showMessageDialog(igTreeViewerFrame, message, title, messageType);
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            dialog.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(dialog);
+            } catch (InterruptedException | InvocationTargetException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Delete the output directory of a conversion which was canceled, with the files already written
+     */
+    void deleteProjectDirectory() {
+        File dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /*
+     * Create the output directory of the project, if it already exists we add a number to the project name.
+     * It is synchronized because the batch conversion creates the projects in parallel
+     */
+    private static synchronized String createProjectDirectory(String projectName) {
+        File dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
+        if (!dir.exists()) {
+            dir.mkdir();
+        } else { //we add a number
+            int i = 2;
+            while (dir.exists()) {
+                if (projectName.matches(".*_\\d+")) {
+                    int indexUnderscore = projectName.lastIndexOf("_");
+                    projectName = projectName.substring(0, indexUnderscore);
+                }
+                projectName += "_" + i;
+                dir = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName);
+                i++;
+            }
+            dir.mkdir();
+        }
+        return projectName;
     }
 
     /*
@@ -317,12 +427,19 @@ public class InputParser {
         String error = null;
 
         //and in the IgPhyML file
-        String newickTree = getNewickTree(cloneId);
-        if (newickTree == null) {
+        String newick = getNewickTree(cloneId);
+        if (newick == null) {
             error = "There is no clone id " + cloneId + " in the IgPhyML file!";
+            return error;
+        }
+        try {
+            newickTree = NewickTree.parseNewick(newick);
+        } catch (Exception e) {
+            error = "The newick tree of the clone id " + cloneId + " in the IgPhyML file is not valid: " + e.getMessage();
+            return error;
         }
 
-        getNodeNames(newickTree);
+        getNodeNames();
         //check that the cloneId exists in the AIRR file
         tsvAirrParser = new TsvAirrParser(airrInputFile, cloneId, nodeNames);
         if (!tsvAirrParser.getClonalFamToAIIRobjs().containsKey(cloneId)) {
@@ -343,43 +460,35 @@ public class InputParser {
      * Get the newick tree for one clone
      */
     private String getNewickTree(String cloneId) throws IOException {
-        igPhyMLParser = new IgPhyMLParser(igPhyMLfile);
+        if (igPhyMLParser == null) {
+            igPhyMLParser = IgPhyMLParser.getParser(igPhyMLfile);
+        }
         return igPhyMLParser.getNewickTree(cloneId);
     }
 
-    private void getNodeNames(String newickTree) {
+    private void getNodeNames() {
         //First we store the Ig that will be in the tree, not all of them because of the "--collapse" option!!!
-        String newicktree = newickTree.replaceAll("\\\"", "");
-        //logger.debug("TREE is: " + newicktree);
-        BinaryTree<String> binaryTree = BinaryTree.parseNewick(newicktree);
-        //logger.debug(binaryTree.toString());
-        //logger.debug("///////////");
-        String stringTree = binaryTree.toTreeRelationship();
-        //logger.debug(stringTree);
-        Scanner scanner = new Scanner(stringTree);
-        scanner.useDelimiter("\\n");
-        String firstbp = null;
-        String uca = null;
-        // first use a Scanner to get each line
-        while (scanner.hasNext()) {
-            String line = scanner.next();
-            String[] cells = line.split(" ");
-            if (line.contains("_GER")) {
-                uca = line.trim();
-                nodeNames.add(uca);
-            } else if (firstbp == null && cells[0].length() < 1) {
-                firstbp = line.trim();
-                nodeNames.add(firstbp);
-            } else {
-                nodeNames.add(cells[0]);
-                nodeNames.add(cells[1]);
+        //IgPhyML does not name the root, it has the germline as child
+        for (NewickTree newickNode : newickTree.getPreorderNodes()) {
+            if (newickNode.getName().length() > 0) {
+                nodeNames.add(newickNode.getName());
             }
         }
-        //logger.debug("First bp is " + firstbp);
-        //logger.debug("UCA is " + uca);
         //logger.debug("\nNodes in the tree: " + nodeNames + "\n");
     }
 
+    /*
+     * The germline (UCA) is the first node with '_GER' in its id: the root of the tree, or a child of the unnamed root
+     */
+    private NewickTree getGermlineNode() throws Exception {
+        for (NewickTree newickNode : newickTree.getPreorderNodes()) {
+            if (newickNode.getName().contains("_GER")) {
+                return newickNode;
+            }
+        }
+        throw new Exception("The germline sequence (id with '_GERM') is not found in the newick tree.");
+    }
+
     /*
      * Then we get all sequences, compare them if they are some identical
      */
@@ -396,47 +505,47 @@ public class InputParser {
             idToSeqToProcess.put(sequenceId, seq);
         }
 
-        //we store the shared dots '.'
+        //we store the shared dots '.': the dots of the first sequence, then we keep only the columns which are dots
+        //in all the other sequences
         Map.Entry<String, String> entry = idToSeqToProcess.entrySet().iterator().next();
         String firstSeq = entry.getValue();
-        int i = 0;
-        ArrayList<Integer> pointsToRemove = new ArrayList<>();
+        BitSet pointsToRemove = new BitSet(firstSeq.length());
         //fixed the 29.01.21 if all sequences have their first nuc missing it does not work (Jun data!)
         boolean begin=true;
-        for (char n : firstSeq.toCharArray()) {
-            if (n == '.') {
-                boolean remove = true;
-                for (String id : idToSeqToProcess.keySet()) {
-                    if (idToSeqToProcess.get(id).charAt(i) != '.') {
-                        remove = false;
-                        break;
-                    }
-                }
-                if (remove && !begin) {
-                    pointsToRemove.add(i);
-                }
+        for (int i = 0; i < firstSeq.length(); i++) {
+            if (firstSeq.charAt(i) != '.') {
+                begin = false;
+            } else if (!begin) {
+                pointsToRemove.set(i);
             }
-            else {
-                begin=false;
+        }
+        for (String seq : idToSeqToProcess.values()) {
+            for (int i = pointsToRemove.nextSetBit(0); i >= 0; i = pointsToRemove.nextSetBit(i + 1)) {
+                if (i >= seq.length() || seq.charAt(i) != '.') {
+                    pointsToRemove.clear(i);
+                }
             }
-            i++;
         }
 
         //we reprocess the sequences: remove the shared dots and replace the other dots by '-'
         //If deletions are at the beginning of the sequence, we REMOVE them too (bug fixed the 12.05.20)
         String referenceSeq = null;
+        char[] buffer = new char[firstSeq.length()];
         for (String id : idToSeqToProcess.keySet()) {
-            String seq = "";
-            int in = 0;
-            for (char n : idToSeqToProcess.get(id).toCharArray()) {
-                if (n == '.' && !pointsToRemove.contains(in)) {
-                    seq += "-";
-
-                } else if (n != '.') {
-                    seq += n;
+            String seqToProcess = idToSeqToProcess.get(id);
+            if (buffer.length < seqToProcess.length()) {
+                buffer = new char[seqToProcess.length()];
+            }
+            int length = 0;
+            for (int in = 0; in < seqToProcess.length(); in++) {
+                char n = seqToProcess.charAt(in);
+                if (n != '.') {
+                    buffer[length++] = n;
+                } else if (!pointsToRemove.get(in)) {
+                    buffer[length++] = '-';
                 }
-                in++;
             }
+            String seq = new String(buffer, 0, length);
             idToSequence.put(id, seq);
             //logger.debug("STORE SEQ FOR "+id+" SEQ "+seq);
             if (referenceSeq == null) {
@@ -444,9 +553,8 @@ public class InputParser {
             }
         }
 
-        //And finally we store the BP sequences
-        FastaFileParser fastaFileParser = new FastaFileParser(igPhyMLfastafile);
-        LinkedHashMap<String, String> idToSeq = fastaFileParser.getSameOrderFastaIdToSequence();
+        //And finally we store the BP sequences, only the ones of the tree are read from the fasta file
+        LinkedHashMap<String, String> idToSeq = FastaFileIndex.getIndex(igPhyMLfastafile).readSequences(nodeNames);
         for (String id : idToSeq.keySet()) {
             if (nodeNames.contains(id)) {
                 String newID;
@@ -467,10 +575,17 @@ public class InputParser {
             }
         }
 
+        indexSequences();
+    }
+
+    /*
+     * Store the ids per sequence, and the BPs which have the same sequence than an Ig
+     */
+    private void indexSequences() {
         ////logger.debug("************************");
         // Store the ids per sequence
         for (String id : idToSequence.keySet()) {
-            String seq = idToSequence.get(id);
+            PackedSequence seq = PackedSequence.pack(idToSequence.get(id));
             //logger.debug(id+": "+seq);
             ArrayList<String> ids = new ArrayList<>();
             if (sequenceToIds.containsKey(seq)) {
@@ -482,10 +597,9 @@ public class InputParser {
         ////logger.debug("************************");
         // check if inside the ids, there is a BP that we will replace by an
         // existing IG in the tree
-        for (String seq : sequenceToIds.keySet()) {
-            ArrayList<String> ids = sequenceToIds.get(seq);
+        for (ArrayList<String> ids : sequenceToIds.values()) {
             for (String id : ids) {
-                if (id.matches("BP\\d+") && ids.size() > 1) { // it's a number =
+                if (ids.size() > 1 && BP_ID_PATTERN.matcher(id).matches()) { // it's a number =
                     // BP
                     //logger.debug("This BP: " + id + " will be replaced by an Ig , ids are " + ids);
                     bpIsIg.add(id);
@@ -525,30 +639,23 @@ public class InputParser {
             }
         }
         fileReader.close();
-        // Store the ids per sequence
-        for (String id : idToSequence.keySet()) {
-            String seq = idToSequence.get(id);
-            ArrayList<String> ids = new ArrayList<>();
-            if (sequenceToIds.containsKey(seq)) {
-                ids = sequenceToIds.get(seq);
-            }
-            ids.add(id);
-            sequenceToIds.put(seq, ids);
-        }
-
-        // check if inside the ids, there is a BP that we will replace by an
-        // existing IG in the tree
-        for (String seq : sequenceToIds.keySet()) {
-            ArrayList<String> ids = sequenceToIds.get(seq);
-            for (String id : ids) {
-                if (id.matches("BP\\d+") && ids.size() > 1) { // it's a number =
-                    // BP
-                    //logger.debug("This BP: " + id + " will be replaced by an Ig , ids are " + ids);
-                    bpIsIg.add(id);
-                }
-            }
+        indexSequences();
+    }
 
-        }
+    /*
+     * Rebuild the tree of a clone given without its files: its IgPhyML tree and the sequences of the nodes (the BPs
+     * already renamed BPn, the germline UCA). Used by RebuildTreeBenchmark
+     */
+    Node rebuildTree(NewickTree newickTree, Map<String, String> idToSequence, Map<String, String> originalBPidtoBPid)
+            throws Exception {
+        this.isDnamlInput = false;
+        this.isHeadless = true;
+        this.newickTree = newickTree;
+        this.idToSequence.putAll(idToSequence);
+        this.originalBPidtoBPid.putAll(originalBPidtoBPid);
+        indexSequences();
+        rebuildTree(null);
+        return rootNode;
     }
 
     /*
@@ -569,11 +676,11 @@ public class InputParser {
                     if (line.contains("significantly positive")) {
                         getTable = false;
                     } else {
-                        String[] cells = line.trim().split("\\s{2,}");
-                        if (cells[0].matches("\\d+")) {
+                        String[] cells = SPACES_PATTERN.split(line.trim());
+                        if (NUMBER_PATTERN.matcher(cells[0]).matches()) {
                             cells[0] = "BP" + cells[0];
                         }
-                        if (cells[1].matches("\\d+")) {
+                        if (NUMBER_PATTERN.matcher(cells[1]).matches()) {
                             cells[1] = "BP" + cells[1];
                         }
                         String parentId = cells[0];
@@ -597,21 +704,7 @@ public class InputParser {
                         if (!parentSeq.equals(childSeq)) {
                             // the 2 sequences are not identical, we can set the parental
                             // relationship between them
-                            // if this child doesnt exist yes (case of duplicate
-                            // sequences) BUG fixed the 20.03.15
-                            boolean isAlreadyHere = false;
-                            for (Node k : parentNode.getChildren()) {
-                                if (k.getNodeId().equals(childNode.getNodeId())) {
-                                    //logger.debug("child already stored: " + k.getNodeId());
-                                    isAlreadyHere = true;
-                                }
-                            }
-                            if (!isAlreadyHere) {
-                                parentNode.addChild(childNode);
-                                childNode.setParent(parentNode);
-                                // //logger.debug("Parent " + parentNode.getNodeId() +
-                                // " and child " + childNode.getNodeId());
-                            }
+                            linkNodes(parentNode, childNode);
                         }
                         // //logger.debug("Parent " + parentId + " and child " +
                         // childId);
@@ -624,99 +717,51 @@ public class InputParser {
 
         //parse newick tree from IgPhyML
         else {
-            String newicktree = igPhyMLParser.getNewickTree(cloneId).replaceAll("\\\"", "");
-            //logger.debug("TREE is: " + newicktree);
-            BinaryTree<String> binaryTree = BinaryTree.parseNewick(newicktree);
-            String stringTree = binaryTree.toTreeRelationship();
-            //logger.debug(stringTree);
-            String firstbp = null;
-            //we set the UCA first
-            String uca = getUCA(stringTree);
+            //the germline is the root (UCA), the children of the unnamed IgPhyML root are attached to it
+            NewickTree germline = getGermlineNode();
+            String uca = germline.getName();
             if (originalBPidtoBPid.containsKey(uca)) {
                 uca = originalBPidtoBPid.get(uca);
             }
             //logger.debug("We get the UCA: " + uca);
-            Node parNode = processNode(uca, true);
-            rootNode = parNode;
-            // first use a Scanner to get each line
-            Scanner scanner = new Scanner(stringTree);
-            scanner.useDelimiter("\\n");
-            while (scanner.hasNext()) {
-                String line = scanner.next();
-                String[] cells = line.split(" ");
-                if (!(line.contains("_GER") && cells[0].length() < 1)) {
-                    if (firstbp == null && cells[0].length() < 1) {
-                        firstbp = line.trim();
-                        if (originalBPidtoBPid.containsKey(firstbp)) {
-                            firstbp = originalBPidtoBPid.get(firstbp);
-                        }
-                        //logger.debug("We set relationship with BP1: "+firstbp);
-                        Node childNode = processNode(firstbp, false);
-                        String parentSeq = idToSequence.get(uca);
-                        String childSeq = idToSequence.get(firstbp);
-                        if (!parentSeq.equals(childSeq)) {
-                            // the 2 sequences are not identical, we can set the parental
-                            // relationship between them
-                            // if this child doesnt exist yes (case of duplicate
-                            // sequences) BUG fixed the 20.03.15
-                            boolean isAlreadyHere = false;
-                            for (Node k : parNode.getChildren()) {
-                                if (k.getNodeId().equals(childNode.getNodeId())) {
-                                    //logger.debug("child already stored: " + k.getNodeId());
-                                    isAlreadyHere = true;
-                                }
-                            }
-                            if (!isAlreadyHere) {
-                                //logger.debug("PARENT UCA " + uca + " has CHILD BP " + firstbp);
-                                parNode.addChild(childNode);
-                                childNode.setParent(parNode);
-                            }
-                        }
-                    } else {
-                        String parentId = cells[0].trim();
-                        String childId = cells[1].trim();
-                        boolean parentIsRoot = false;
-                        if (parentId.contains("_GER")) {
-                            parentIsRoot = true;
-                        }
-                        if (originalBPidtoBPid.containsKey(parentId)) {
-                            parentId = originalBPidtoBPid.get(parentId);
-                        }
-                        if (originalBPidtoBPid.containsKey(childId)) {
-                            childId = originalBPidtoBPid.get(childId);
-                        }
-                        //logger.debug("Processing " + parentId + " with " + childId);
-                        Node parentNode = processNode(parentId, parentIsRoot);
-                        Node childNode = processNode(childId, false);
-                        String parentSeq = idToSequence.get(parentId);
-                        String childSeq = idToSequence.get(childId);
-                        if (!parentSeq.equals(childSeq)) {
-                            // the 2 sequences are not identical, we can set the parental
-                            // relationship between them
-                            // if this child doesnt exist yes (case of duplicate
-                            // sequences) BUG fixed the 20.03.15
-                            boolean isAlreadyHere = false;
-                            for (Node k : parentNode.getChildren()) {
-                                if (k.getNodeId().equals(childNode.getNodeId())) {
-                                    //logger.debug("child already stored: " + k.getNodeId() + " chilnodeId " + childId);
-                                    isAlreadyHere = true;
-                                }
-                            }
-                            if (!isAlreadyHere) {
-                                //logger.debug("PARENT " + parentId + " has CHILD " + childId);
-                                parentNode.addChild(childNode);
-                                childNode.setParent(parentNode);
-                            }
-                        } else {
-                            //logger.debug("PARENT " + parentId + " and CHILD " + childId + " have same sequences!");
-                        }
+            rootNode = processNode(uca, true);
+            // the parent/child relationships, in the order of the newick tree
+            for (NewickTree newickNode : newickTree.getPreorderNodes()) {
+                NewickTree newickParent = newickNode.getParent();
+                if (newickParent == null) {
+                    continue;
+                }
+                String parentId = newickParent.getName();
+                if (newickParent.isRoot() && parentId.length() < 1) {
+                    if (newickNode == germline) {
+                        continue;
                     }
+                    parentId = germline.getName();
+                }
+                String childId = newickNode.getName();
+                boolean parentIsRoot = false;
+                if (parentId.contains("_GER")) {
+                    parentIsRoot = true;
+                }
+                if (originalBPidtoBPid.containsKey(parentId)) {
+                    parentId = originalBPidtoBPid.get(parentId);
+                }
+                if (originalBPidtoBPid.containsKey(childId)) {
+                    childId = originalBPidtoBPid.get(childId);
+                }
+                //logger.debug("Processing " + parentId + " with " + childId);
+                Node parentNode = processNode(parentId, parentIsRoot);
+                Node childNode = processNode(childId, false);
+                String parentSeq = idToSequence.get(parentId);
+                String childSeq = idToSequence.get(childId);
+                if (!parentSeq.equals(childSeq)) {
+                    // the 2 sequences are not identical, we can set the parental
+                    // relationship between them
+                    linkNodes(parentNode, childNode);
+                } else {
+                    //logger.debug("PARENT " + parentId + " and CHILD " + childId + " have same sequences!");
                 }
-
-
             }
-            /*//logger.debug("First bp is " + firstbp);
-            //logger.debug("UCA is " + uca);*/
         }
         // we set the levels of the nodes
         setLevelForChildren(rootNode);
@@ -732,6 +777,9 @@ public class InputParser {
 
         ArrayList<Node> nodesToCheck = new ArrayList<>();
         nodesToCheck.addAll(nodes);
+        HashMap<Node, String> nodeToResolvedSequence = resolveAmbiguousNucleotides(nodesToCheck);
+        // the nodes of each sequence, to find the sequences which are the same after the resolution
+        HashMap<String, ArrayList<Node>> sequenceToNodes = null;
         for (Node node : nodesToCheck) {
             String sequence = idToSequence.get(node.getNodeId());
             boolean setSeq = true;
@@ -739,55 +787,71 @@ public class InputParser {
             // bug fixed the 28.01.16.
             //ON 06.05.20 for dnaml input only
             boolean seqToCheck = false;
-            if (sequence.contains("R") || sequence.contains("Y") || sequence.contains("S") || sequence.contains("M")
-                    || sequence.contains("K") || sequence.contains("W")) {
-                sequence = processSpecialNuc(node);
+            if (nodeToResolvedSequence.containsKey(node)) {
+                sequence = nodeToResolvedSequence.get(node);
                 //logger.debug("Changing UPAC nuc for node " + node.getNodeId());
                 seqToCheck = true;
             }
 
             // Finally we check that this modified node sequence is not an existing one
             if (seqToCheck && isDnamlInput) {
-                for (Node otherNode : nodesToCheck) {
-                    if (!otherNode.getNodeId().equals(node.getNodeId())) {
+                if (sequenceToNodes == null) {
+                    sequenceToNodes = new HashMap<>();
+                    for (Node otherNode : nodesToCheck) {
                         String seq = idToSequence.get(otherNode.getNodeId());
-                        if (seq.equals(sequence)) {
-                            logger.warn("!!!!!! By replacing a UPAC nuc we got the same sequence for " + node.getNodeId()
-                                    + " and " + otherNode.getNodeId());
-                            // we remove this BP if its parent or its child has
-                            // the same sequence
-                            if (node.getNodeId().equals(otherNode.getParent().getNodeId())) {
-                                // BP is  the parent
-                                ArrayList<Node> kids = node.getChildren();
-                                for (Node kid : kids) {
-                                    if (!kid.getNodeId().equals(otherNode.getNodeId())) {
-                                        otherNode.addChild(kid);
-                                        kid.setParent(otherNode);
-                                    }
-                                }
-                                Node par = node.getParent();
-                                par.removeChild(node);
-                                par.addChild(otherNode);
-                                nodes.remove(node);
-                                logger.warn(
-                                        "... we remove " + node.getNodeId() + " since his child has the same sequence");
-                                setSeq = false;
-                            } else if (otherNode.getNodeId().equals(node.getParent().getNodeId())) {
-                                // BP is the child
-                                ArrayList<Node> kids = node.getChildren();
-                                for (Node kid : kids) {
+                        if (!sequenceToNodes.containsKey(seq)) {
+                            sequenceToNodes.put(seq, new ArrayList<Node>());
+                        }
+                        sequenceToNodes.get(seq).add(otherNode);
+                    }
+                }
+                ArrayList<Node> sameSequenceNodes = sequenceToNodes.get(sequence);
+                if (sameSequenceNodes == null) {
+                    sameSequenceNodes = new ArrayList<>();
+                }
+                for (Node otherNode : sameSequenceNodes) {
+                    if (!otherNode.getNodeId().equals(node.getNodeId())) {
+                        logger.warn("!!!!!! By replacing a UPAC nuc we got the same sequence for " + node.getNodeId()
+                                + " and " + otherNode.getNodeId());
+                        // we remove this BP if its parent or its child has
+                        // the same sequence
+                        if (node.getNodeId().equals(otherNode.getParent().getNodeId())) {
+                            // BP is  the parent
+                            ArrayList<Node> kids = node.getChildren();
+                            for (Node kid : kids) {
+                                if (!kid.getNodeId().equals(otherNode.getNodeId())) {
                                     otherNode.addChild(kid);
                                     kid.setParent(otherNode);
                                 }
-                                otherNode.removeChild(node);
-                                nodes.remove(node);
-                                logger.warn("... we remove " + node.getNodeId()
-                                        + " since his parent has the same sequence");
-                                setSeq = false;
                             }
+                            Node par = node.getParent();
+                            par.removeChild(node);
+                            par.addChild(otherNode);
+                            nodes.remove(node);
+                            nodesSet.remove(node);
+                            logger.warn(
+                                    "... we remove " + node.getNodeId() + " since his child has the same sequence");
+                            setSeq = false;
+                        } else if (otherNode.getNodeId().equals(node.getParent().getNodeId())) {
+                            // BP is the child
+                            ArrayList<Node> kids = node.getChildren();
+                            for (Node kid : kids) {
+                                otherNode.addChild(kid);
+                                kid.setParent(otherNode);
+                            }
+                            otherNode.removeChild(node);
+                            nodes.remove(node);
+                            nodesSet.remove(node);
+                            logger.warn("... we remove " + node.getNodeId()
+                                    + " since his parent has the same sequence");
+                            setSeq = false;
                         }
                     }
                 }
+                if (!setSeq) {
+                    // the tree changed, so the subtrees of the next nodes to resolve could be different
+                    nodeToResolvedSequence = resolveAmbiguousNucleotides(nodes);
+                }
             }
 
             if (setSeq) {
@@ -815,19 +879,6 @@ public class InputParser {
         }
     }
 
-    private String getUCA(String stringTree) {
-        Scanner scanner = new Scanner(stringTree);
-        scanner.useDelimiter("\\n");
-        // first use a Scanner to get each line
-        while (scanner.hasNext()) {
-            String line = scanner.next();
-            if (line.contains("_GER")) {
-                return line.trim();
-            }
-        }
-        return null;
-    }
-
     @SuppressWarnings("unused")
     private int getNodeLevel(Node node, int level) {
         // 0 is the GL level
@@ -840,47 +891,92 @@ public class InputParser {
     }
 
     /*
-     * This method is used to calculated the number of A/G or T/C at a given
-     * position for all the children of a node
+     * For each node which has some R/Y/S/M/K/W, its sequence where they are replaced by the nucleotide which is the
+     * most present at this position in the subtree of the node (the second one in case of equality):
+     * R A or G, Y T or C, S G or C, M A or C, K G or T, W A or T
+     */
+    private HashMap<Node, String> resolveAmbiguousNucleotides(ArrayList<Node> nodesToResolve) {
+        HashMap<Node, String> nodeToResolvedSequence = new HashMap<>();
+        // the positions which are ambiguous in at least one node, the counts are computed only for them
+        BitSet ambiguousPositions = new BitSet();
+        HashSet<Node> ambiguousNodes = new HashSet<>();
+        for (Node node : nodesToResolve) {
+            String sequence = idToSequence.get(node.getNodeId());
+            for (int i = 0; i < sequence.length(); i++) {
+                if (IUPAC_CODES.indexOf(sequence.charAt(i)) >= 0) {
+                    ambiguousPositions.set(i);
+                    ambiguousNodes.add(node);
+                }
+            }
+        }
+        if (ambiguousNodes.isEmpty()) {
+            return nodeToResolvedSequence;
+        }
+        int[] positions = new int[ambiguousPositions.cardinality()];
+        int p = 0;
+        for (int i = ambiguousPositions.nextSetBit(0); i >= 0; i = ambiguousPositions.nextSetBit(i + 1)) {
+            positions[p++] = i;
+        }
+        resolveSubtree(rootNode, positions, ambiguousNodes, nodeToResolvedSequence);
+        // in case some nodes are not linked to the root
+        for (Node node : nodesToResolve) {
+            if (ambiguousNodes.contains(node) && !nodeToResolvedSequence.containsKey(node)) {
+                resolveSubtree(node, positions, ambiguousNodes, nodeToResolvedSequence);
+            }
+        }
+        return nodeToResolvedSequence;
+    }
+
+    /*
+     * The number of A/C/G/T of the descendants of each node is the sum of the numbers of its children plus the
+     * nucleotides of its children: we go through the subtree once, from the leaves to the root
      */
-    private int[] getNucNumber(ArrayList<Node> children, int position, char tempNuc) {
-        int nuc1Number = 0;
-        int nuc2Number = 0;
-        char nuc1 = 'A';
-        char nuc2 = 'G';
-        if (tempNuc == 'Y') {
-            nuc1 = 'T';
-            nuc2 = 'C';
-        } else if (tempNuc == 'S') {
-            nuc1 = 'G';
-            nuc2 = 'C';
-        } else if (tempNuc == 'M') {
-            nuc1 = 'A';
-            nuc2 = 'C';
-        } else if (tempNuc == 'K') {
-            nuc1 = 'G';
-            nuc2 = 'T';
-        } else if (tempNuc == 'W') {
-            nuc1 = 'A';
-            nuc2 = 'T';
+    private void resolveSubtree(Node subtreeRoot, int[] positions, HashSet<Node> ambiguousNodes,
+                                HashMap<Node, String> nodeToResolvedSequence) {
+        ArrayList<Node> preorderNodes = new ArrayList<>();
+        ArrayDeque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(subtreeRoot);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            preorderNodes.add(node);
+            for (Node child : node.getChildren()) {
+                toVisit.push(child);
+            }
         }
-        for (Node child : children) {
-            String sequence = idToSequence.get(child.getNodeId());
-            char childNuc = sequence.charAt(position);
-            if (childNuc == nuc1) {
-                nuc1Number++;
-            } else if (childNuc == nuc2) {
-                nuc2Number++;
+        // the counts of a node are kept until its parent is processed
+        HashMap<Node, int[]> nodeToCounts = new HashMap<>();
+        for (int n = preorderNodes.size() - 1; n >= 0; n--) {
+            Node node = preorderNodes.get(n);
+            int[] counts = new int[4 * positions.length];
+            for (Node child : node.getChildren()) {
+                int[] childCounts = nodeToCounts.remove(child);
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += childCounts[i];
+                }
+                String childSequence = idToSequence.get(child.getNodeId());
+                for (int p = 0; p < positions.length && positions[p] < childSequence.length(); p++) {
+                    int nucleotide = NUCLEOTIDES.indexOf(childSequence.charAt(positions[p]));
+                    if (nucleotide >= 0) {
+                        counts[4 * p + nucleotide]++;
+                    }
+                }
             }
-            ArrayList<Node> childrenOfChild = child.getChildren();
-            if (childrenOfChild.size() > 0) {
-                int[] childNucNumber = getNucNumber(childrenOfChild, position, tempNuc);
-                nuc1Number += childNucNumber[0];
-                nuc2Number += childNucNumber[1];
+            if (ambiguousNodes.contains(node)) {
+                char[] sequence = idToSequence.get(node.getNodeId()).toCharArray();
+                for (int p = 0; p < positions.length && positions[p] < sequence.length; p++) {
+                    int code = IUPAC_CODES.indexOf(sequence[positions[p]]);
+                    if (code >= 0) {
+                        int nucleotide1 = IUPAC_NUCLEOTIDES[code][0];
+                        int nucleotide2 = IUPAC_NUCLEOTIDES[code][1];
+                        int chosenNucleotide = counts[4 * p + nucleotide1] > counts[4 * p + nucleotide2]
+                                ? nucleotide1 : nucleotide2;
+                        sequence[positions[p]] = NUCLEOTIDES.charAt(chosenNucleotide);
+                    }
+                }
+                nodeToResolvedSequence.put(node, new String(sequence));
             }
+            nodeToCounts.put(node, counts);
         }
-        int[] nucNumber = {nuc1Number, nuc2Number};
-        return nucNumber;
     }
 
     private Node processNode(String id, boolean isRoot) throws Exception {
@@ -890,38 +986,39 @@ public class InputParser {
         if (sequence ==null ){
             boolean addMissingId=false;
             //check that it is not the case where you have seqId_1 and the seq is identical to the seqId
-            if (id.matches("(.*)_1")){
+            if (id.endsWith("_1")){
                 String idToFound = id.substring(0,id.length()-2);
-                for (String id2:idToSequence.keySet()){
-                    if (id2.equals(idToFound)){
-                        idToSequence.put(id,idToSequence.get(id2));
-                        //System.out.println("Find "+id2+" for "+id);
-                        addMissingId=true;
-                        break;
-                    }
+                if (idToSequence.containsKey(idToFound)){
+                    idToSequence.put(id,idToSequence.get(idToFound));
+                    //System.out.println("Find "+idToFound+" for "+id);
+                    addMissingId=true;
                 }
             }
             if (!addMissingId) {
-                JOptionPane.showMessageDialog(new JFrame(), "ERROR: no sequence found in the AIRR file or in the fasta file for sequence_id '" + id + "'", "No sequence found",
-                        JOptionPane.ERROR_MESSAGE);
+                // with a stage listener the exception is shown by the conversion worker (see ConversionWorker.done)
+                if (stageListener == null) {
+                    showMessage("ERROR: no sequence found in the AIRR file or in the fasta file for sequence_id '" + id + "'", "No sequence found",
+                            JOptionPane.ERROR_MESSAGE);
+                }
                 throw new Exception("ERROR: no sequence found in the AIRR file or in the fasta file for sequence_id '" + id + "'");
             }
         }
+        PackedSequence packedSequence = PackedSequence.pack(sequence);
         Node node = null;
         // This is the case where a BP has the same sequence than an Ig
         if (bpIsIg.contains(id)) {
-            if (sequenceToNode.containsKey(sequence)) {
-                node = sequenceToNode.get(sequence);
+            if (sequenceToNode.containsKey(packedSequence)) {
+                node = sequenceToNode.get(packedSequence);
             } else {
                 node = new Node();
                 node.setDNA(true);
                 // node.setSequence(sequence);
                 // To set the nodeId we take the first Ig on the list which is
                 // not a BP
-                ArrayList<String> ids = sequenceToIds.get(sequence);
+                ArrayList<String> ids = sequenceToIds.get(packedSequence);
                 String nodeId = null;
                 for (String relatedId : ids) {
-                    if (!relatedId.matches("BP\\d+")) { // "BP\\d+"
+                    if (!BP_ID_PATTERN.matcher(relatedId).matches()) {
                         nodeId = relatedId;
                         break;
                     }
@@ -933,7 +1030,7 @@ public class InputParser {
                 node.setNodeId(nodeId);
                 node.setSequence(sequence); //BUG fixed the 06.05.20
                 //logger.debug("FOR BP "+id+" we call it first "+nodeId);
-                sequenceToNode.put(sequence, node);
+                sequenceToNode.put(packedSequence, node);
                 // we create an Ig and link it to the node
                 // //logger.debug("Set nodeId: " + nodeId + " with seq " +
                 // sequence);
@@ -944,14 +1041,15 @@ public class InputParser {
                     igsList = nodeToIgsList.get(node);
                 }
                 igsList.add(ig);
+                linkedIgIds.add(nodeId);
                 nodeToIgsList.put(node, igsList);
 
             }
         } else {// This node is not a BP identical to an Ig
-            if (sequenceToNode.containsKey(sequence)) { // we already have a
+            if (sequenceToNode.containsKey(packedSequence)) { // we already have a
                 // node with this
                 // sequence
-                node = sequenceToNode.get(sequence);
+                node = sequenceToNode.get(packedSequence);
                  //logger.debug("For " + id + " we already have " +node.getNodeId() + " with the same sequence");
                 // we create an Ig and link it to the node if we dont have it
                 // yet!
@@ -961,13 +1059,8 @@ public class InputParser {
                 if (nodeToIgsList.containsKey(node)) {
                     igsList = nodeToIgsList.get(node);
                 }
-                boolean alreadyStored = false;
-                for (Ig i : igsList) {
-                    if (i.getFastaId().equals(id)) {
-                        alreadyStored = true;
-                    }
-                }
-                if (!alreadyStored) {
+                // an id has only one sequence, so it can only be linked to this node
+                if (linkedIgIds.add(id)) {
                     igsList.add(ig);
                 }
                 nodeToIgsList.put(node, igsList);
@@ -978,29 +1071,46 @@ public class InputParser {
                 node.setNodeId(id);
                 node.setDNA(true);
                 node.setRoot(isRoot);
-                sequenceToNode.put(sequence, node);
+                sequenceToNode.put(packedSequence, node);
 
                 // we create an Ig and link it to the node if it's not a BP!
-                if (!id.matches("BP\\d+")) {
+                if (!BP_ID_PATTERN.matcher(id).matches()) {
                     Ig ig = new Ig(id, sequence);
                     ArrayList<Ig> igsList = new ArrayList<>();
                     if (nodeToIgsList.containsKey(node)) {
                         igsList = nodeToIgsList.get(node);
                     }
                     igsList.add(ig);
+                    linkedIgIds.add(id);
                     nodeToIgsList.put(node, igsList);
                 }
             }
 
         }
         // //logger.debug("processed node: "+node.getNodeId());
-        if (!nodes.contains(node)) {
+        if (nodesSet.add(node)) {
             //logger.debug("...we add it to nodes array " + node.getNodeId());
             nodes.add(node);
         }
         return node;
     }
 
+    /*
+     * Set the parental relationship, if this child doesnt exist yet (case of duplicate sequences) BUG fixed the 20.03.15
+     */
+    private void linkNodes(Node parentNode, Node childNode) {
+        HashSet<String> childIds = parentToChildIds.get(parentNode);
+        if (childIds == null) {
+            childIds = new HashSet<>();
+            parentToChildIds.put(parentNode, childIds);
+        }
+        if (childIds.add(childNode.getNodeId())) {
+            //logger.debug("PARENT " + parentNode.getNodeId() + " has CHILD " + childNode.getNodeId());
+            parentNode.addChild(childNode);
+            childNode.setParent(parentNode);
+        }
+    }
+
     private void createFileForBaselineWithCDR3(ArrayList<Node> sortedNodes) {
         // Here we create an output file to get the positive/negative selection
         try {
@@ -1110,59 +1220,24 @@ public class InputParser {
     private void createXMLFile() throws JAXBException, IOException, SAXException {
 
         setIgTree_xml(System.getProperty("user.dir") + fs + "output" + fs + projectName + fs + projectName + ".xml");
-
-        // create JAXB context and instantiate marshaller
-
-        JAXBContext context = JAXBContext.newInstance(InputParser.class); //
-        Marshaller m = context.createMarshaller();
-        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-
-        Writer w = null;
-        try {
-            w = new FileWriter(getIgTree_xml());
-            m.marshal(this, w);
-        } finally {
-            try {
-                w.close();
-            } catch (Exception e) {
-            }
-        }
+        // the XML file and its binary snapshot (see TreeSnapshot)
+        TreeSnapshot.writeTree(this, getIgTree_xml());
     }
 
     private void createMatrixTreeFile() throws IOException {
         File matrixFile = new File(System.getProperty("user.dir") + fs + "output" + fs + projectName + fs + projectName + "_matrixTree.tsv");
-        BufferedWriter out = new BufferedWriter(new FileWriter(matrixFile));
-        ArrayList<Node> orderedNodes = new ArrayList<>();
-        writeNodeAndChildrenIds(out, rootNode, orderedNodes);
-        out.write(ls);
-        for (Node node : orderedNodes) {
-            out.write(node.getNodeId());
-            ArrayList<Node> children = node.getChildren();
-            //determine the relation
-            for (Node node2 : orderedNodes) {
-                int edge = 0;
-                for (Node kid : children) {
-                    if (kid.getNodeId().equals(node2.getNodeId())) {
-                        edge = kid.getNumberOfNucMutationsWithParent();
-                        break;
-                    }
-                }
-                out.write("\t" + edge);
-            }
-            out.write(ls);
-        }
-        out.close();
+        DistanceMatrix.computeTreeEdges(rootNode, isDNA).writeTsv(matrixFile);
     }
 
-    private void writeNodeAndChildrenIds(BufferedWriter out, Node node, ArrayList<Node> orderedNodes) throws IOException {
-        orderedNodes.add(node);
-        if (!node.isRoot()) {
-            out.write("\t");
-        }
-        out.write(node.getNodeId());
-        for (Node kid : node.getChildren()) {
-            writeNodeAndChildrenIds(out, kid, orderedNodes);
-        }
+    /*
+     * Write the nucleotidic and AA Hamming distances between all the nodes of the tree, in the given format (see
+     * DistanceMatrix: tsv, binary or float)
+     */
+    void writeDistanceMatrices(String format) throws Exception {
+        String prefix = System.getProperty("user.dir") + fs + "output" + fs + projectName + fs + projectName;
+        String extension = format.equals(DistanceMatrix.TSV) ? ".tsv" : ".bin";
+        DistanceMatrix.writeHammingDistances(rootNode, true, new File(prefix + "_nucDistances" + extension), format);
+        DistanceMatrix.writeHammingDistances(rootNode, false, new File(prefix + "_aaDistances" + extension), format);
     }
 
 
@@ -1175,6 +1250,10 @@ public class InputParser {
         return projectName;
     }
 
+    void setProjectName(String projectName) {
+        this.projectName = projectName;
+    }
+
     public Node getRootNode() {
         return rootNode;
     }
@@ -1191,6 +1270,10 @@ public class InputParser {
         return hasReadsInId;
     }
 
+    void setHasReadsInId(boolean hasReadsInId) {
+        this.hasReadsInId = hasReadsInId;
+    }
+
     private void setLevelForChildren(Node node) {
         ////logger.debug("SET-LEVEL: "+node.getNodeId());
         ArrayList<Node> children = node.getChildren();
@@ -1204,102 +1287,4 @@ public class InputParser {
         }
     }
 
-    /*
-     * R A or G Y C or T S G or C W A or T K G or T M A or C
-     */
-    @SuppressWarnings("unused")
-    private String processSpecialNuc(Node node) {
-        // get the position
-        int position = 0;
-        String sequence = idToSequence.get(node.getNodeId());
-        String newSequence = null;
-        ArrayList<Node> children = node.getChildren();
-        for (char nuc : sequence.toCharArray()) {
-            String replacedNuc = null;
-            if (nuc == 'R') { // it is a A or G
-                int[] nucNumber = getNucNumber(children, position, nuc);
-                int Anumber = nucNumber[0];
-                int Gnumber = nucNumber[1];
-                // //logger.debug("!!! For node " + node.getNodeId() + ", at
-                // position: " + position + " we got a " + nuc);
-                // //logger.debug("In the children, we have number of A " +
-                // Anumber + " and number of G " + Gnumber);
-                if (Anumber > Gnumber) {
-                    replacedNuc = "A";
-                } else {
-                    replacedNuc = "G";
-                }
-                newSequence = sequence.substring(0, position) + replacedNuc + sequence.substring(position + 1);
-                // //logger.debug("--> previous sequence was: " + sequence + " and
-                // new one is " + newSequence);
-                sequence = newSequence;
-            } else if (nuc == 'Y') { // it is a T or C
-                int[] nucNumber = getNucNumber(children, position, nuc);
-                int Tnumber = nucNumber[0];
-                int Cnumber = nucNumber[1];
-                // //logger.debug("!!! For node " + node.getNodeId() + ", at
-                // position: " + position + " we got a " + nuc);
-                // //logger.debug("In the children, we have number of T " +
-                // Tnumber + " and number of C " + Cnumber);
-                if (Tnumber > Cnumber) {
-                    replacedNuc = "T";
-                } else {
-                    replacedNuc = "C";
-                }
-                newSequence = sequence.substring(0, position) + replacedNuc + sequence.substring(position + 1);
-                // //logger.debug("--> previous sequence was: " + sequence + " and
-                // new one is " + newSequence);
-                sequence = newSequence;
-            } else if (nuc == 'S') { // it is a G or C
-                int[] nucNumber = getNucNumber(children, position, nuc);
-                int Gnumber = nucNumber[0];
-                int Cnumber = nucNumber[1];
-                if (Gnumber > Cnumber) {
-                    replacedNuc = "G";
-                } else {
-                    replacedNuc = "C";
-                }
-                newSequence = sequence.substring(0, position) + replacedNuc + sequence.substring(position + 1);
-                sequence = newSequence;
-            } else if (nuc == 'M') { // it is a A or C
-                int[] nucNumber = getNucNumber(children, position, nuc);
-                int Anumber = nucNumber[0];
-                int Cnumber = nucNumber[1];
-                if (Anumber > Cnumber) {
-                    replacedNuc = "A";
-                } else {
-                    replacedNuc = "C";
-                }
-                newSequence = sequence.substring(0, position) + replacedNuc + sequence.substring(position + 1);
-                sequence = newSequence;
-            } else if (nuc == 'K') { // it is a G or T
-                int[] nucNumber = getNucNumber(children, position, nuc);
-                int Gnumber = nucNumber[0];
-                int Tnumber = nucNumber[1];
-                if (Gnumber > Tnumber) {
-                    replacedNuc = "G";
-                } else {
-                    replacedNuc = "T";
-                }
-                newSequence = sequence.substring(0, position) + replacedNuc + sequence.substring(position + 1);
-                sequence = newSequence;
-            } else if (nuc == 'W') { // it is a A or T
-                int[] nucNumber = getNucNumber(children, position, nuc);
-                int Anumber = nucNumber[0];
-                int Tnumber = nucNumber[1];
-                if (Anumber > Tnumber) {
-                    replacedNuc = "A";
-                } else {
-                    replacedNuc = "T";
-                }
-                newSequence = sequence.substring(0, position) + replacedNuc + sequence.substring(position + 1);
-                sequence = newSequence;
-            }
-            // //logger.debug("--> previous sequence was: "+sequence);
-
-            position++;
-        }
-        return newSequence;
-    }
-
 }
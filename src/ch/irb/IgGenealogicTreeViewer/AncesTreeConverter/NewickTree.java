@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class is a node of a tree parsed from the newick format. A node can have any number of children and keeps its
+   branch length. The parser and the traversals do not use recursion, so very deep trees (large clones) can be read
+   without stack overflow, in a time linear to the length of the newick string.
+ */
+package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class NewickTree {
+
+    private String name;
+    private double branchLength = Double.NaN;
+    private NewickTree parent;
+    private ArrayList<NewickTree> children = new ArrayList<>();
+
+    public NewickTree(String name) {
+        this.name = name;
+    }
+
+    /*
+     * Parse a newick tree:
+     * <tree> = <node> [";"]
+     * <node> = ["(" <node> ["," <node>]* ")"] [<label>] [":" <branch length>]
+     * The labels can be quoted (' or "), the comments between brackets are skipped.
+     */
+    public static NewickTree parseNewick(String newick) throws Exception {
+        ArrayDeque<NewickTree> openNodes = new ArrayDeque<>();
+        NewickTree root = null;
+        NewickTree current = null; // the node which is described by the next label/branch length
+        boolean isEnded = false;
+        int length = newick.length();
+        int i = 0;
+        while (i < length && !isEnded) {
+            char c = newick.charAt(i);
+            switch (c) {
+                case '(':
+                    if (current != null) {
+                        throw new Exception("unexpected '(' at position " + i);
+                    }
+                    NewickTree internalNode = new NewickTree("");
+                    if (openNodes.isEmpty()) {
+                        if (root != null) {
+                            throw new Exception("more than one root at position " + i);
+                        }
+                        root = internalNode;
+                    } else {
+                        openNodes.peek().addChild(internalNode);
+                    }
+                    openNodes.push(internalNode);
+                    i++;
+                    break;
+                case ',':
+                case ')':
+                    if (openNodes.isEmpty()) {
+                        throw new Exception("unexpected '" + c + "' at position " + i);
+                    }
+                    if (current == null) {
+                        // a leaf without label
+                        openNodes.peek().addChild(new NewickTree(""));
+                    }
+                    current = c == ')' ? openNodes.pop() : null;
+                    i++;
+                    break;
+                case ':':
+                    if (current == null) {
+                        current = newLeaf(openNodes, root == null);
+                        if (root == null) {
+                            root = current;
+                        }
+                    }
+                    int end = i + 1;
+                    while (end < length && "(),:;[".indexOf(newick.charAt(end)) < 0) {
+                        end++;
+                    }
+                    try {
+                        current.branchLength = Double.parseDouble(newick.substring(i + 1, end).trim());
+                    } catch (NumberFormatException e) {
+                        throw new Exception("wrong branch length '" + newick.substring(i + 1, end) + "' at position "
+                                + i);
+                    }
+                    i = end;
+                    break;
+                case ';':
+                    isEnded = true;
+                    break;
+                case '[':
+                    int commentEnd = newick.indexOf(']', i);
+                    if (commentEnd < 0) {
+                        throw new Exception("comment not closed at position " + i);
+                    }
+                    i = commentEnd + 1;
+                    break;
+                default:
+                    if (Character.isWhitespace(c)) {
+                        i++;
+                        break;
+                    }
+                    StringBuilder label = new StringBuilder();
+                    if (c == '\'' || c == '"') {
+                        // quoted label, the quote is escaped by doubling it
+                        i++;
+                        while (true) {
+                            if (i >= length) {
+                                throw new Exception("label not closed: " + c + label);
+                            }
+                            char l = newick.charAt(i);
+                            if (l == c) {
+                                if (i + 1 < length && newick.charAt(i + 1) == c) {
+                                    label.append(c);
+                                    i += 2;
+                                    continue;
+                                }
+                                i++;
+                                break;
+                            }
+                            label.append(l);
+                            i++;
+                        }
+                    } else {
+                        while (i < length && "(),:;[".indexOf(newick.charAt(i)) < 0) {
+                            label.append(newick.charAt(i));
+                            i++;
+                        }
+                    }
+                    if (current == null) {
+                        current = newLeaf(openNodes, root == null);
+                        if (root == null) {
+                            root = current;
+                        }
+                    } else if (current.name.length() > 0) {
+                        throw new Exception("unexpected label '" + label + "' after '" + current.name + "'");
+                    }
+                    current.name = label.toString().trim();
+                    break;
+            }
+        }
+        if (root == null) {
+            throw new Exception("the tree is empty");
+        }
+        if (!openNodes.isEmpty()) {
+            throw new Exception("missing ')' at the end of the tree");
+        }
+        return root;
+    }
+
+    private static NewickTree newLeaf(ArrayDeque<NewickTree> openNodes, boolean isRoot) throws Exception {
+        NewickTree leaf = new NewickTree("");
+        if (!openNodes.isEmpty()) {
+            openNodes.peek().addChild(leaf);
+        } else if (!isRoot) {
+            throw new Exception("more than one root");
+        }
+        return leaf;
+    }
+
+    public void addChild(NewickTree child) {
+        children.add(child);
+        child.parent = this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getBranchLength() {
+        return branchLength;
+    }
+
+    public boolean hasBranchLength() {
+        return !Double.isNaN(branchLength);
+    }
+
+    public NewickTree getParent() {
+        return parent;
+    }
+
+    public ArrayList<NewickTree> getChildren() {
+        return children;
+    }
+
+    public boolean isLeaf() {
+        return children.isEmpty();
+    }
+
+    public boolean isRoot() {
+        return parent == null;
+    }
+
+    /*
+     * The nodes of this subtree, each parent before its children and the children in the newick order
+     */
+    public ArrayList<NewickTree> getPreorderNodes() {
+        ArrayList<NewickTree> preorderNodes = new ArrayList<>();
+        ArrayDeque<NewickTree> toVisit = new ArrayDeque<>();
+        toVisit.push(this);
+        while (!toVisit.isEmpty()) {
+            NewickTree node = toVisit.pop();
+            preorderNodes.add(node);
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                toVisit.push(node.children.get(i));
+            }
+        }
+        return preorderNodes;
+    }
+
+    /*
+     * The leaves of this subtree, from left to right
+     */
+    public ArrayList<NewickTree> getLeaves() {
+        ArrayList<NewickTree> leaves = new ArrayList<>();
+        for (NewickTree node : getPreorderNodes()) {
+            if (node.isLeaf()) {
+                leaves.add(node);
+            }
+        }
+        return leaves;
+    }
+
+    public int size() {
+        return getPreorderNodes().size();
+    }
+
+    /*
+     * Write this subtree in newick format (with the branch lengths)
+     */
+    public String toNewick() {
+        StringBuilder newick = new StringBuilder();
+        // a node is pushed twice: to open it and to close it (then we write its label)
+        ArrayDeque<NewickTree> toVisit = new ArrayDeque<>();
+        ArrayDeque<Boolean> isClosing = new ArrayDeque<>();
+        toVisit.push(this);
+        isClosing.push(false);
+        while (!toVisit.isEmpty()) {
+            NewickTree node = toVisit.pop();
+            boolean close = isClosing.pop();
+            if (!close && !node.isLeaf()) {
+                newick.append('(');
+                toVisit.push(node);
+                isClosing.push(true);
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    toVisit.push(node.children.get(i));
+                    isClosing.push(false);
+                }
+                continue;
+            }
+            if (close) {
+                newick.append(')');
+            }
+            newick.append(node.name);
+            if (node.hasBranchLength()) {
+                newick.append(':').append(node.branchLength);
+            }
+            if (node != this && node.parent.children.get(node.parent.children.size() - 1) != node) {
+                newick.append(',');
+            }
+        }
+        return newick.append(';').toString();
+    }
+
+    public String toString() {
+        return name;
+    }
+
+    /*
+     * Benchmark on big trees: a random binary tree and a caterpillar (the deepest possible tree), compared to the
+     * recursive BinaryTree parser
+     */
+    public static void main(String[] args) throws Exception {
+        int leavesNumber = 10000;
+        if (args.length > 0) {
+            leavesNumber = Integer.parseInt(args[0]);
+        }
+        String randomTree = createRandomTree(leavesNumber, new Random(1)).toNewick();
+        String caterpillarTree = createCaterpillarTree(leavesNumber).toNewick();
+        benchmark("random tree", randomTree, leavesNumber);
+        benchmark("caterpillar tree", caterpillarTree, leavesNumber);
+    }
+
+    private static void benchmark(String treeName, String newick, int leavesNumber) throws Exception {
+        System.out.println(treeName + " of " + leavesNumber + " leaves (" + newick.length() + " characters)");
+        long start = System.nanoTime();
+        int repeats = 20;
+        NewickTree tree = null;
+        for (int r = 0; r < repeats; r++) {
+            tree = parseNewick(newick);
+        }
+        System.out.println("  NewickTree: " + tree.getLeaves().size() + " leaves, " + (System.nanoTime() - start)
+                / repeats / 1000 + " us per parsing");
+        start = System.nanoTime();
+        try {
+            String relationships = BinaryTree.parseNewick(newick).toTreeRelationship();
+            System.out.println("  BinaryTree + toTreeRelationship: " + relationships.length() + " characters, "
+                    + (System.nanoTime() - start) / 1000 + " us");
+        } catch (StackOverflowError e) {
+            System.out.println("  BinaryTree + toTreeRelationship: stack overflow");
+        }
+    }
+
+    /*
+     * A random binary tree named like the IgPhyML trees: the leaves seq0, seq1... and the internal nodes 0_0, 0_1...
+     */
+    static NewickTree createRandomTree(int leavesNumber, Random random) {
+        ArrayList<NewickTree> subtrees = new ArrayList<>();
+        for (int i = 0; i < leavesNumber; i++) {
+            NewickTree leaf = new NewickTree("seq" + i);
+            leaf.branchLength = random.nextDouble() / 10;
+            subtrees.add(leaf);
+        }
+        int internalNodeIndex = 0;
+        while (subtrees.size() > 1) {
+            NewickTree internalNode = new NewickTree("0_" + internalNodeIndex++);
+            internalNode.branchLength = random.nextDouble() / 10;
+            internalNode.addChild(subtrees.remove(random.nextInt(subtrees.size())));
+            internalNode.addChild(subtrees.remove(random.nextInt(subtrees.size())));
+            subtrees.add(internalNode);
+        }
+        return subtrees.get(0);
+    }
+
+    private static NewickTree createCaterpillarTree(int leavesNumber) {
+        NewickTree tree = new NewickTree("seq0");
+        for (int i = 1; i < leavesNumber; i++) {
+            NewickTree internalNode = new NewickTree("0_" + i);
+            internalNode.branchLength = 0.01;
+            internalNode.addChild(tree);
+            NewickTree leaf = new NewickTree("seq" + i);
+            leaf.branchLength = 0.01;
+            internalNode.addChild(leaf);
+            tree = internalNode;
+        }
+        return tree;
+    }
+}
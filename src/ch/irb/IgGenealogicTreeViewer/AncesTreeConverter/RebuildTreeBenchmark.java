@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class measures the reconstruction of the tree of a big synthetic clone (InputParser.rebuildTree): a random
+   binary IgPhyML tree, where each node has the sequence of its parent with a few mutations. The clone is rebuilt with
+   a quarter, a half and all the nodes, the time per node shows if the reconstruction scales linearly, and the whole
+   clone has to be rebuilt within the time budget (the exit code is 1 otherwise).
+   Usage: RebuildTreeBenchmark [nodesNumber (default 50000)] [budgetInSeconds (default 30)]
+ */
+package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import ch.irb.nodes.Node;
+
+public class RebuildTreeBenchmark {
+    private static final int SEQUENCE_LENGTH = 360;
+    private static final int MUTATIONS_PER_BRANCH = 3;
+    private static final char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    public static void main(String[] args) throws Exception {
+        int nodesNumber = 50000;
+        double budgetInSeconds = 30;
+        if (args.length > 0) {
+            nodesNumber = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            budgetInSeconds = Double.parseDouble(args[1]);
+        }
+        // warm up
+        rebuild(nodesNumber / 10, new Random(1));
+        long time = 0;
+        for (int divisor : new int[]{4, 2, 1}) {
+            int number = nodesNumber / divisor;
+            time = rebuild(number, new Random(1));
+            System.out.println(number + " nodes: " + time / 1000000 + " ms, " + time / number / 1000 + " us per node");
+        }
+        if (time > budgetInSeconds * 1e9) {
+            System.out.println("FAILED: the clone of " + nodesNumber + " nodes was not rebuilt within "
+                    + budgetInSeconds + " s");
+            System.exit(1);
+        }
+        System.out.println("OK: the clone of " + nodesNumber + " nodes was rebuilt within " + budgetInSeconds + " s");
+    }
+
+    /*
+     * Return the time to rebuild the tree of a clone of about this number of nodes (leaves + BPs + UCA), in ns
+     */
+    private static long rebuild(int nodesNumber, Random random) throws Exception {
+        int leavesNumber = Math.max(2, nodesNumber / 2);
+        // IgPhyML does not name the root, the germline is one of its children
+        NewickTree root = new NewickTree("");
+        NewickTree germline = new NewickTree("1_GERM");
+        root.addChild(NewickTree.createRandomTree(leavesNumber, random));
+        root.addChild(germline);
+
+        HashMap<String, String> idToSequence = new HashMap<>();
+        HashMap<String, String> originalBPidtoBPid = new HashMap<>();
+        char[] germlineSequence = new char[SEQUENCE_LENGTH];
+        for (int i = 0; i < germlineSequence.length; i++) {
+            germlineSequence[i] = NUCLEOTIDES[random.nextInt(NUCLEOTIDES.length)];
+        }
+        originalBPidtoBPid.put(germline.getName(), "UCA");
+        idToSequence.put("UCA", new String(germlineSequence));
+        for (NewickTree newickNode : root.getPreorderNodes()) {
+            if (newickNode == root || newickNode == germline) {
+                continue;
+            }
+            String id = newickNode.getName();
+            if (id.startsWith("0_")) {
+                originalBPidtoBPid.put(id, "BP" + id.split("_")[1]);
+                id = "BP" + id.split("_")[1];
+            }
+            String parentId = newickNode.getParent() == root ? "UCA" : newickNode.getParent().getName();
+            if (originalBPidtoBPid.containsKey(parentId)) {
+                parentId = originalBPidtoBPid.get(parentId);
+            }
+            char[] sequence = idToSequence.get(parentId).toCharArray();
+            for (int m = 0; m < MUTATIONS_PER_BRANCH; m++) {
+                int position = random.nextInt(sequence.length);
+                sequence[position] = NUCLEOTIDES[(new String(NUCLEOTIDES).indexOf(sequence[position]) + 1
+                        + random.nextInt(NUCLEOTIDES.length - 1)) % NUCLEOTIDES.length];
+            }
+            idToSequence.put(id, new String(sequence));
+        }
+
+        long start = System.nanoTime();
+        Node rootNode = new InputParser().rebuildTree(root, idToSequence, originalBPidtoBPid);
+        long time = System.nanoTime() - start;
+        if (rootNode == null || rootNode.getChildren().isEmpty()) {
+            throw new Exception("The tree of the synthetic clone was not rebuilt");
+        }
+        return time;
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class loads and saves a tree (the InputParser and its Node graph). The tree is saved as the XML file, which
+   can be imported/exported, and as a binary snapshot next to it (same name, .igtree extension) which is much faster
+   to read. The snapshot is read in place of the XML file as long as the XML file was not modified since the snapshot
+   was written, otherwise the XML file is read and the snapshot is written again.
+   Snapshot format (big endian): magic, version, the length and the date of the XML file it was written with, the
+   DNA/reads flags, the string table (all the ids, sequences, regions, comments... written once each), then the
+   nodes in the preorder of the tree, as a flat array where each node has the index of its parent. The sequences
+   (DNA and IMGT gapped) of a node are written as their differences with the sequences of its parent, the protein
+   sequences are not written: they are translated again from the DNA.
+ */
+package ch.irb.IgGenealogicTreeViewer.AncesTreeConverter;
+
+import ch.irb.nodes.Node;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+public class TreeSnapshot {
+    static Logger logger = Logger.getLogger(TreeSnapshot.class);
+    public static final String EXTENSION = ".igtree";
+    private static final int SNAPSHOT_MAGIC = 0x49475453; // "IGTS"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int NO_STRING = -1;
+    // how a sequence is written
+    private static final byte NULL_SEQUENCE = 0;
+    private static final byte FULL_SEQUENCE = 1;
+    private static final byte DIFF_SEQUENCE = 2;
+    // the JAXB context is thread safe and long to create, the marshallers are not thread safe
+    private static JAXBContext jaxbContext = null;
+
+    // used to write a snapshot
+    private ArrayList<String> strings = new ArrayList<>();
+    private HashMap<String, Integer> stringToIndex = new HashMap<>();
+    // used to read a snapshot
+    private ByteBuffer buffer;
+    private int[] stringOffsets;
+    private int stringsStart;
+    private String[] readStrings;
+
+    private TreeSnapshot() {
+    }
+
+    public static synchronized JAXBContext getJAXBContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(InputParser.class);
+        }
+        return jaxbContext;
+    }
+
+    public static File getSnapshotFile(String xmlFilePath) {
+        String path = xmlFilePath;
+        if (path.toLowerCase().endsWith(".xml")) {
+            path = path.substring(0, path.length() - 4);
+        }
+        return new File(path + EXTENSION);
+    }
+
+    /*
+     * Read the tree from its snapshot if it is up to date, otherwise from the XML file (the snapshot is then written
+     * for the next time)
+     */
+    public static InputParser readTree(String xmlFilePath) throws Exception {
+        File xmlFile = new File(xmlFilePath);
+        File snapshotFile = getSnapshotFile(xmlFilePath);
+        if (snapshotFile.isFile()) {
+            try {
+                InputParser tree = new TreeSnapshot().read(snapshotFile, xmlFile);
+                if (tree != null) {
+                    return tree;
+                }
+                logger.info("The XML file " + xmlFile.getName() + " was modified, it is read again");
+            } catch (Exception e) {
+                logger.warn("The snapshot " + snapshotFile.getName() + " could not be read: " + e.getMessage());
+            }
+        }
+        InputParser tree = readXML(xmlFile);
+        try {
+            writeSnapshot(tree, xmlFile, snapshotFile);
+        } catch (IOException e) {
+            // the tree can still be read from the XML file
+            logger.warn("The snapshot " + snapshotFile.getName() + " could not be written: " + e.getMessage());
+        }
+        return tree;
+    }
+
+    /*
+     * Write the XML file and the snapshot of the tree. The XML file is first written in a temporary file, so the
+     * previous version is kept if something goes wrong
+     */
+    public static void writeTree(InputParser tree, String xmlFilePath) throws JAXBException, IOException {
+        File xmlFile = new File(xmlFilePath);
+        File tmpFile = new File(xmlFilePath + "_TMP.xml");
+        Marshaller m = getJAXBContext().createMarshaller();
+        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        Writer w = new FileWriter(tmpFile);
+        try {
+            m.marshal(tree, w);
+        } finally {
+            w.close();
+        }
+        xmlFile.delete();
+        if (!tmpFile.renameTo(xmlFile)) {
+            throw new IOException("The file " + tmpFile.getName() + " could not be renamed to " + xmlFile.getName());
+        }
+        File snapshotFile = getSnapshotFile(xmlFilePath);
+        try {
+            writeSnapshot(tree, xmlFile, snapshotFile);
+        } catch (IOException e) {
+            // the old snapshot does not match the new XML file anymore, so it will not be read
+            logger.warn("The snapshot " + snapshotFile.getName() + " could not be written: " + e.getMessage());
+        }
+    }
+
+    public static InputParser readXML(File xmlFile) throws JAXBException, IOException {
+        Reader reader = new FileReader(xmlFile);
+        try {
+            return (InputParser) getJAXBContext().createUnmarshaller().unmarshal(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static void writeSnapshot(InputParser tree, File xmlFile, File snapshotFile) throws IOException {
+        new TreeSnapshot().write(tree, xmlFile, snapshotFile);
+    }
+
+    private void write(InputParser tree, File xmlFile, File snapshotFile) throws IOException {
+        // the nodes are written first in memory, to know all the strings
+        ArrayList<Node> nodes = getPreorderNodes(tree.getRootNode());
+        HashMap<Node, Integer> nodeToIndex = new HashMap<>();
+        ByteArrayOutputStream nodesBytes = new ByteArrayOutputStream();
+        DataOutputStream nodesOut = new DataOutputStream(nodesBytes);
+        nodesOut.writeInt(nodes.size());
+        ArrayList<Node> parents = getParents(nodes);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            Node parent = parents.get(i);
+            nodeToIndex.put(node, i);
+            nodesOut.writeInt(parent == null ? -1 : nodeToIndex.get(parent));
+            nodesOut.writeInt(getStringIndex(node.getNodeId()));
+            nodesOut.writeInt(getStringIndex(node.parentId));
+            nodesOut.writeInt(node.getLevel());
+            nodesOut.writeInt(node.getNumberOfNucMutationsWithParent());
+            nodesOut.writeInt(node.getNumberOfAAMutationsWithParent());
+            nodesOut.writeInt(node.getInsertionNumber());
+            nodesOut.writeInt(node.getDeletionNumber());
+            nodesOut.writeBoolean(node.isShowComment1());
+            nodesOut.writeInt(getStringIndex(node.getMutationsWithParent()));
+            nodesOut.writeInt(getStringIndex(node.getReverseInformation()));
+            nodesOut.writeInt(getStringIndex(node.getDoubleMutationInformation()));
+            nodesOut.writeInt(getStringIndex(node.getCellInfo()));
+            nodesOut.writeInt(getStringIndex(node.getImmunizationInfo()));
+            nodesOut.writeInt(getStringIndex(node.getEC50()));
+            nodesOut.writeInt(getStringIndex(node.getComment1()));
+            nodesOut.writeInt(getStringIndex(node.getComment2()));
+            nodesOut.writeInt(getStringIndex(node.getCdr_fr_regions()));
+            writeSequence(nodesOut, node.getSequence(), parent == null ? null : parent.getSequence());
+            writeSequence(nodesOut, node.getImgtFormatSequence(),
+                    parent == null ? null : parent.getImgtFormatSequence());
+        }
+        nodesOut.flush();
+        int projectNameIndex = getStringIndex(tree.getProjectName());
+        int previousBPNamesIndex = getStringIndex(tree.previousBPNames);
+
+        File tmpFile = new File(snapshotFile.getPath() + "_TMP");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+                1 << 16));
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(xmlFile.length());
+            out.writeLong(xmlFile.lastModified());
+            out.writeBoolean(tree.isDNA());
+            out.writeBoolean(tree.hasReadsInId());
+            out.writeInt(projectNameIndex);
+            out.writeInt(previousBPNamesIndex);
+            // the string table: the offsets of the strings, then their UTF-8 bytes
+            ArrayList<byte[]> stringBytes = new ArrayList<>();
+            out.writeInt(strings.size());
+            int offset = 0;
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                stringBytes.add(bytes);
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : stringBytes) {
+                out.write(bytes);
+            }
+            nodesBytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+        snapshotFile.delete();
+        if (!tmpFile.renameTo(snapshotFile)) {
+            throw new IOException("The file " + tmpFile.getName() + " could not be renamed to "
+                    + snapshotFile.getName());
+        }
+    }
+
+    /*
+     * A sequence is written as the positions where it differs from the sequence of the parent, if they have the same
+     * length and if it is shorter than the whole sequence
+     */
+    private void writeSequence(DataOutputStream out, String sequence, String parentSequence) throws IOException {
+        if (sequence == null) {
+            out.writeByte(NULL_SEQUENCE);
+            return;
+        }
+        if (parentSequence != null && parentSequence.length() == sequence.length()) {
+            ArrayList<Integer> positions = new ArrayList<>();
+            int maxDifferences = sequence.length() / 8;
+            for (int i = 0; i < sequence.length() && positions.size() <= maxDifferences; i++) {
+                if (sequence.charAt(i) != parentSequence.charAt(i)) {
+                    positions.add(i);
+                }
+            }
+            if (positions.size() <= maxDifferences) {
+                out.writeByte(DIFF_SEQUENCE);
+                out.writeInt(positions.size());
+                for (int position : positions) {
+                    out.writeInt(position);
+                    out.writeChar(sequence.charAt(position));
+                }
+                return;
+            }
+        }
+        out.writeByte(FULL_SEQUENCE);
+        out.writeInt(getStringIndex(sequence));
+    }
+
+    private int getStringIndex(String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = stringToIndex.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringToIndex.put(string, index);
+        }
+        return index;
+    }
+
+    /*
+     * Return null if the XML file was modified since the snapshot was written
+     */
+    private InputParser read(File snapshotFile, File xmlFile) throws Exception {
+        FileInputStream in = new FileInputStream(snapshotFile);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer = mappedBuffer;
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new Exception("The file " + snapshotFile.getName() + " is not a tree snapshot.");
+            }
+            long xmlLength = buffer.getLong();
+            long xmlLastModified = buffer.getLong();
+            if (xmlFile.isFile() && (xmlFile.length() != xmlLength || xmlFile.lastModified() != xmlLastModified)) {
+                return null;
+            }
+            InputParser tree = new InputParser();
+            tree.isDNA = buffer.get() != 0;
+            tree.setHasReadsInId(buffer.get() != 0);
+            int projectNameIndex = buffer.getInt();
+            int previousBPNamesIndex = buffer.getInt();
+            readStringTable();
+            tree.setProjectName(getString(projectNameIndex));
+            tree.previousBPNames = getString(previousBPNamesIndex);
+            tree.rootNode = readNodes(tree.isDNA);
+            return tree;
+        } finally {
+            // all the strings were decoded, the mapped file is not used anymore
+            buffer = null;
+            in.close();
+        }
+    }
+
+    /*
+     * Only the offsets are read, a string is decoded the first time it is used
+     */
+    private void readStringTable() {
+        int stringsNumber = buffer.getInt();
+        stringOffsets = new int[stringsNumber + 1];
+        for (int i = 0; i <= stringsNumber; i++) {
+            stringOffsets[i] = buffer.getInt();
+        }
+        stringsStart = buffer.position();
+        readStrings = new String[stringsNumber];
+        buffer.position(stringsStart + stringOffsets[stringsNumber]);
+    }
+
+    private String getString(int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        String string = readStrings[index];
+        if (string == null) {
+            byte[] bytes = new byte[stringOffsets[index + 1] - stringOffsets[index]];
+            ByteBuffer stringBuffer = buffer.duplicate();
+            stringBuffer.position(stringsStart + stringOffsets[index]);
+            stringBuffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            readStrings[index] = string;
+        }
+        return string;
+    }
+
+    private Node readNodes(boolean isDNA) {
+        Node[] nodes = new Node[buffer.getInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            int parentIndex = buffer.getInt();
+            Node parent = parentIndex < 0 ? null : nodes[parentIndex];
+            Node node = new Node();
+            node.setDNA(isDNA);
+            node.setNodeId(getString(buffer.getInt()));
+            node.parentId = getString(buffer.getInt());
+            node.setLevel(buffer.getInt());
+            node.setNumberOfNucMutationsWithParent(buffer.getInt());
+            node.setNumberOfAAMutationsWithParent(buffer.getInt());
+            node.setInsertionNumber(buffer.getInt());
+            node.setDeletionNumber(buffer.getInt());
+            node.setShowComment1(buffer.get() != 0);
+            String mutations = getString(buffer.getInt());
+            if (mutations != null) {
+                node.setMutationsWithParent(mutations);
+            }
+            node.setReverseInformation(getString(buffer.getInt()));
+            node.setDoubleMutationInformation(getString(buffer.getInt()));
+            node.setCellInfo(getString(buffer.getInt()));
+            node.setImmunizationInfo(getString(buffer.getInt()));
+            node.setEC50(getString(buffer.getInt()));
+            node.setComment1(getString(buffer.getInt()));
+            node.setComment2(getString(buffer.getInt()));
+            node.setCdr_fr_regions(getString(buffer.getInt()));
+            String sequence = readSequence(parent == null ? null : parent.getSequence());
+            if (sequence != null) {
+                node.setSequence(sequence);
+            }
+            node.setImgtFormatSequence(readSequence(parent == null ? null : parent.getImgtFormatSequence()));
+            if (parent != null) {
+                parent.getChildren().add(node);
+            }
+            nodes[i] = node;
+        }
+        return nodes.length == 0 ? null : nodes[0];
+    }
+
+    private String readSequence(String parentSequence) {
+        byte type = buffer.get();
+        if (type == NULL_SEQUENCE) {
+            return null;
+        } else if (type == FULL_SEQUENCE) {
+            return getString(buffer.getInt());
+        }
+        char[] sequence = parentSequence.toCharArray();
+        int differencesNumber = buffer.getInt();
+        for (int i = 0; i < differencesNumber; i++) {
+            int position = buffer.getInt();
+            sequence[position] = buffer.getChar();
+        }
+        return new String(sequence);
+    }
+
+    private static ArrayList<Node> getPreorderNodes(Node rootNode) {
+        ArrayList<Node> nodes = new ArrayList<>();
+        if (rootNode == null) {
+            return nodes;
+        }
+        ArrayDeque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(rootNode);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            nodes.add(node);
+            ArrayList<Node> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                toVisit.push(children.get(i));
+            }
+        }
+        return nodes;
+    }
+
+    /*
+     * The parent of each node, as it is in the children lists (the parent of a node read from the XML file is not set)
+     */
+    private static ArrayList<Node> getParents(ArrayList<Node> preorderNodes) {
+        HashMap<Node, Node> childToParent = new HashMap<>();
+        for (Node node : preorderNodes) {
+            for (Node child : node.getChildren()) {
+                childToParent.put(child, node);
+            }
+        }
+        ArrayList<Node> parents = new ArrayList<>();
+        for (Node node : preorderNodes) {
+            parents.add(childToParent.get(node));
+        }
+        return parents;
+    }
+}
@@ -28,8 +28,10 @@ import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
+import ch.irb.nodes.MutationList;
 import ch.irb.nodes.NodeGraph;
-import ch.irb.translation.Translator;
+import ch.irb.translation.MutationClassifier;
+import ch.irb.translation.MutationClassifier.Classification;
 import jxl.Workbook;
 import jxl.write.Label;
 import jxl.write.WritableSheet;
@@ -73,8 +75,13 @@ public class CreateExcellFileWithMutations {
             int sheetIndex = 0;
             for (MutationsGraph mutationsGraph : allMutations.values()) {
                 NodeGraph node = mutationsGraph.getNode();
-                String nodeSequence = node.getSequence();
-                TreeMap<String, ArrayList<String>> regionToMutations = new TreeMap<String, ArrayList<String>>();
+                // the R/S classes and the R/S numbers of all the regions, computed in one pass
+                Classification classification = null;
+                if (isDNA) {
+                    classification = MutationClassifier.classify(node.getParent().getPackedSequence(),
+                            node.getPackedSequence(), positionNucToCdrFrRegions);
+                }
+                TreeMap<String, ArrayList<Integer>> regionToMutations = new TreeMap<String, ArrayList<Integer>>();
                 WritableSheet sheet = workbook.createSheet(mutationsGraph.getNodeId(), sheetIndex);
                 // first we write the regions
                 int column = 0;
@@ -86,22 +93,20 @@ public class CreateExcellFileWithMutations {
                 }
 
                 // Then the mutations from row 3
-                String[] mut = mutationsGraph.getMutationsWithParent().split(",");
-                for (int i = 1; i < mut.length; i++) {
-                    String[] muta = mut[i].split(":");
-                    String position = muta[0];
-                    int pos = Integer.parseInt(position);
-                    String mutationToWrite = pos + 1 + ":" + muta[1];// be careful we write the position +1 for the user!!
+                MutationList mut = mutationsGraph.getMutationsWithParent();
+                for (int i = 0; mut != null && i < mut.size(); i++) {
+                    int pos = mut.getPosition(i);
+                    String mutationToWrite = pos + 1 + ":" + mut.getMutation(i);// be careful we write the position +1 for the user!!
                     String region = positionNucToCdrFrRegions.get(pos);
 
-                    ArrayList<String> mutations = new ArrayList<String>();
+                    ArrayList<Integer> mutations = new ArrayList<Integer>();
                     if (regionToMutations.containsKey(region)) {
                         mutations = regionToMutations.get(region);
                     }
-                    mutations.add(mut[i]);
+                    mutations.add(pos);
                     regionToMutations.put(region, mutations);
 
-                    row = 3 + mutations.indexOf(mut[i]);
+                    row = 2 + mutations.size();
                     column = Arrays.asList(regions).indexOf(region);
                     Label label = new Label(column, row, mutationToWrite);
                     sheet.addCell(label);
@@ -109,9 +114,9 @@ public class CreateExcellFileWithMutations {
 
                 // Then the number of mutations for each region
                 for (String region : regions) { //regionToMutations.keySet()
-                    ArrayList<String> mutations = regionToMutations.get(region);
+                    ArrayList<Integer> mutations = regionToMutations.get(region);
                     if (mutations == null) {
-                        mutations = new ArrayList<String>();
+                        mutations = new ArrayList<Integer>();
                     }
                     int mutationsNumber = mutations.size();
                     row = 2;
@@ -119,25 +124,13 @@ public class CreateExcellFileWithMutations {
                     Label label = new Label(column, row, String.valueOf(mutationsNumber));
                     sheet.addCell(label);
 
-                    // and finally the ratio R/S of the mutations
-                    int R = 0;
+                    // and finally the ratio R/S of the mutations (for the proteins, all the mutations are R)
+                    int R = mutations.size();
                     int S = 0;
-                    for (String mutation : mutations) {
-                        String[] muta = mutation.split(":");
-                        String position = muta[0];
-                        String codon = getCodon(Integer.valueOf(position), nodeSequence);
-                        String parentSequence = node.getParent().getSequence();
-                        String codonParent = getCodon(Integer.valueOf(position), parentSequence);
-                        Translator translator = new Translator(codon, isDNA);
-                        String aa = translator.getProteinSequence();
-                        translator = new Translator(codonParent, isDNA);
-                        String parentAA = translator.getProteinSequence();
-                        if (aa.equals(parentAA)) // this is a silent mutation
-                        {
-                            S++;
-                        } else {
-                            R++;
-                        }
+                    if (classification != null) {
+                        int[] counts = classification.getReplacementsAndSilents(region);
+                        R = counts[0];
+                        S = counts[1];
                     }
                     BigDecimal ratio = new BigDecimal(0);
                     if (S == 0) {
@@ -163,30 +156,4 @@ public class CreateExcellFileWithMutations {
         }
     }
 
-    private String getCodon(int position, String sequence) {
-        // logger.debug("Position is " + position + " with node sequence " + nodeSequence);
-        String codon = null;
-        if (position % 3 == 0) { // the nuc is in first, we take the 2 next ones
-            if (position + 3 > sequence.length()) {
-                codon = sequence.substring(position);
-            } else {
-                codon = sequence.substring(position, position + 3);
-            }
-        } else if ((position + 1) % 3 == 0) { // nuc in the end of the codon
-            if (position + 1 > sequence.length()) {
-                codon = sequence.substring(position - 2);
-            } else {
-                codon = sequence.substring(position - 2, position + 1);
-            }
-        } else {
-            // if ((position + 2) % 3 == 0) // nuc in the middle
-            if (position + 2 > sequence.length()) {
-                codon = sequence.substring(position - 1);
-            } else {
-                codon = sequence.substring(position - 1, position + 2);
-            }
-        }
-        return codon;
-    }
-
 }
@@ -33,11 +33,12 @@ import java.awt.event.MouseListener;
 import java.awt.font.FontRenderContext;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map.Entry;
+import java.util.Collection;
 import java.util.TreeMap;
 
 import javax.swing.JComponent;
@@ -47,6 +48,9 @@ import org.apache.log4j.Logger;
 
 import ch.irb.currentDirectory.GetSetCurrentDirectory;
 import ch.irb.nodes.NodeGraph;
+import ch.irb.saveImages.DrawingCanvas;
+import ch.irb.saveImages.Graphics2DCanvas;
+import ch.irb.saveImages.JPanelToExport;
 
 /**
  * @author Mathilde This is the main panel of Ancestree GUI. This panel will
@@ -56,7 +60,7 @@ import ch.irb.nodes.NodeGraph;
  */
 
 @SuppressWarnings("serial")
-public class IgTreePanel extends JPanel {
+public class IgTreePanel extends JPanel implements JPanelToExport {
     private IgTreePanel igTreePanel = this;
     static Logger logger = Logger.getLogger(IgTreePanel.class);
     static PValueCodeColor pValueCodeColor = new PValueCodeColor();
@@ -95,6 +99,23 @@ public class IgTreePanel extends JPanel {
     private float totalHeight = 500;
     private int lastNodesNumber = 0;
     private float miniNumberOfMutations = 0;
+    // the layout (coordinates of the nodes and positions of the mutation numbers) is computed once and reused by
+    // each repaint, until the tree or the size of the nodes change (see invalidateLayout)
+    private boolean isLayoutValid = false;
+    // the number of exports drawing the layout in other threads (see getSizeToExport), the layout is not computed
+    // again until they are finished
+    private int exportsNumber = 0;
+    // the bottom of each node (with its duplicated nodes) in the order of the layout, used to set the height
+    private ArrayList<Integer> nodeBottoms = new ArrayList<Integer>();
+    private int heightForTotalHeight = -1;
+    // the nodes and the mutation numbers indexed by their position, to find what the user clicked
+    private SpatialGrid<NodeGraph> nodesGrid = new SpatialGrid<NodeGraph>(128);
+    private SpatialGrid<MutationsGraph> mutationsGrid = new SpatialGrid<MutationsGraph>(128);
+    // the nodes in the order they are drawn, indexed by the area of the node and of the line with its parent
+    private ArrayList<NodeGraph> nodesInDrawOrder = new ArrayList<NodeGraph>();
+    private SpatialGrid<NodeGraph> nodesToDrawGrid = new SpatialGrid<NodeGraph>(128);
+    // the boxes and the AA change written around the highlighted mutation numbers
+    private static final int HIGHLIGHT_MARGIN = 300;
     private ColorByYear colorByYear;
     private GetSetCurrentDirectory getSetCurrentDir;
     final static float dash1[] = {5.0f};
@@ -104,6 +125,8 @@ public class IgTreePanel extends JPanel {
     private boolean hasImmuInfo = false;
     private double scale = 1;
     private double zoomInc = 0.05;
+    // below this scale the text is not readable, the nodes are drawn without text and without the mutation numbers
+    private static final double LOW_DETAIL_SCALE = 0.3;
     private NodeGraph centerNode = null;
     private boolean hasReadsInId = false;
     private ArrayList<Color> ec50Colors = new ArrayList<Color>(Arrays.asList(new Color(204,0,0),
@@ -308,7 +331,7 @@ public class IgTreePanel extends JPanel {
         }
 
         // We process y coordinates from the top of the tree to the bottom
-        int newHeight = this.getHeight();
+        nodeBottoms.clear();
         for (int z = 0; z <= lastLevel; z++) {
             Integer level = z;
             ArrayList<NodeGraph> nodesAtThisLevel = fromLevelToNodes.get(level);
@@ -338,13 +361,171 @@ public class IgTreePanel extends JPanel {
                         yToTest += (du.getHeight() + 2);
                     }
                 }
-                if (yToTest >= newHeight) {
-                    newHeight = yToTest + 20;
+                nodeBottoms.add(yToTest);
+            }
+        }
+        heightForTotalHeight = -1;
+    }
+
+    /**
+     * The height of the tree is at least the height of the panel, we have to
+     * update it when the panel is resized
+     */
+    private void setTotalHeight() {
+        int newHeight = this.getHeight();
+        for (Integer yToTest : nodeBottoms) {
+            if (yToTest >= newHeight) {
+                newHeight = yToTest + 20;
+            }
+        }
+        totalHeight = newHeight;
+        heightForTotalHeight = this.getHeight();
+        // logger.debug("TOT HEIGHT is "+totalHeight);
+    }
+
+    /**
+     * This method stores, for each node, the points of the line with its
+     * parent and the position of the mutation numbers to display
+     */
+    private void calculateMutationsPositions(Graphics2D g) {
+        for (int z = 0; z <= lastLevel; z++) {
+            ArrayList<NodeGraph> nodesAtThisLevel = fromLevelToNodes.get(z);
+            for (int h = 0; h < nodesAtThisLevel.size(); h++) {
+                NodeGraph node = nodesAtThisLevel.get(h);
+                if (node.isRoot() || node.isADuplicateNode()) {
+                    continue;
+                }
+                String nodeId = node.getNodeId();
+                int x = (int) node.getXCoord();
+                int y = (int) node.getYCoord();
+                int parentX = (int) node.getParent().getXCoord() + (widthOfNodeShape / 2);
+                int parentY = getParentBottom(node);
+                // we store the pixels belonging to this line
+                ArrayList<Point2D> linePoints = getLinePoints(parentX, parentY, x + (widthOfNodeShape / 2), y);
+                String mutationsNumber = node.getMutationTextToDisplay();
+                MutationsGraph mutationsGraph;
+                // by default we do like the line goes on the right
+                float xcoord = node.getParent().getXCoord();
+                float ycoord = (float) parentY - node.getParent().getHeight();
+                float w = node.getXCoord() + widthOfNodeShape - xcoord;
+                float hei = node.getYCoord() - ycoord;
+
+                // if line goes on the left
+                if (node.getXCoord() < node.getParent().getXCoord()) {
+                    xcoord = node.getXCoord();
+                    w = node.getParent().getXCoord() + widthOfNodeShape - xcoord;
                 }
-                totalHeight = newHeight;
-                // logger.debug("TOT HEIGHT is "+totalHeight);
+
+                if (!allMutations.containsKey(nodeId)) {
+                    mutationsGraph = new MutationsGraph(mutationsNumber, node.getMutations(), xcoord, ycoord, w,
+                            hei, node, g);
+                } else {
+                    mutationsGraph = allMutations.get(nodeId);
+                    // will be used later to "distribute" the display, so far we
+                    // dont use it (memory consuming)
+                    mutationsGraph.setRectangleToWrite(new Rectangle2D.Float(xcoord, ycoord, w, hei));
+                }
+                // we store the points of the line between the 2 nodes in the
+                // MutationsGraph object
+                mutationsGraph.setLinePoints(linePoints);
+                allMutations.put(nodeId, mutationsGraph);
+                // we find the best position to display
+                mutationsGraph.setRectangle2d(getBestPositionForMutations(mutationsGraph));
+            }
+        }
+    }
+
+    /**
+     * The Y coordinate of the bottom of the parent of this node (below its
+     * duplicated nodes), where the line to this node starts
+     */
+    private int getParentBottom(NodeGraph node) {
+        int parentY = (int) node.getParent().getYCoord() + node.getParent().getHeight();
+        if (node.getParent().hasDuplicateNodes()) {
+            ArrayList<NodeGraph> dup = node.getParent().getDuplicatedNodes();
+            for (NodeGraph du : dup) {
+                int h = du.getHeight();
+                parentY += (h + 2);
             }
         }
+        return parentY;
+    }
+
+    /**
+     * The rectangles of the nodes and of the mutation numbers are stored in
+     * grids, in the coordinates of the tree (the mouse position is divided by
+     * the scale before looking in the grids)
+     */
+    private void setSpatialGrids() {
+        nodesGrid.clear();
+        for (NodeGraph node : allNodeGraphs) {
+            nodesGrid.add(node, node.getRectangle2d());
+        }
+        mutationsGrid.clear();
+        for (MutationsGraph mutationsGraph : allMutations.values()) {
+            mutationsGrid.add(mutationsGraph, mutationsGraph.getRectangle2d());
+        }
+        nodesInDrawOrder.clear();
+        for (int z = 0; z <= lastLevel; z++) {
+            for (NodeGraph node : fromLevelToNodes.get(z)) {
+                nodesInDrawOrder.add(node);
+                if (node.hasDuplicateNodes()) {
+                    nodesInDrawOrder.addAll(node.getDuplicatedNodes());
+                }
+            }
+        }
+        nodesToDrawGrid.clear();
+        for (NodeGraph node : nodesInDrawOrder) {
+            Rectangle2D bounds = getNodeBounds(node);
+            if (!node.isRoot() && !node.isADuplicateNode()) {
+                // the line with the parent
+                bounds.add(new Rectangle2D.Float(node.getParent().getXCoord() + (widthOfNodeShape / 2) - 1,
+                        getParentBottom(node) - 1, 2, 2));
+            }
+            nodesToDrawGrid.add(node, bounds);
+        }
+    }
+
+    /**
+     * The node drawn at this point, in the coordinates of the tree (i.e. the
+     * position of the mouse divided by the scale), or null
+     */
+    public NodeGraph getNodeAt(Point2D point2d) {
+        return nodesGrid.getFirstAt(point2d);
+    }
+
+    /**
+     * The mutation numbers drawn at this point, in the coordinates of the tree,
+     * or null
+     */
+    public MutationsGraph getMutationsGraphAt(Point2D point2d) {
+        return mutationsGrid.getFirstAt(point2d);
+    }
+
+    /**
+     * The layout is computed only if the tree or the size of the nodes changed
+     * since the last repaint. During an export the current layout is kept, it
+     * is computed at the first repaint after the export
+     */
+    private void validateLayout(Graphics2D g) {
+        if (!isLayoutValid && exportsNumber == 0) {
+            calculateCoordinates();
+            calculateMutationsPositions(g);
+            setSpatialGrids();
+            isLayoutValid = true;
+        }
+        if (heightForTotalHeight != this.getHeight()) {
+            setTotalHeight();
+        }
+    }
+
+    /**
+     * To call when the structure of the tree or the size of a node changed
+     * (i.e. an EC50 or a comment is added to a node), the layout will be
+     * computed again at the next repaint
+     */
+    public void invalidateLayout() {
+        isLayoutValid = false;
     }
 
     public void paintComponent(Graphics g) {
@@ -357,7 +538,7 @@ public class IgTreePanel extends JPanel {
 
         gd2.scale(scale, scale);
 
-        calculateCoordinates();
+        validateLayout(gd2);
         gd2.clearRect(0, 0, w, h);
         gd2.setColor(Color.white);
         gd2.fillRect(0, 0, w, h);
@@ -473,32 +654,68 @@ public class IgTreePanel extends JPanel {
      * format.
      */
     public void draw(Graphics2D gd2) {
-        // we draw the nodes
-        for (int z = 0; z <= lastLevel; z++) {
-            Integer level = z;
-            ArrayList<NodeGraph> nodesAtThisLevel = fromLevelToNodes.get(level);
-            for (int h = 0; h < nodesAtThisLevel.size(); h++) {
-                NodeGraph node = nodesAtThisLevel.get(h);
-                drawNodeShapes(node, gd2);
-                if (node.hasDuplicateNodes()) {
-                    ArrayList<NodeGraph> dupNodes = node.getDuplicatedNodes();
-                    for (int d = 0; d < dupNodes.size(); d++) {
-                        NodeGraph dupNode = dupNodes.get(d);
-                        drawNodeShapes(dupNode, gd2);
-                    }
-                }
-            }
+        draw(new Graphics2DCanvas(gd2), scale < LOW_DETAIL_SCALE);
+    }
+
+    /**
+     * The size of the tree at scale 1, the layout is computed here because the
+     * export draws the tree with several threads. The layout is then frozen
+     * until the export is finished: a change of a node (i.e. in the NodeFrame)
+     * does not compute it again while the threads are drawing it
+     */
+    public Dimension getSizeToExport() {
+        validateLayout(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics());
+        exportsNumber++;
+        return new Dimension((int) Math.ceil(totalWidth), (int) Math.ceil(totalHeight));
+    }
+
+    /**
+     * The layout can be computed again, with the changes done during the
+     * export
+     */
+    public void exportFinished() {
+        exportsNumber--;
+        if (exportsNumber == 0 && !isLayoutValid) {
+            repaint();
+        }
+    }
+
+    /**
+     * The export draws the tree with all the details, whatever the zoom
+     */
+    public void drawToExport(DrawingCanvas canvas) {
+        draw(canvas, false);
+    }
+
+    private void draw(DrawingCanvas gd2, boolean isLowDetail) {
+        // we draw only what is in the clip (i.e. the visible part of the
+        // panel), in the coordinates of the tree
+        Rectangle clip = gd2.getClipBounds();
+        // we draw the nodes (level by level, a node followed by its
+        // duplicated nodes), we look only at the ones near the clip
+        ArrayList<NodeGraph> nodesToDraw = nodesInDrawOrder;
+        if (clip != null) {
+            nodesToDraw = nodesToDrawGrid.getIntersecting(clip);
+        }
+        for (NodeGraph node : nodesToDraw) {
+            drawNode(node, gd2, clip, isLowDetail);
         }
 
         // Now we have displayed all the nodes and the lines between them, we
         // draw the mutation numbers between the
         // nodes.
-        for (MutationsGraph mutationsGraph : allMutations.values()) {
-            // we find the best position to display
-            Rectangle2D rect = getBestPositionForMutations(mutationsGraph);
-            mutationsGraph.setRectangle2d(rect);
-            // we draw the string
-            drawMutationNumber(mutationsGraph, gd2);
+        if (!isLowDetail) {
+            Collection<MutationsGraph> mutationsToDraw = allMutations.values();
+            if (clip != null) {
+                mutationsToDraw = mutationsGrid.getIntersecting(new Rectangle(clip.x - HIGHLIGHT_MARGIN,
+                        clip.y - HIGHLIGHT_MARGIN, clip.width + 2 * HIGHLIGHT_MARGIN, clip.height + 2 * HIGHLIGHT_MARGIN));
+            }
+            for (MutationsGraph mutationsGraph : mutationsToDraw) {
+                // we draw the string, its position was computed with the layout
+                if (isInClip(getMutationNumberBounds(mutationsGraph), clip)) {
+                    drawMutationNumber(mutationsGraph, gd2);
+                }
+            }
         }
 
         // If there are the BASELINe data we display them
@@ -548,7 +765,7 @@ public class IgTreePanel extends JPanel {
             gd2.setColor(Color.black);
             gd2.drawRect(x, y, 120, 40);
             Font font = gd2.getFont();
-            FontRenderContext frc = gd2.getFontMetrics().getFontRenderContext();
+            FontRenderContext frc = gd2.getFontRenderContext();
             Rectangle2D rect = font.getStringBounds(valueCDR, frc);
             int xMiddle = (int) (x + 60 - (rect.getWidth() / 2));
             int yMiddle = (int) (y + 53 - rect.getHeight());
@@ -579,6 +796,7 @@ public class IgTreePanel extends JPanel {
      */
     public void setAllNodeGraphs(ArrayList<NodeGraph> allNodeGraphs) {
         this.allNodeGraphs = allNodeGraphs;
+        invalidateLayout();
         // Here we check if there are more than 15 nodes we decrease the size of
         // the shapes etc...
         if (allNodeGraphs.size() >= 20) {
@@ -608,6 +826,7 @@ public class IgTreePanel extends JPanel {
      */
     public void setFromLevelToNodes(TreeMap<Integer, ArrayList<NodeGraph>> fromLevelToNodes) {
         this.fromLevelToNodes = fromLevelToNodes;
+        invalidateLayout();
         Integer[] levels = new Integer[fromLevelToNodes.size()];
         fromLevelToNodes.keySet().toArray(levels);
         Arrays.sort(levels); // we sort the position
@@ -704,11 +923,10 @@ public class IgTreePanel extends JPanel {
 
     }
 
-    private void drawNodeShapes(NodeGraph node, Graphics2D g) {
+    private void drawNodeShapes(NodeGraph node, DrawingCanvas g) {
 
         int x = (int) node.getXCoord();
         int y = (int) node.getYCoord();
-        String nodeId = node.getNodeId();
         // logger.debug("Processing node for GUI: "+node.getNodeId());
         Color color = node.getColor();
         if (isEveryThingIsGrey() && isFadingON()) {
@@ -766,53 +984,102 @@ public class IgTreePanel extends JPanel {
         g.setColor(color);
 
         printInsideTheNode(g, node, y, x);
+    }
 
+    /**
+     * This method draws the node (if it is visible) and the line with its
+     * parent (if it crosses the visible part). At low zoom the node is only
+     * filled with its color
+     */
+    private void drawNode(NodeGraph node, DrawingCanvas g, Rectangle clip, boolean isLowDetail) {
+        if (isInClip(getNodeBounds(node), clip)) {
+            if (isLowDetail) {
+                drawSimplifiedNodeShape(node, g);
+            } else {
+                drawNodeShapes(node, g);
+            }
+        }
         if (!node.isRoot() && !node.isADuplicateNode()) {
             // draw the proportional line
+            int x = (int) node.getXCoord() + (widthOfNodeShape / 2);
+            int y = (int) node.getYCoord();
             int parentX = (int) node.getParent().getXCoord() + (widthOfNodeShape / 2);
-            int parentY = (int) node.getParent().getYCoord() + node.getParent().getHeight();
-            if (node.getParent().hasDuplicateNodes()) {
-                ArrayList<NodeGraph> dup = node.getParent().getDuplicatedNodes();
-                for (NodeGraph du : dup) {
-                    int h = du.getHeight();
-                    parentY += (h + 2);
+            int parentY = getParentBottom(node);
+            if (clip == null || clip.intersectsLine(parentX, parentY, x, y)) {
+                Color color = Color.black;
+                if (isEveryThingIsGrey() && isFadingON()) {
+                    color = lightGrey;
                 }
+                g.setStroke(plain);
+                g.setColor(color);
+                g.drawLine(parentX, parentY, x, y); // +35
             }
-            g.setColor(color);
-            g.drawLine(parentX, parentY, x + (widthOfNodeShape / 2), y); // +35
-            // we store the pixels belonging to this line
-            ArrayList<Point2D> linePoints = getLinePoints(parentX, parentY, x + (widthOfNodeShape / 2), y);
-            String mutationsNumber = node.getMutationTextToDisplay();
-            MutationsGraph mutationsGraph;
-            // by default we do like the line goes on the right
-            float xcoord = node.getParent().getXCoord();
-            float ycoord = (float) parentY - node.getParent().getHeight();
-            float w = node.getXCoord() + widthOfNodeShape - xcoord;
-            float h = node.getYCoord() - ycoord;
-
-            // if line goes on the left
-            if (node.getXCoord() < node.getParent().getXCoord()) {
-                xcoord = node.getXCoord();
-                w = node.getParent().getXCoord() + widthOfNodeShape - xcoord;
-            }
+        }
+    }
 
-            if (!allMutations.containsKey(nodeId)) {
-                mutationsGraph = new MutationsGraph(mutationsNumber, node.getMutationsWithParent(), xcoord, ycoord, w,
-                        h, node, g);
-            } else {
-                mutationsGraph = allMutations.get(nodeId);
-                // will be used later to "distribute" the display, so far we
-                // dont use it (memory consuming)
-                mutationsGraph.setRectangleToWrite(new Rectangle2D.Float(xcoord, ycoord, w, h));
+    private void drawSimplifiedNodeShape(NodeGraph node, DrawingCanvas g) {
+        int x = (int) node.getXCoord();
+        int y = (int) node.getYCoord();
+        Color color = node.getColor();
+        if (isEveryThingIsGrey() && isFadingON()) {
+            color = Color.white;
+        }
+        g.setColor(color);
+        boolean isCircle = node.getShape().equals("circle");
+        if (isCircle) {
+            g.fillOval(x, y, widthOfNodeShape, node.getHeight());
+        } else {
+            g.fillRect(x, y, widthOfNodeShape, node.getHeight());
+        }
+        // the contour, for the nodes in white
+        color = Color.black;
+        if (isEveryThingIsGrey() && isFadingON()) {
+            color = lightGrey;
+        }
+        g.setStroke(plain);
+        g.setColor(color);
+        if (isCircle) {
+            g.drawOval(x, y, widthOfNodeShape, node.getHeight());
+        } else {
+            g.drawRect(x, y, widthOfNodeShape, node.getHeight());
+        }
+    }
+
+    /**
+     * The area where the node and its text can be drawn: the text can be
+     * larger than the node, and the comment has no limit of length
+     */
+    private Rectangle2D getNodeBounds(NodeGraph node) {
+        if (node.getComment1() != null && node.isShowComment1()) {
+            return new Rectangle2D.Float(-widthOfNodeShape, node.getYCoord() - 2, totalWidth + 2 * widthOfNodeShape,
+                    node.getHeight() + 4);
+        }
+        return new Rectangle2D.Float(node.getXCoord() - widthOfNodeShape, node.getYCoord() - 2,
+                3 * widthOfNodeShape, node.getHeight() + 4);
+    }
+
+    /**
+     * The area where the mutation numbers can be drawn, with the boxes and the
+     * AA change written above them
+     */
+    private Rectangle2D getMutationNumberBounds(MutationsGraph mutationsGraph) {
+        Rectangle2D rect = mutationsGraph.getRectangle2d();
+        float margin = 2;
+        if (mutationsGraph.getBoxed() > 0) {
+            margin += 2 * mutationsGraph.getBoxed() + 25;
+            if (mutationsGraph.getAAChange() != null) {
+                margin += 18 * mutationsGraph.getAAChange().length();
             }
-            // we store the points of the line between the 2 nodes in the
-            // MutationsGraph object
-            mutationsGraph.setLinePoints(linePoints);
-            allMutations.put(nodeId, mutationsGraph);
         }
+        return new Rectangle2D.Double(rect.getX() - margin, rect.getY() - margin, rect.getWidth() + 2 * margin,
+                rect.getHeight() + 2 * margin);
     }
 
-    private void printInsideTheNode(Graphics2D g, NodeGraph node, int y, int x) {
+    private boolean isInClip(Rectangle2D bounds, Rectangle clip) {
+        return clip == null || clip.intersects(bounds);
+    }
+
+    private void printInsideTheNode(DrawingCanvas g, NodeGraph node, int y, int x) {
         String EC50 = node.getEC50();
         String comment = node.getComment1();
         String nodeIdToPrint = node.getNodeId();
@@ -825,7 +1092,7 @@ public class IgTreePanel extends JPanel {
         }
         g.setFont(fonte);
         //System.out.println("FONT "+fonte.getSize());
-        FontRenderContext frc = g.getFontMetrics().getFontRenderContext();
+        FontRenderContext frc = g.getFontRenderContext();
         Rectangle2D rect = fonte.getStringBounds(nodeIdToPrint, frc);
         int xString = (int) (x + (widthOfNodeShape / 2) - (rect.getWidth() / 2));
         float mult = 1.15f;// 1.15
@@ -1041,7 +1308,7 @@ public class IgTreePanel extends JPanel {
      * @param mutationsGraph
      * @param g
      */
-    private void drawMutationNumber(MutationsGraph mutationsGraph, Graphics2D g) {
+    private void drawMutationNumber(MutationsGraph mutationsGraph, DrawingCanvas g) {
 
         int x = (int) mutationsGraph.getRectangle2d().getX();
         int y = (int) mutationsGraph.getRectangle2d().getY();
@@ -1249,23 +1516,18 @@ public class IgTreePanel extends JPanel {
             int x = (int) (e.getX() / scale);
             int y = (int) (e.getY() / scale);
             Point2D point2d = new Point2D.Float(x, y);
-            for (int i = 0; i < allNodeGraphs.size(); i++) {
-                NodeGraph node = allNodeGraphs.get(i);
-                if (node.containsPoint2D(point2d)) {
-                    // logger.debug("We click node "+node.getNodeId());
-                    NodeFrame nodeFrame = new NodeFrame(node, component, igTreePanel);
-                    return;
-                }
+            NodeGraph node = getNodeAt(point2d);
+            if (node != null) {
+                // logger.debug("We click node "+node.getNodeId());
+                NodeFrame nodeFrame = new NodeFrame(node, component, igTreePanel);
+                return;
             }
-            for (Entry<String, MutationsGraph> entry : allMutations.entrySet()) {
-                MutationsGraph mutationGraph = entry.getValue();
-                if (mutationGraph.containsPoint2D(point2d)) {
-                    NodeGraph node = mutationGraph.getNode();
-                    MutationsFrame mutationsFrame = new MutationsFrame(igTreePanel,
-                            mutationGraph.getMutationsWithParent(), allMutations, mutationGraph.getNode(), rootNode,
-                            setImgtInfo, isDNA, getSetCurrentDir);
-                    return;
-                }
+            MutationsGraph mutationGraph = getMutationsGraphAt(point2d);
+            if (mutationGraph != null) {
+                MutationsFrame mutationsFrame = new MutationsFrame(igTreePanel,
+                        mutationGraph.getMutationsWithParent(), allMutations, mutationGraph.getNode(), rootNode,
+                        setImgtInfo, isDNA, getSetCurrentDir);
+                return;
             }
 
             // Last we check that the user click on the "get p-values for all
@@ -1421,4 +1683,45 @@ public class IgTreePanel extends JPanel {
             }
         }
     }
+
+    /*
+     * Benchmark of the repaint of the trees given as XML files (AncesTree format) in a viewport of 1000x1000 pixels:
+     * the first paint computes the layout, the next ones only draw the tree. The repaint time when the layout is
+     * computed at each repaint (as before) is given for comparison
+     */
+    public static void main(String[] args) throws Exception {
+        int repaintsNumber = 200;
+        for (String xmlFilePath : args) {
+            IgTreePanel panel = new IgTreePanel(new IgTreeReader(xmlFilePath, false), null);
+            BufferedImage image = new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_RGB);
+            panel.setSize(1000, 1000);
+            long start = System.nanoTime();
+            panel.paintComponent(getViewportGraphics(image));
+            long firstPaintTime = System.nanoTime() - start;
+            panel.setSize(panel.getPreferredSize());
+            for (int round = 0; round < 3; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < repaintsNumber; i++) {
+                    panel.paintComponent(getViewportGraphics(image));
+                }
+                long cachedTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < repaintsNumber; i++) {
+                    panel.invalidateLayout();
+                    panel.paintComponent(getViewportGraphics(image));
+                }
+                long layoutTime = System.nanoTime() - start;
+                System.out.println(new File(xmlFilePath).getName() + " (" + panel.getAllNodeGraphs().size()
+                        + " nodes): first paint " + firstPaintTime / 1000 + " us, repaint "
+                        + cachedTime / repaintsNumber / 1000 + " us, repaint with layout "
+                        + layoutTime / repaintsNumber / 1000 + " us");
+            }
+        }
+    }
+
+    private static Graphics2D getViewportGraphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.clipRect(0, 0, image.getWidth(), image.getHeight());
+        return g;
+    }
 }
@@ -16,7 +16,6 @@
 package ch.irb.IgGenealogicTreeViewer;
 
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Scanner;
@@ -24,14 +23,12 @@ import java.util.TreeMap;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 
 import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.InputParser;
 import org.apache.log4j.Logger;
 
-import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.InputParser;
+import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.TreeSnapshot;
 import ch.irb.nodes.Node;
 import ch.irb.nodes.NodeGraph;
 
@@ -73,12 +70,9 @@ public class IgTreeReader {
 
     public void readAndProcessTreeDnaml() throws Exception {
         //Before 2016: IgTreeMaker.class before april 2020 DnamlOutputParser.class
-        JAXBContext context = JAXBContext.newInstance(InputParser.class);
-        Unmarshaller um = context.createUnmarshaller();
         // logger.debug("XML file path is: " + xmlFilePath);
-        FileReader fileReader = new FileReader(xmlFilePath);
-        //Before 2016: IgTreeMaker, before april 2020 DnamlOutputParser
-        InputParser dnamlParser = (InputParser) um.unmarshal(fileReader);
+        // read from the binary snapshot of the XML file when it is up to date
+        InputParser dnamlParser = TreeSnapshot.readTree(xmlFilePath);
         this.projectName = dnamlParser.getProjectName();
         this.rootNode = dnamlParser.getRootNode();
         this.previousBPNames = dnamlParser.getPreviousBPNames();
@@ -94,11 +88,8 @@ public class IgTreeReader {
      * Not used anymore (from 2016), but to keep in case
      */
     public void readAndProcessTreeAncesTree() throws Exception {
-        JAXBContext context = JAXBContext.newInstance(InputParser.class);
-        Unmarshaller um = context.createUnmarshaller();
         // logger.debug("XML file path is: " + xmlFilePath);
-        FileReader fileReader = new FileReader(xmlFilePath);
-        InputParser igTreeMaker = (InputParser) um.unmarshal(fileReader);
+        InputParser igTreeMaker = TreeSnapshot.readTree(xmlFilePath);
         this.projectName = igTreeMaker.getProjectName();
         this.rootNode = igTreeMaker.getRootNode();
         this.previousBPNames = igTreeMaker.getPreviousBPNames();
@@ -150,7 +141,7 @@ public class IgTreeReader {
         // logger.debug("........setProteinSequence for " + node.getNodeId());
         nodeGraph.setProteinSequence();
         nodeGraph.setNumberOfNucMutationsWithParent(node.getNumberOfNucMutationsWithParent());
-        nodeGraph.setMutationsWithParent(node.getMutationsWithParent());
+        nodeGraph.setMutations(node.getMutations());
         nodeGraph.setNumberOfAAMutationsWithParent(node.getNumberOfAAMutationsWithParent());
         nodeGraph.setLevel(node.getLevel());
         if (node.getInsertionNumber() > 0) {
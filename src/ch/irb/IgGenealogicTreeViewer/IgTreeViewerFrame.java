@@ -32,10 +32,6 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Writer;
 import java.util.ArrayList;
 
 import javax.swing.AbstractButton;
@@ -48,22 +44,21 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.SpringLayout;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 
 import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.IgphymlTreeChooserFrame;
 import org.apache.log4j.Logger;
 
 import ch.irb.IgAlignment.IgAlignmentFrame;
 import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.InputParser;
+import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.TreeSnapshot;
 import ch.irb.IgGenealogicTreeViewer.AncesTreeConverter.DnamlTreeChooserFrame;
 import ch.irb.ManageFastaFiles.FastaFormatException;
 import ch.irb.currentDirectory.GetSetCurrentDirectory;
 import ch.irb.nodes.Node;
 import ch.irb.nodes.NodeGraph;
 import ch.irb.saveImages.ExportAsEPSListener;
+import ch.irb.saveImages.ExportAsVectorListener;
 import ch.irb.saveImages.SaveImageAsPngListener;
 
 /**
@@ -95,12 +90,16 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
     private JMenuItem saveItemWithLegend = new JMenuItem("Export image (with legend) as .PNG");
     private JMenuItem saveItemEPS = new JMenuItem("Export image as .EPS");
     private JMenuItem saveLegendEPS = new JMenuItem("Export legend as .EPS");
+    private JMenuItem saveItemSVG = new JMenuItem("Export image as .SVG");
+    private JMenuItem saveItemPDF = new JMenuItem("Export image as .PDF");
     private SaveTreeListener saveTreeListener;
     private AlignmentListener alignmentListener;
     private SaveImageAsPngListener saveItemListenerPanel;
     private SaveImageAsPngListener saveItemListenerWithLegend;
     private ExportAsEPSListener exportAsEPSListenerPanel;
     private ExportAsEPSListener exportAsEPSListenerLegend;
+    private ExportAsVectorListener exportAsSVGListener;
+    private ExportAsVectorListener exportAsPDFListener;
     private SpringLayout layout;
     private Container contentPane;
     private boolean isDnamlTree = true; // TODO to keep in case we use IgTreeMaker class (not used since 2016)
@@ -164,6 +163,10 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
         exportMenu.add(saveItemEPS);
         saveLegendEPS.setEnabled(false);
         exportMenu.add(saveLegendEPS);
+        saveItemSVG.setEnabled(false);
+        exportMenu.add(saveItemSVG);
+        saveItemPDF.setEnabled(false);
+        exportMenu.add(saveItemPDF);
 
         // adding action listener to menu items
         openItem.addActionListener(new LoadTreeListener());
@@ -200,12 +203,16 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
             saveItemListenerWithLegend = new SaveImageAsPngListener(getContentPane(), getSetCurrentDir);
             exportAsEPSListenerPanel = new ExportAsEPSListener(igTreePanel, getSetCurrentDir);
             exportAsEPSListenerLegend = new ExportAsEPSListener(legendPanel, getSetCurrentDir);
+            exportAsSVGListener = new ExportAsVectorListener(igTreePanel, getSetCurrentDir, ExportAsVectorListener.SVG);
+            exportAsPDFListener = new ExportAsVectorListener(igTreePanel, getSetCurrentDir, ExportAsVectorListener.PDF);
             saveTreeItem.addActionListener(saveTreeListener);
             alignmentItem.addActionListener(alignmentListener);
             saveItem.addActionListener(saveItemListenerPanel);
             saveItemWithLegend.addActionListener(saveItemListenerWithLegend);
             saveItemEPS.addActionListener(exportAsEPSListenerPanel);
             saveLegendEPS.addActionListener(exportAsEPSListenerLegend);
+            saveItemSVG.addActionListener(exportAsSVGListener);
+            saveItemPDF.addActionListener(exportAsPDFListener);
             jScrollPane = new JScrollPane();
             jScrollPane.getViewport().setView(igTreePanel);
             jScrollPane.addMouseWheelListener(new MyMouseWheelListerner());
@@ -226,6 +233,8 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
             saveItemWithLegend.setEnabled(true);
             saveItemEPS.setEnabled(true);
             saveLegendEPS.setEnabled(true);
+            saveItemSVG.setEnabled(true);
+            saveItemPDF.setEnabled(true);
             if (igTreePanel.isImgtFormatLoaded()) {
                 alignmentItem.setEnabled(true);
                 loadCLIPData.setEnabled(true);
@@ -276,18 +285,29 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
     }
 
     public void updateIgTreeViewerFrame(String newXMLFile) {
-        xmlFilePath = newXMLFile;
+        IgTreeReader newIgTreeReader = null;
         try {
-            igTreeReader = new IgTreeReader(newXMLFile, isDnamlTree);
+            newIgTreeReader = new IgTreeReader(newXMLFile, isDnamlTree);
         } catch (FileNotFoundException e1) {
             e1.printStackTrace();
+            return;
         } catch (JAXBException e) {
             e.printStackTrace();
+            return;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(new JFrame(), e.getMessage(),
                     "Tree too big", JOptionPane.ERROR_MESSAGE);
             return;
         }
+        updateIgTreeViewerFrame(newXMLFile, newIgTreeReader);
+    }
+
+    /*
+     * Display a tree which was already read from its XML file (i.e. in a background thread, see ConversionWorker)
+     */
+    public void updateIgTreeViewerFrame(String newXMLFile, IgTreeReader newIgTreeReader) {
+        xmlFilePath = newXMLFile;
+        igTreeReader = newIgTreeReader;
         if (jScrollPane != null) {
             jScrollPane.remove(igTreePanel);
             getContentPane().remove(jScrollPane);
@@ -330,24 +350,32 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
             saveItemWithLegend.removeActionListener(saveItemListenerWithLegend);
             saveItemEPS.removeActionListener(exportAsEPSListenerPanel);
             saveLegendEPS.removeActionListener(exportAsEPSListenerLegend);
+            saveItemSVG.removeActionListener(exportAsSVGListener);
+            saveItemPDF.removeActionListener(exportAsPDFListener);
         }
         saveTreeItem.setEnabled(true);
         saveItem.setEnabled(true);
         saveItemEPS.setEnabled(true);
         saveItemWithLegend.setEnabled(true);
         saveLegendEPS.setEnabled(true);
+        saveItemSVG.setEnabled(true);
+        saveItemPDF.setEnabled(true);
         saveTreeListener = new SaveTreeListener();
         alignmentListener = new AlignmentListener();
         saveItemListenerPanel = new SaveImageAsPngListener(igTreePanel, getSetCurrentDir);
         saveItemListenerWithLegend = new SaveImageAsPngListener(getContentPane(), getSetCurrentDir);
         exportAsEPSListenerPanel = new ExportAsEPSListener(igTreePanel, getSetCurrentDir);
         exportAsEPSListenerLegend = new ExportAsEPSListener(legendPanel, getSetCurrentDir);
+        exportAsSVGListener = new ExportAsVectorListener(igTreePanel, getSetCurrentDir, ExportAsVectorListener.SVG);
+        exportAsPDFListener = new ExportAsVectorListener(igTreePanel, getSetCurrentDir, ExportAsVectorListener.PDF);
         saveTreeItem.addActionListener(saveTreeListener);
         alignmentItem.addActionListener(alignmentListener);
         saveItem.addActionListener(saveItemListenerPanel);
         saveItemWithLegend.addActionListener(saveItemListenerWithLegend);
         saveItemEPS.addActionListener(exportAsEPSListenerPanel);
         saveLegendEPS.addActionListener(exportAsEPSListenerLegend);
+        saveItemSVG.addActionListener(exportAsSVGListener);
+        saveItemPDF.addActionListener(exportAsPDFListener);
         if (igTreePanel.isImgtFormatLoaded()) {
             alignmentItem.setEnabled(true);
             loadCLIPData.setEnabled(true);
@@ -398,11 +426,7 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
 
     private void saveTree() {
         try {
-            String tmpFilePath = xmlFilePath + "_TMP.xml";
-            JAXBContext context = JAXBContext.newInstance(InputParser.class);
-            Unmarshaller um = context.createUnmarshaller();
-            FileReader fileReader = new FileReader(xmlFilePath);
-            InputParser igTreeMaker = (InputParser) um.unmarshal(fileReader);
+            InputParser igTreeMaker = TreeSnapshot.readTree(xmlFilePath);
             // Modify the Node into IgTreeMaker, if the user add the EC 50
             ArrayList<NodeGraph> nodeGraphs = igTreePanel.getAllNodeGraphs();
             Node rootNode = igTreeMaker.getRootNode();
@@ -419,24 +443,10 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
                 dataType = "comment2";
                 processNodeToAddInfo(rootNode, nodeGraph, infoFromNode, dataType);
             }
-            Marshaller m = context.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-
-            Writer w = null;
-            w = new FileWriter(tmpFilePath);
-            m.marshal(igTreeMaker, w);
-            fileReader.close();
-            w.close();
+            // the XML file is written in a tmp file which replaces the old file once it is complete, then the snapshot
+            TreeSnapshot.writeTree(igTreeMaker, xmlFilePath);
 
-            // Once everything is complete, delete old file..
-            File oldFile = new File(xmlFilePath);
-            oldFile.delete();
-
-            // And rename tmp file's name to old file name
-            File newFile = new File(tmpFilePath);
-            newFile.renameTo(oldFile);
-
-        } catch (JAXBException | IOException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
         // we dont want the user to be prompt again if he close the window and
@@ -617,6 +627,13 @@ public class IgTreeViewerFrame extends JFrame implements WindowListener {
     public void windowOpened(WindowEvent arg0) {
     }
 
+    /**
+     * @return the isDnamlTree
+     */
+    public boolean isDnamlTree() {
+        return isDnamlTree;
+    }
+
     private class MyMouseWheelListerner implements MouseWheelListener {
 
         public void mouseWheelMoved(final MouseWheelEvent e) {
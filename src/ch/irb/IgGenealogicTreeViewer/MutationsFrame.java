@@ -54,10 +54,13 @@ import org.apache.log4j.Logger;
 import ch.irb.Layout.SpringUtilities;
 import ch.irb.currentDirectory.GetSetCurrentDirectory;
 import ch.irb.kabat.ProcessKabatNumbering;
+import ch.irb.nodes.MutationList;
 import ch.irb.nodes.NodeGraph;
 import ch.irb.saveImages.ExportAsEPSListener;
 import ch.irb.saveImages.SaveImageAsPngListener;
 import ch.irb.translation.Codon;
+import ch.irb.translation.MutationClassifier;
+import ch.irb.translation.MutationClassifier.Classification;
 import ch.irb.translation.Translator;
 
 /**
@@ -88,8 +91,8 @@ public class MutationsFrame extends JFrame implements ActionListener {
     private CdrFrImagePanel cdrFrImagePanel;
     private IgTreePanel igTreePanel;
     private TreeMap<String, MutationsGraph> allMutationsGraph = new TreeMap<String, MutationsGraph>();
-    private String mutationsWithParent;
-    private String dnaMutationsWithParent;
+    private MutationList mutationsWithParent;
+    private MutationList dnaMutationsWithParent;
     private String rootNodeSequence;
     private String rootNodeProtSequence;
     private boolean isDNA = true;
@@ -100,7 +103,8 @@ public class MutationsFrame extends JFrame implements ActionListener {
     // his sequences
     private TreeMap<Integer, String> positionNucToCdrFrRegions = new TreeMap<Integer, String>();
     private TreeMap<Integer, String> positionAAToCdrFrRegions = new TreeMap<Integer, String>();
-    private TreeMap<String, ArrayList<String>> regionToMutations = new TreeMap<String, ArrayList<String>>();
+    // the indexes of the mutations (in mutationsWithParent) for each region
+    private TreeMap<String, ArrayList<Integer>> regionToMutations = new TreeMap<String, ArrayList<Integer>>();
     private TreeMap<String, String> rToS_Ratio = new TreeMap<String, String>();
     private TreeMap<String, Integer> mutationsNumber_per_region = new TreeMap<String, Integer>();
     private String[] regions = {"FR1", "CDR1", "FR2", "CDR2", "FR3", "CDR3", "FR4"};
@@ -125,9 +129,10 @@ public class MutationsFrame extends JFrame implements ActionListener {
     private GetSetCurrentDirectory getSetCurrentDir;
     private ExportAsEPSListener exportAsEPSListener;
     private SaveImageAsPngListener saveImageAsPngListener;
+    private Classification mutationClassification = null;
 
 
-    public MutationsFrame(final IgTreePanel igTreePanel, String mutationsWithParent,
+    public MutationsFrame(final IgTreePanel igTreePanel, MutationList mutationsWithParent,
                           final TreeMap<String, MutationsGraph> allMutationsGraph, NodeGraph node, NodeGraph rootNode,
                           SetImgtInfo setImgtInfo, boolean isDNA, GetSetCurrentDirectory getSetCurrentDir) {
         this.getSetCurrentDir = getSetCurrentDir;
@@ -291,32 +296,31 @@ public class MutationsFrame extends JFrame implements ActionListener {
                     break;
             }
             c.insets = new Insets(3, leftInset, 3, rightInset);
-            ArrayList<String> mutations = regionToMutations.get(region);
+            ArrayList<Integer> mutations = regionToMutations.get(region);
             if (mutations == null) {
                 JPanel littlePanel = new JPanel();
                 littlePanel.setPreferredSize(new Dimension(90, 30));
                 littlePanel.setBackground(greyColor);
                 jPanel.add(littlePanel, c); // new JLabel(" ")
             } else {
-                for (String mutation : mutations) {
-                    String[] muta = mutation.split(":");
-                    String position = muta[0];
-                    String mutatio = muta[1];
-                    int newPosition = Integer.parseInt(position) + 1;
-                    String mutationInTheProg = position.toString() + ":" + mutatio;
-                    JButton jButton = new JButton(new HighLightAction(position, mutationInTheProg));
+                for (Integer index : mutations) {
+                    int position = mutationsWithParent.getPosition(index);
+                    String mutatio = mutationsWithParent.getMutation(index);
+                    int newPosition = position + 1;
+                    JButton jButton = new JButton(new HighLightAction(position, mutationsWithParent.getFrom(index),
+                            mutationsWithParent.getTo(index)));
                     jButton.setPreferredSize(new Dimension(90, 30)); // 90 25
                     jButton.setFont(new Font("Arial", Font.PLAIN, 15));
                     // check if this mutation is shared elsewhere, if yes the
                     // button will have some yellow background
                     for (Entry<String, MutationsGraph> entry : allMutationsGraph.entrySet()) {
                         MutationsGraph mutationsGraph = entry.getValue();
-                        String allMutations = mutationsGraph.getMutationsWithParent();
+                        MutationList allMutations = mutationsGraph.getMutationsWithParent();
                         if (!isDNA) {
                             allMutations = mutationsGraph.getAaMutationsWithParent();
                         }
                         if (allMutations != null && !nodeId.equals(entry.getKey())) {
-                            if (allMutations.matches(".*," + position + ":.*")) {
+                            if (allMutations.hasMutationAt(position)) {
                                 jButton.setBackground(buttonColor);
                                 if (OS.matches(".*mac.*"))// in order the color
                                 // of the button
@@ -332,22 +336,7 @@ public class MutationsFrame extends JFrame implements ActionListener {
                     } else {
                         // The border of the button will be in green if it's a
                         // silent mutation and in red if it's not
-                        int pos = Integer.parseInt(position);
-                        String codon;
-                        String codonParent;
-                        String parentSequence = node.getParent().getSequence();
-                        if (!isDNA) {
-                            codon = String.valueOf(nodeSequence.charAt(pos));
-                            codonParent = String.valueOf(rootNodeProtSequence.charAt(pos));
-                        } else {
-                            codon = new Codon(nodeSequence, pos).getCodon();
-                            codonParent = new Codon(parentSequence, pos).getCodon();
-                        }
-                        Translator translator = new Translator(codon, isDNA);
-                        String aa = translator.getProteinSequence();
-                        translator = new Translator(codonParent, isDNA);
-                        String parentAA = translator.getProteinSequence();
-                        if (aa.equals(parentAA)) {
+                        if (!MutationClassifier.isReplacement(getMutationClassification().getMutationClass(position))) {
                             jButton.setBorder(greenBorder);
                         } else {
                             jButton.setBorder(redBorder);
@@ -356,8 +345,8 @@ public class MutationsFrame extends JFrame implements ActionListener {
                     String positionToWrite = String.valueOf(newPosition);
                     // in the case we have the kabat Numbering we display it
                     //chnaged the 22.10.19 because the Kabat website does not work anamyore
-                    if (!isDNA && fromPositionToKabatnumbering.containsKey(Integer.valueOf(position))) {
-                        positionToWrite = fromPositionToKabatnumbering.get(Integer.valueOf(position));
+                    if (!isDNA && fromPositionToKabatnumbering.containsKey(position)) {
+                        positionToWrite = fromPositionToKabatnumbering.get(position);
                     }
                     String text = positionToWrite + ": " + mutatio;
                     jButton.setText(text);
@@ -374,35 +363,25 @@ public class MutationsFrame extends JFrame implements ActionListener {
      * The use wants to see the AA mutations, we have to change the DNA
      * mutations with the AA mutations
      */
-    private String processAAMutationsWithParent() {
-        String nodeProtSeq = node.getProteinSequence();
-        String parentProtSeq = node.getParent().getProteinSequence();
-        String aaMutations = ",";
-        for (int i = 0; i < nodeProtSeq.length(); i++) {
-            String nodeAA = String.valueOf(nodeProtSeq.charAt(i));
-            String parentAA = String.valueOf(parentProtSeq.charAt(i));
-            if (!parentAA.equals(nodeAA)) {
-                aaMutations += i + ":" + parentAA + "->" + nodeAA + ",";
-            }
-        }
-        return aaMutations;
+    private MutationList processAAMutationsWithParent() {
+        return MutationList.compare(node.getParent().getProteinSequence(), node.getProteinSequence());
     }
 
     private void assignMutationToARegion() {
-        String[] mut = mutationsWithParent.split(",");
-        for (int i = 1; i < mut.length; i++) {
-            String[] muta = mut[i].split(":");
-            String position = muta[0];
-            int pos = Integer.parseInt(position);
+        if (mutationsWithParent == null) {
+            return;
+        }
+        for (int i = 0; i < mutationsWithParent.size(); i++) {
+            int pos = mutationsWithParent.getPosition(i);
             String region = positionNucToCdrFrRegions.get(pos);
             if (!isDNA) {
                 region = positionAAToCdrFrRegions.get(pos);
             }
-            ArrayList<String> mutations = new ArrayList<String>();
+            ArrayList<Integer> mutations = new ArrayList<Integer>();
             if (regionToMutations.containsKey(region)) {
                 mutations = regionToMutations.get(region);
             }
-            mutations.add(mut[i]);
+            mutations.add(i);
 
             int buttonsNumber = mutations.size();
             if (buttonsNumber > maxNumberOfButtons) {
@@ -412,30 +391,25 @@ public class MutationsFrame extends JFrame implements ActionListener {
         }
     }
 
+    /*
+     * The R/S class of each nucleotide of the node compared to its parent and the R/S numbers of each region,
+     * computed once
+     */
+    private Classification getMutationClassification() {
+        if (mutationClassification == null) {
+            mutationClassification = MutationClassifier.classify(node.getParent().getPackedSequence(),
+                    node.getPackedSequence(), positionNucToCdrFrRegions);
+        }
+        return mutationClassification;
+    }
+
     private void calculateRToSRatio() {
-        String parentSequence = node.getParent().getSequence();
         for (String region : regionToMutations.keySet()) {
-            ArrayList<String> mutations = regionToMutations.get(region);
+            ArrayList<Integer> mutations = regionToMutations.get(region);
             mutationsNumber_per_region.put(region, mutations.size());
-            int R = 0;
-            int S = 0;
-            for (String mutation : mutations) {
-                String[] muta = mutation.split(":");
-                String position = muta[0];
-                int pos;
-                pos = Integer.valueOf(position);
-                String codon = new Codon(nodeSequence, pos).getCodon();
-                String codonParent = new Codon(parentSequence, pos).getCodon();
-                Translator translator = new Translator(codon, true);
-                String aa = translator.getProteinSequence();
-                translator = new Translator(codonParent, true);
-                String parentAA = translator.getProteinSequence();
-                if (aa.equals(parentAA)) { // this is a silent mutation
-                    S++;
-                } else {
-                    R++;
-                }
-            }
+            int[] counts = getMutationClassification().getReplacementsAndSilents(region);
+            int R = counts[0];
+            int S = counts[1];
             String rToS = R + "/" + S;
             rToS_Ratio.put(region, rToS);
         }
@@ -447,30 +421,23 @@ public class MutationsFrame extends JFrame implements ActionListener {
      */
     private void initComponents() {
 
-        String[] mut = mutationsWithParent.split(",");
-        for (int i = 1; i < mut.length; i++) {
-            String[] muta = mut[i].split(":");
-            String position = muta[0];
-            String mutation = muta[1];
-            String[] nucleotides = mutation.split("->");
-            String nuc1 = nucleotides[0];
-            String nuc2 = nucleotides[1];
-            int index;
-            index = Integer.valueOf(position);
-            String rootNuc = "";
+        for (int i = 0; mutationsWithParent != null && i < mutationsWithParent.size(); i++) {
+            int index = mutationsWithParent.getPosition(i);
+            String mutation = mutationsWithParent.getMutation(i);
+            char rootNuc;
             if (isDNA) {
-                rootNuc = rootNodeSequence.substring(index, index + 1);
+                rootNuc = rootNodeSequence.charAt(index);
             } else
             // we have a prot seq
             {
-                rootNuc = rootNodeProtSequence.substring(index, index + 1);
+                rootNuc = rootNodeProtSequence.charAt(index);
             }
-            if (nuc2.equals(rootNuc)) { // it is a reverse!
-                revMutations.put(Integer.valueOf(position), mutation);
-            } else if (!nuc1.equals(rootNuc)) { // it is a double mutation!
-                doubleMutations.put(Integer.valueOf(position), mutation);
+            if (mutationsWithParent.getTo(i) == rootNuc) { // it is a reverse!
+                revMutations.put(index, mutation);
+            } else if (mutationsWithParent.getFrom(i) != rootNuc) { // it is a double mutation!
+                doubleMutations.put(index, mutation);
             } else { // it is a single mutation
-                mutations.put(Integer.valueOf(position), mutation);
+                mutations.put(index, mutation);
             }
         }
         int jPanelRows = 0;
@@ -513,20 +480,21 @@ public class MutationsFrame extends JFrame implements ActionListener {
         for (Integer position : positions) {
             // we add +1 to the position!!
             Integer newPosition = position + 1;
-            String mutationInTheProg = position.toString() + ":" + specialMutations.get(position);
-            JButton jButton = new JButton(new HighLightAction(position.toString(), mutationInTheProg));
+            int index = mutationsWithParent.indexOf(position);
+            JButton jButton = new JButton(new HighLightAction(position, mutationsWithParent.getFrom(index),
+                    mutationsWithParent.getTo(index)));
             jButton.setPreferredSize(new Dimension(90, 30));
             jButton.setFont(new Font("Arial", Font.PLAIN, 15));
             // check if this mutation is shared elsewhere, if yes the button
             // will have some yellow background
             for (Entry<String, MutationsGraph> entry : allMutationsGraph.entrySet()) {
                 MutationsGraph mutationsGraph = entry.getValue();
-                String mutations = mutationsGraph.getMutationsWithParent();
+                MutationList mutations = mutationsGraph.getMutationsWithParent();
                 if (!isDNA) {
                     mutations = mutationsGraph.getAaMutationsWithParent();
                 }
                 if (mutations != null && !nodeId.equals(entry.getKey())) {
-                    if (mutations.matches(".*," + position.toString() + ":.*")) {
+                    if (mutations.hasMutationAt(position)) {
                         jButton.setBackground(buttonColor);
                         if (OS.matches(".*mac.*"))// in order the color of the
                         // button appears on MAC
@@ -544,14 +512,7 @@ public class MutationsFrame extends JFrame implements ActionListener {
                 // mutation and in red if it's not
 
                 int pos = position.intValue();
-                String parentSequence = node.getParent().getSequence();
-                String codon = new Codon(nodeSequence, pos).getCodon();
-                String codonParent = new Codon(parentSequence, pos).getCodon();
-                Translator translator = new Translator(codon, isDNA);
-                String aa = translator.getProteinSequence();
-                translator = new Translator(codonParent, isDNA);
-                String parentAA = translator.getProteinSequence();
-                if (aa.equals(parentAA)) {
+                if (!MutationClassifier.isReplacement(getMutationClassification().getMutationClass(pos))) {
                     jButton.setBorder(greenBorder);
                 } else {
                     jButton.setBorder(redBorder);
@@ -592,14 +553,14 @@ public class MutationsFrame extends JFrame implements ActionListener {
     /**
      * @return the mutationsWithParent
      */
-    public String getMutationsWithParent() {
+    public MutationList getMutationsWithParent() {
         return mutationsWithParent;
     }
 
     /**
      * @param mutationsWithParent the mutationsWithParent to set
      */
-    public void setMutationsWithParent(String mutationsWithParent) {
+    public void setMutationsWithParent(MutationList mutationsWithParent) {
         this.mutationsWithParent = mutationsWithParent;
     }
 
@@ -610,23 +571,23 @@ public class MutationsFrame extends JFrame implements ActionListener {
      * @author Mathilde
      */
     class HighLightAction extends AbstractAction {
-        String position;
-        String mutation;
+        int position;
+        char from;
+        char to;
         String aminoAcid;
-        Translator translator;
         TreeMap<String, Integer> aaToBoxes = new TreeMap<>();
         int boxesCounter = 1;
 
-        public HighLightAction(String position, String mutation) {
-            super(mutation);
+        public HighLightAction(int position, char from, char to) {
+            super(position + ":" + from + "->" + to);
             this.position = position;
-            this.mutation = mutation;
+            this.from = from;
+            this.to = to;
             if (isDNA) {
-                String codon = new Codon(nodeSequence, Integer.valueOf(position)).getCodon();
-                translator = new Translator(codon, isDNA);
-                aminoAcid = translator.getProteinSequence();
+                String codon = new Codon(nodeSequence, position).getCodon();
+                aminoAcid = Translator.translate(codon, isDNA);
             } else {
-                aminoAcid = mutation.split("->")[1];
+                aminoAcid = String.valueOf(to);
             }
             aaToBoxes.put(aminoAcid, 1);
         }
@@ -645,21 +606,21 @@ public class MutationsFrame extends JFrame implements ActionListener {
             // here check the other mutationsGraph to highlight them!!
             for (Entry<String, MutationsGraph> entry : allMutationsGraph.entrySet()) {
                 MutationsGraph mutationsGraph = entry.getValue();
-                String mutations = mutationsGraph.getMutationsWithParent();
+                MutationList mutations = mutationsGraph.getMutationsWithParent();
                 if (!isDNA) {
                     mutations = mutationsGraph.getAaMutationsWithParent();
                 }
-                if (mutations != null) {
+                if (mutations != null || !isDNA) { // a node without AA mutation has to be reset too
                     // First, we put in yellow the nucleotidic mutation that are
                     // the same
                     // then in pink if they occur at the same position but are
                     // different
                     boolean hasMutation = false;
-                    if (mutations.matches(".*," + mutation + ",.*")) {
+                    if (mutations != null && mutations.contains(position, from, to)) {
                         mutationsGraph.setYellow(true);
                         mutationsGraph.setPink(false);
                         hasMutation = true;
-                    } else if (mutations.matches(".*," + position + ":.*")) {
+                    } else if (mutations != null && mutations.hasMutationAt(position)) {
                         mutationsGraph.setPink(true);
                         mutationsGraph.setYellow(false);
                         hasMutation = true;
@@ -671,22 +632,18 @@ public class MutationsFrame extends JFrame implements ActionListener {
                         String parentAA;
                         if (isDNA) {
                             String parentSequence = mutationsGraph.getNode().getParent().getSequence();
-                            String codon = new Codon(mutationsGraph.getNodeSequence(), Integer.valueOf(position))
-                                    .getCodon();
-                            String codonParent = new Codon(parentSequence, Integer.valueOf(position)).getCodon();
-                            translator = new Translator(codon, isDNA);
-                            aa = translator.getProteinSequence();
-                            translator = new Translator(codonParent, isDNA);
-                            parentAA = translator.getProteinSequence();
+                            String codon = new Codon(mutationsGraph.getNodeSequence(), position).getCodon();
+                            String codonParent = new Codon(parentSequence, position).getCodon();
+                            aa = Translator.translate(codon, isDNA);
+                            parentAA = Translator.translate(codonParent, isDNA);
                         } else {
-                            aa = String.valueOf(
-                                    mutationsGraph.getNodeProtSequence().charAt(Integer.valueOf(position)));
+                            aa = String.valueOf(mutationsGraph.getNodeProtSequence().charAt(position));
                             parentAA = String.valueOf(mutationsGraph.getNode().getParent().getProteinSequence()
-                                    .charAt(Integer.valueOf(position)));
+                                    .charAt(position));
                         }
-                        int aaPosition = Integer.parseInt(position);
+                        int aaPosition = position;
                         if (isDNA) {
-                            aaPosition = Integer.parseInt(position) / 3;
+                            aaPosition = position / 3;
                         }
                         aaPosition += 1; // we add +1 for the user
                         String positionToWrite = String.valueOf(aaPosition);
@@ -787,7 +744,7 @@ public class MutationsFrame extends JFrame implements ActionListener {
             setMutationsWithParent(dnaMutationsWithParent);
         } else if (command.equals(aaString)) {
             isDNA = false;
-            String aaMutations = processAAMutationsWithParent();
+            MutationList aaMutations = processAAMutationsWithParent();
             setMutationsWithParent(aaMutations);
         }
         // we remove the previous display
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
 
+import ch.irb.nodes.MutationList;
 import ch.irb.nodes.NodeGraph;
 
 /**
@@ -43,8 +44,8 @@ public class MutationsGraph {
     private boolean isPink = false; // if for one position the nucleotidic mutation is different
     private int boxed = 0; // the number of boxes will be similar to the mutations where there is the same AA change
     private String mutationsNumber;
-    private String mutationsWithParent;
-    private String aaMutationsWithParent;
+    private MutationList mutationsWithParent;
+    private MutationList aaMutationsWithParent;
     private String nodeId;
     private String nodeSequence;
     private String nodeProtSequence;
@@ -52,7 +53,7 @@ public class MutationsGraph {
     private NodeGraph node;
     private Graphics2D g2d = null;
 
-    public MutationsGraph(String mutationsNumber, String mutationsWithParent, float xcoord, float ycoord, float width,
+    public MutationsGraph(String mutationsNumber, MutationList mutationsWithParent, float xcoord, float ycoord, float width,
                           float height, NodeGraph node, Graphics2D g2d) {
         this.mutationsNumber = mutationsNumber;
         this.mutationsWithParent = mutationsWithParent;
@@ -115,30 +116,21 @@ public class MutationsGraph {
     /**
      * @return the mutationsWithParent
      */
-    public String getMutationsWithParent() {
+    public MutationList getMutationsWithParent() {
         return mutationsWithParent;
     }
 
     /**
      * @return the aaMutationsWithParent
      */
-    public String getAaMutationsWithParent() {
+    public MutationList getAaMutationsWithParent() {
         return aaMutationsWithParent;
     }
 
 
     public void setAaMutationsWithParent() {
-        String nodeProtSeq = node.getProteinSequence();
-        String parentProtSeq = node.getParent().getProteinSequence();
-        String aaMutations = ",";
-        for (int i = 0; i < nodeProtSeq.length(); i++) {
-            String nodeAA = String.valueOf(nodeProtSeq.charAt(i));
-            String parentAA = String.valueOf(parentProtSeq.charAt(i));
-            if (!parentAA.equals(nodeAA)) {
-                aaMutations += i + ":" + parentAA + "->" + nodeAA + ",";
-            }
-        }
-        this.aaMutationsWithParent = aaMutations;
+        this.aaMutationsWithParent = MutationList.compare(node.getParent().getProteinSequence(),
+                node.getProteinSequence());
     }
 
     /**
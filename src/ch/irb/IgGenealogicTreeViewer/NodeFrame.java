@@ -369,6 +369,7 @@ public class NodeFrame extends JFrame {
             // we store the value in the nodeGraph object
             // then we update the display of the tree
             igTreePanel.setNewDataSaved(true);
+            igTreePanel.invalidateLayout(); // the height of the node can change
             igTreePanel.repaint();
             frame.dispose();
         }
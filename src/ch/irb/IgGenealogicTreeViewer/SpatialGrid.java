@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package ch.irb.IgGenealogicTreeViewer;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * @author Mathilde This class is a uniform grid over the rectangles drawn in the tree (nodes, mutation numbers), in the
+ *         coordinates of the tree (i.e. without the zoom). Each cell of the grid stores the indexes of the rectangles
+ *         which intersect it, so we find the element under the mouse by looking only at one cell, and the elements
+ *         to draw in the visible part of the tree by looking only at the cells there. Only the cells which are not
+ *         empty are stored, the trees are much wider than high.
+ */
+public class SpatialGrid<T> {
+
+    private final float cellSize;
+    private ArrayList<T> items = new ArrayList<T>();
+    private ArrayList<Rectangle2D> rectangles = new ArrayList<Rectangle2D>();
+    private HashMap<Long, ArrayList<Integer>> cells = new HashMap<Long, ArrayList<Integer>>();
+
+    public SpatialGrid(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /*
+     * The items are returned in the order they were added
+     */
+    public void add(T item, Rectangle2D rectangle) {
+        if (rectangle == null || rectangle.isEmpty()) {
+            return;
+        }
+        int index = items.size();
+        items.add(item);
+        rectangles.add(rectangle);
+        int lastColumn = getCell(rectangle.getMaxX());
+        int lastRow = getCell(rectangle.getMaxY());
+        for (int column = getCell(rectangle.getMinX()); column <= lastColumn; column++) {
+            for (int row = getCell(rectangle.getMinY()); row <= lastRow; row++) {
+                Long key = getKey(column, row);
+                ArrayList<Integer> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Integer>(2);
+                    cells.put(key, cell);
+                }
+                cell.add(index);
+            }
+        }
+    }
+
+    /*
+     * The first item (in the order they were added) whose rectangle contains this point, or null
+     */
+    public T getFirstAt(Point2D point) {
+        ArrayList<Integer> cell = cells.get(getKey(getCell(point.getX()), getCell(point.getY())));
+        if (cell == null) {
+            return null;
+        }
+        for (Integer index : cell) {
+            if (rectangles.get(index).contains(point)) {
+                return items.get(index);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * The items whose rectangle intersects this area, in the order they were added
+     */
+    public ArrayList<T> getIntersecting(Rectangle2D area) {
+        ArrayList<T> intersecting = new ArrayList<T>();
+        int firstColumn = getCell(area.getMinX());
+        int lastColumn = getCell(area.getMaxX());
+        int firstRow = getCell(area.getMinY());
+        int lastRow = getCell(area.getMaxY());
+        long cellsNumber = (long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+        if (cellsNumber > cells.size()) {
+            // the area is bigger than the part of the grid which is used, we check all the items
+            for (int index = 0; index < items.size(); index++) {
+                if (rectangles.get(index).intersects(area)) {
+                    intersecting.add(items.get(index));
+                }
+            }
+            return intersecting;
+        }
+        // an item can be in several cells
+        BitSet candidates = new BitSet(items.size());
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                ArrayList<Integer> cell = cells.get(getKey(column, row));
+                if (cell != null) {
+                    for (Integer index : cell) {
+                        candidates.set(index);
+                    }
+                }
+            }
+        }
+        for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+            if (rectangles.get(index).intersects(area)) {
+                intersecting.add(items.get(index));
+            }
+        }
+        return intersecting;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public void clear() {
+        items.clear();
+        rectangles.clear();
+        cells.clear();
+    }
+
+    private int getCell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static Long getKey(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class indexes an AIRR format file coming from changeo pipeline: for each clone_id it stores the byte offsets
+   of its rows, and it stores the header of the file. The index is built with a single pass over the file and is
+   saved next to it ('.aidx' extension), it is then used to load the rows of one clone without reading the whole file.
+ */
+package ch.irb.IgGenealogicTreeViewer.airr;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+public class AirrFileIndex {
+
+    static Logger logger = Logger.getLogger(AirrFileIndex.class);
+    private static final String INDEX_EXTENSION = ".aidx";
+    private static final int INDEX_MAGIC = 0x41495258; // "AIRX"
+    private static final int INDEX_VERSION = 1;
+    // the indexes already loaded during this session, to share them between the clones
+    private static HashMap<String, AirrFileIndex> pathToIndex = new HashMap<>();
+
+    private File tsvAirrFile;
+    private long fileLength;
+    private long lastModified;
+    private String[] header;
+    private int cloneIdIndex = -1;
+    private LinkedHashMap<String, long[]> cloneIdToOffsets = new LinkedHashMap<>();
+
+    public static void main(String[] args) {
+        try {
+            long start = System.currentTimeMillis();
+            AirrFileIndex index = getIndex(new File(args[0]));
+            System.out.println("Index of " + index.getCloneIds().size() + " clones loaded in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * Get the index of the AIRR file: from the memory, from the index file if it is up to date, or we build it
+     */
+    public static synchronized AirrFileIndex getIndex(File tsvAirrFile) throws IOException {
+        String path = tsvAirrFile.getAbsolutePath();
+        AirrFileIndex index = pathToIndex.get(path);
+        if (index != null && index.isUpToDate()) {
+            return index;
+        }
+        index = new AirrFileIndex(tsvAirrFile.getAbsoluteFile());
+        File indexFile = getIndexFile(tsvAirrFile);
+        if (!indexFile.exists() || !index.load(indexFile)) {
+            index.build();
+            index.save(indexFile);
+        }
+        pathToIndex.put(path, index);
+        return index;
+    }
+
+    public static File getIndexFile(File tsvAirrFile) {
+        return new File(tsvAirrFile.getAbsolutePath() + INDEX_EXTENSION);
+    }
+
+    private AirrFileIndex(File tsvAirrFile) {
+        this.tsvAirrFile = tsvAirrFile;
+        this.fileLength = tsvAirrFile.length();
+        this.lastModified = tsvAirrFile.lastModified();
+    }
+
+    private boolean isUpToDate() {
+        return tsvAirrFile.length() == fileLength && tsvAirrFile.lastModified() == lastModified;
+    }
+
+    /*
+     * Single pass over the file: we keep the start offset of each line, and the clone_id of each row.
+     * The rows of a clone are usually contiguous, so the clone_id cell is compared to the previous one in the mapped
+     * buffer and decoded only when it changes
+     */
+    private void build() throws IOException {
+        HashMap<String, ArrayList<Long>> cloneIdToOffsetList = new LinkedHashMap<>();
+        MappedTabFileReader reader = new MappedTabFileReader(tsvAirrFile);
+        try {
+            if (!reader.nextLine()) {
+                throw new IOException("The AIRR file '" + tsvAirrFile.getName() + "' is empty.");
+            }
+            header = reader.getLine().split("\t");
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equals("clone_id")) {
+                    cloneIdIndex = i;
+                }
+            }
+            if (cloneIdIndex >= 0) {
+                byte[] previousCloneId = null;
+                ArrayList<Long> offsets = null;
+                while (reader.nextLine()) {
+                    if (reader.isEmptyLine()) {
+                        continue;
+                    }
+                    if (previousCloneId == null || !reader.cellEquals(cloneIdIndex, previousCloneId)) {
+                        previousCloneId = reader.getCellBytes(cloneIdIndex);
+                        if (previousCloneId == null) {
+                            continue;
+                        }
+                        String cloneId = new String(previousCloneId, StandardCharsets.UTF_8);
+                        offsets = cloneIdToOffsetList.get(cloneId);
+                        if (offsets == null) {
+                            offsets = new ArrayList<>();
+                            cloneIdToOffsetList.put(cloneId, offsets);
+                        }
+                    }
+                    offsets.add(reader.getLineOffset());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        for (String cloneId : cloneIdToOffsetList.keySet()) {
+            ArrayList<Long> offsetList = cloneIdToOffsetList.get(cloneId);
+            long[] offsets = new long[offsetList.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = offsetList.get(i);
+            }
+            cloneIdToOffsets.put(cloneId, offsets);
+        }
+    }
+
+    private boolean load(File indexFile) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION || in.readLong() != fileLength
+                        || in.readLong() != lastModified) {
+                    return false;
+                }
+                header = new String[in.readInt()];
+                for (int i = 0; i < header.length; i++) {
+                    header[i] = in.readUTF();
+                }
+                cloneIdIndex = in.readInt();
+                int cloneNumber = in.readInt();
+                for (int c = 0; c < cloneNumber; c++) {
+                    String cloneId = in.readUTF();
+                    long[] offsets = new long[in.readInt()];
+                    for (int i = 0; i < offsets.length; i++) {
+                        offsets[i] = in.readLong();
+                    }
+                    cloneIdToOffsets.put(cloneId, offsets);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the AIRR index file " + indexFile.getName() + ", it will be rebuilt.");
+            header = null;
+            cloneIdToOffsets.clear();
+            return false;
+        }
+        return true;
+    }
+
+    private void save(File indexFile) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeLong(fileLength);
+                out.writeLong(lastModified);
+                out.writeInt(header.length);
+                for (String cell : header) {
+                    out.writeUTF(cell);
+                }
+                out.writeInt(cloneIdIndex);
+                out.writeInt(cloneIdToOffsets.size());
+                for (String cloneId : cloneIdToOffsets.keySet()) {
+                    long[] offsets = cloneIdToOffsets.get(cloneId);
+                    out.writeUTF(cloneId);
+                    out.writeInt(offsets.length);
+                    for (long offset : offsets) {
+                        out.writeLong(offset);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // the folder can be read only, we keep the index in memory only
+            logger.warn("Could not save the AIRR index file " + indexFile.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    public File getFile() {
+        return tsvAirrFile;
+    }
+
+    /*
+     * The byte offsets of the rows of one clone (empty if the clone is not in the file)
+     */
+    public long[] getRowOffsets(String cloneId) {
+        long[] offsets = cloneIdToOffsets.get(cloneId);
+        return offsets == null ? new long[0] : offsets;
+    }
+
+    public String[] getHeader() {
+        return header;
+    }
+
+    public int getCloneIdIndex() {
+        return cloneIdIndex;
+    }
+
+    public boolean containsCloneId(String cloneId) {
+        return cloneIdToOffsets.containsKey(cloneId);
+    }
+
+    public Set<String> getCloneIds() {
+        return cloneIdToOffsets.keySet();
+    }
+
+    public int getRowNumber(String cloneId) {
+        long[] offsets = cloneIdToOffsets.get(cloneId);
+        return offsets == null ? 0 : offsets.length;
+    }
+}
@@ -13,49 +13,155 @@
    See the License for the specific language governing permissions and
    limitations under the License.
 
-    This class will parse the igphyml file (tab format) and get the newick tree of the clone id chosen by the user
+    This class will parse the igphyml file (tab format) and get the newick tree of the clone id chosen by the user.
+    The file is read once to build an index (clone id -> NSEQ and byte range of the TREE cell), the newick trees are
+    then read from the file only when they are asked. The index is shared during the session (see getParser).
  */
 package ch.irb.IgGenealogicTreeViewer.airr;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 public class IgPhyMLParser {
 
-    private HashMap<String,String>cloneIdToNewickTree = new HashMap<>();
+    // the parsers already created during this session, to share their index between the clones
+    private static HashMap<String, IgPhyMLParser> pathToParser = new HashMap<>();
+
+    private File igPhyMLFile;
+    private long fileLength;
+    private long lastModified;
+    private String header = "";
+    private HashMap<String, Integer> cloneIdToIndex = new HashMap<>();
+    private ArrayList<String> cloneIds = new ArrayList<>();
+    // for each clone (same index than in cloneIds)
+    private int[] nseqs = new int[16];
+    private long[] treeOffsets = new long[16];
+    private int[] treeLengths = new int[16];
+
+    /*
+     * Get the parser of the IgPhyML file, its index is built only once during the session (unless the file changed)
+     */
+    public static synchronized IgPhyMLParser getParser(File igPhyMLFile) throws IOException {
+        String path = igPhyMLFile.getAbsolutePath();
+        IgPhyMLParser parser = pathToParser.get(path);
+        if (parser == null || igPhyMLFile.length() != parser.fileLength
+                || igPhyMLFile.lastModified() != parser.lastModified) {
+            parser = new IgPhyMLParser(igPhyMLFile);
+            pathToParser.put(path, parser);
+        }
+        return parser;
+    }
 
     public  IgPhyMLParser (File igPhyMLFile) throws IOException {
-        BufferedReader fileReader = new BufferedReader(new FileReader(igPhyMLFile.getPath()));
-        String line;
+        this.igPhyMLFile = igPhyMLFile.getAbsoluteFile();
+        this.fileLength = igPhyMLFile.length();
+        this.lastModified = igPhyMLFile.lastModified();
+        MappedTabFileReader reader = new MappedTabFileReader(igPhyMLFile);
         int index=0;
         int tree_index=0;
-        while ((line = fileReader.readLine()) != null) {
-            String[] cells = line.split("\t");
-            if (index==0){
-                int i=0;
-                for (String cell: cells){
-                    if (cell.equals("TREE")){
-                        tree_index=i;
+        try {
+            while (reader.nextLine()) {
+                if (index==0){
+                    header = reader.getLine();
+                    for (int i = 0; i < reader.getCellNumber(); i++) {
+                        if (reader.getCell(i).equals("TREE")){
+                            tree_index=i;
+                        }
                     }
-                    i++;
                 }
+                if (index>1 && !reader.isEmptyLine()){
+                    //only the clone id and NSEQ cells are decoded, we keep the position of the tree
+                    addClone(reader.getCell(0), parseNseq(reader.getCell(1)), reader.getCellOffset(tree_index),
+                            reader.getCellLength(tree_index));
+                }
+                index++;
             }
-            if (index>1){
-                cloneIdToNewickTree.put(cells[0],cells[tree_index]);
-            }
-            index++;
+        } finally {
+            reader.close();
         }
-        fileReader.close();
-        //System.out.println("Number of clones/trees made by IgPhyML: "+cloneIdToNewickTree.size());
+        //System.out.println("Number of clones/trees made by IgPhyML: "+cloneIds.size());
     }
 
-    public String getNewickTree(String cloneId){
-        if (cloneIdToNewickTree.containsKey(cloneId)){
-            return cloneIdToNewickTree.get(cloneId);
+    /*
+     * A clone id which is several times in the file keeps only its last line, like before the index was used
+     */
+    private void addClone(String cloneId, int nseq, long treeOffset, int treeLength) {
+        Integer previousIndex = cloneIdToIndex.get(cloneId);
+        if (previousIndex != null) {
+            nseqs[previousIndex] = nseq;
+            treeOffsets[previousIndex] = treeOffset;
+            treeLengths[previousIndex] = treeLength;
+            return;
         }
-        return null;
+        int index = cloneIds.size();
+        if (index == nseqs.length) {
+            int[] newNseqs = new int[index * 2];
+            long[] newTreeOffsets = new long[index * 2];
+            int[] newTreeLengths = new int[index * 2];
+            System.arraycopy(nseqs, 0, newNseqs, 0, index);
+            System.arraycopy(treeOffsets, 0, newTreeOffsets, 0, index);
+            System.arraycopy(treeLengths, 0, newTreeLengths, 0, index);
+            nseqs = newNseqs;
+            treeOffsets = newTreeOffsets;
+            treeLengths = newTreeLengths;
+        }
+        cloneIds.add(cloneId);
+        cloneIdToIndex.put(cloneId, index);
+        nseqs[index] = nseq;
+        treeOffsets[index] = treeOffset;
+        treeLengths[index] = treeLength;
+    }
+
+    private int parseNseq(String nseq) {
+        try {
+            return Integer.parseInt(nseq);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * Read the newick tree of the clone in the file, return null if the clone id is not in the file
+     */
+    public String getNewickTree(String cloneId) throws IOException {
+        Integer index = cloneIdToIndex.get(cloneId);
+        if (index == null || treeOffsets[index] < 0) {
+            return null;
+        }
+        byte[] tree = new byte[treeLengths[index]];
+        RandomAccessFile file = new RandomAccessFile(igPhyMLFile, "r");
+        try {
+            file.seek(treeOffsets[index]);
+            file.readFully(tree);
+        } finally {
+            file.close();
+        }
+        return new String(tree, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The number of sequences of the clone (NSEQ), -1 if it is not a number or if the clone id is not in the file
+     */
+    public int getNseq(String cloneId) {
+        Integer index = cloneIdToIndex.get(cloneId);
+        if (index == null) {
+            return -1;
+        }
+        return nseqs[index];
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    /*
+     * The clone ids in the same order than in the IgPhyML file
+     */
+    public ArrayList<String> getCloneIds() {
+        return cloneIds;
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class reads a tab separated file (AIRR format file or IgPhyML tab file) line by line using a memory-mapped
+   buffer. The cells of the current line are only located (start/end in the buffer), they are compared directly to
+   bytes and decoded into a String only when asked, so the lines that we skip do not create any object.
+ */
+package ch.irb.IgGenealogicTreeViewer.airr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class MappedTabFileReader {
+
+    // a mapped buffer is limited to 2GB, big files are mapped by segments
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long fileSize;
+    private long segmentStart = 0;
+    private MappedByteBuffer buffer;
+    private ByteBuffer view; // used to copy the bytes of a cell
+    private byte[] scratch = new byte[1 << 10];
+
+    // current line, positions are relative to the segment
+    private int position = 0;
+    private int lineStart = -1;
+    private int lineEnd = -1;
+    private int[] cellStarts = new int[64];
+    private int[] cellEnds = new int[64];
+    private int cellNumber = 0;
+    private boolean cellsLocated = false;
+
+    public MappedTabFileReader(File tabFile) throws IOException {
+        file = new RandomAccessFile(tabFile, "r");
+        channel = file.getChannel();
+        fileSize = channel.size();
+        map(0, SEGMENT_SIZE);
+    }
+
+    private void map(long start, long size) throws IOException {
+        segmentStart = start;
+        size = Math.min(Math.min(size, fileSize - start), Integer.MAX_VALUE);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        view = buffer.duplicate();
+        position = 0;
+    }
+
+    /*
+     * Go to a byte offset in the file, the next call to nextLine() will read the line starting there
+     */
+    public void seek(long offset) throws IOException {
+        if (offset < segmentStart || offset >= segmentStart + buffer.limit()) {
+            map(Math.min(offset, fileSize), SEGMENT_SIZE);
+        } else {
+            position = (int) (offset - segmentStart);
+        }
+    }
+
+    /*
+     * Move to the next line, return false at the end of the file
+     */
+    public boolean nextLine() throws IOException {
+        if (segmentStart + position >= fileSize) {
+            return false;
+        }
+        int end = findEndOfLine(position);
+        while (end < 0 && segmentStart + buffer.limit() < fileSize) {
+            // the line continues after the segment, we map again from the start of the line (a bigger segment
+            // if the line is longer than a segment)
+            long lineOffset = segmentStart + position;
+            int searchFrom = (int) (segmentStart + buffer.limit() - lineOffset);
+            map(lineOffset, Math.max(SEGMENT_SIZE, 2L * buffer.limit()));
+            end = findEndOfLine(searchFrom);
+        }
+        if (end < 0) {
+            end = buffer.limit();
+        }
+        lineStart = position;
+        position = end + 1;
+        if (end > lineStart && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        lineEnd = end;
+        cellsLocated = false;
+        return true;
+    }
+
+    private int findEndOfLine(int from) {
+        int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void locateCells() {
+        cellNumber = 0;
+        int cellStart = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buffer.get(i) == '\t') {
+                if (cellNumber == cellStarts.length) {
+                    int[] newStarts = new int[cellNumber * 2];
+                    int[] newEnds = new int[cellNumber * 2];
+                    System.arraycopy(cellStarts, 0, newStarts, 0, cellNumber);
+                    System.arraycopy(cellEnds, 0, newEnds, 0, cellNumber);
+                    cellStarts = newStarts;
+                    cellEnds = newEnds;
+                }
+                cellStarts[cellNumber] = cellStart;
+                cellEnds[cellNumber] = i;
+                cellNumber++;
+                cellStart = i + 1;
+            }
+        }
+        cellsLocated = true;
+    }
+
+    /*
+     * Byte offset of the current line in the file
+     */
+    public long getLineOffset() {
+        return segmentStart + lineStart;
+    }
+
+    public boolean isEmptyLine() {
+        return lineEnd == lineStart;
+    }
+
+    public int getCellNumber() {
+        if (!cellsLocated) {
+            locateCells();
+        }
+        return cellNumber;
+    }
+
+    /*
+     * Compare a cell of the current line with some bytes, without decoding it
+     */
+    public boolean cellEquals(int column, byte[] value) {
+        if (column >= getCellNumber()) {
+            return false;
+        }
+        int start = cellStarts[column];
+        if (cellEnds[column] - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Byte offset of a cell of the current line in the file, -1 if the line does not have this column
+     */
+    public long getCellOffset(int column) {
+        if (column >= getCellNumber()) {
+            return -1;
+        }
+        return segmentStart + cellStarts[column];
+    }
+
+    public int getCellLength(int column) {
+        if (column >= getCellNumber()) {
+            return 0;
+        }
+        return cellEnds[column] - cellStarts[column];
+    }
+
+    /*
+     * Decode a cell of the current line, return null if the line does not have this column
+     */
+    public String getCell(int column) {
+        if (column >= getCellNumber()) {
+            return null;
+        }
+        return decode(cellStarts[column], cellEnds[column]);
+    }
+
+    public byte[] getCellBytes(int column) {
+        if (column >= getCellNumber()) {
+            return null;
+        }
+        int length = cellEnds[column] - cellStarts[column];
+        byte[] bytes = new byte[length];
+        view.position(cellStarts[column]);
+        view.get(bytes, 0, length);
+        return bytes;
+    }
+
+    public String getLine() {
+        return decode(lineStart, lineEnd);
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        view.position(start);
+        view.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
@@ -14,15 +14,14 @@
    limitations under the License.
 
    This class will parse an AIRR format file coming from changeo pipeline, after clustering and creating germline.
-   It will store all data with a hashmap key/value corresponding to the header of the file
-   It will store all clonal families by their clone_id
+   It will store the clonal family of the clone_id, read with the index of the file (AirrFileIndex)
+   Only the columns used by AncesTree are decoded from the file (projection, see MappedTabFileReader) and stored in
+   arrays with one array per column (columnar store), the column indexes are shared by all the rows
  */
 
 package ch.irb.IgGenealogicTreeViewer.airr;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 
@@ -32,7 +31,16 @@ import java.util.*;
  */
 public class TsvAirrParser {
 
-    private boolean isCloneIdPresent=true;
+    // the AIRR columns used by AncesTree, the other ones are never decoded
+    public static final String[] PROJECTED_COLUMNS = {"sequence_id", "clone_id", "sequence_alignment", "fwr1", "cdr1",
+            "fwr2", "cdr2", "fwr3", "cdr3", "fwr4"};
+
+    private boolean isCloneIdPresent=false;
+    private String[] projectedColumns;
+    private HashMap<String, Integer> columnToSlot = new HashMap<>();
+    // one array per projected column, the row number is the index in the arrays
+    private String[][] columnValues;
+    private int rowNumber = 0;
 
     public static void main(String[] args) {
         try {
@@ -45,55 +53,70 @@ public class TsvAirrParser {
     private TreeMap<String, ArrayList<AIRRobject>> clonalFamToAIIRobjs = new TreeMap<>();
 
     public TsvAirrParser(File tsvAirrFile, String cloneId, HashSet<String> nodeNames) throws IOException {
+        this(tsvAirrFile, cloneId, nodeNames, PROJECTED_COLUMNS);
+    }
+
+    /*
+    The rows of the cloneId are loaded using the index of the file (built once and saved next to the file),
+    we dont need to read the whole file for each clone. Only the projectedColumns are stored.
+     */
+    public TsvAirrParser(File tsvAirrFile, String cloneId, HashSet<String> nodeNames, String[] projectedColumns)
+            throws IOException {
         //System.out.println("processing clone_id "+cloneId);
-        BufferedReader fileReader = new BufferedReader(new FileReader(tsvAirrFile));
-        String line = "";
-        int index = 0;
-        int cloneIdIndex = 0;
-        HashMap<Integer, String> indexToHeader = new HashMap<>();
-        while ((line = fileReader.readLine()) != null) {
-            String[] cells = line.split("\t");
-            if (index == 0) {
-                int i = 0;
-                for (String cell : cells) {
-                    indexToHeader.put(i, cell);
-                    if (cell.equals("clone_id")) {
-                        cloneIdIndex = i;
-                    }
-                    i++;
-                }
-            } else {
-                //we store only the sequences belonging to the cloneId and the nodes in the newick tree(to go faster)
-                if (cells[cloneIdIndex].equals(cloneId)) {
-                    isCloneIdPresent=true;
-                    if (nodeNames.contains(cells[0])) {
-                        LinkedHashMap<String, String> airrKeyToValue = new LinkedHashMap<>();
-                        int j = 0;
-                        for (String cell : cells) {
-                            String header = indexToHeader.get(j);
-                            airrKeyToValue.put(header, cell);
-                            j++;
-                        }
-                        AIRRobject airRobject = new AIRRobject(cells[0], airrKeyToValue);
-                        String clone_id = airrKeyToValue.get("clone_id");
-                        ArrayList<AIRRobject> airRobjects = new ArrayList<>();
-                        if (clonalFamToAIIRobjs.containsKey(clone_id)) {
-                            airRobjects = clonalFamToAIIRobjs.get(clone_id);
+        this.projectedColumns = projectedColumns;
+        AirrFileIndex airrFileIndex = AirrFileIndex.getIndex(tsvAirrFile);
+        isCloneIdPresent = airrFileIndex.containsCloneId(cloneId);
+
+        // for each file column, the slot where we store it (-1 if the column is not projected)
+        String[] header = airrFileIndex.getHeader();
+        int[] fileColumnToSlot = new int[header.length];
+        Arrays.fill(fileColumnToSlot, -1);
+        for (int slot = 0; slot < projectedColumns.length; slot++) {
+            columnToSlot.put(projectedColumns[slot], slot);
+        }
+        int lastColumnToRead = 0;
+        for (int i = 0; i < header.length; i++) {
+            Integer slot = columnToSlot.get(header[i]);
+            if (slot != null) {
+                fileColumnToSlot[i] = slot;
+                lastColumnToRead = i;
+            }
+        }
+
+        long[] rowOffsets = airrFileIndex.getRowOffsets(cloneId);
+        columnValues = new String[projectedColumns.length][rowOffsets.length];
+        MappedTabFileReader reader = new MappedTabFileReader(airrFileIndex.getFile());
+        try {
+            for (long rowOffset : rowOffsets) {
+                reader.seek(rowOffset);
+                reader.nextLine();
+                String sequenceId = reader.getCell(0);
+                //we store only the sequences belonging to the nodes in the newick tree(to go faster)
+                if (nodeNames.contains(sequenceId)) {
+                    int row = rowNumber;
+                    for (int column = 0; column <= lastColumnToRead; column++) {
+                        int slot = fileColumnToSlot[column];
+                        if (slot >= 0) {
+                            String cell = reader.getCell(column);
+                            columnValues[slot][row] = cell == null ? "" : cell;
                         }
-                        airRobjects.add(airRobject);
-                        clonalFamToAIIRobjs.put(clone_id, airRobjects);
-                    }else{
-                      //  System.out.println("This node name is not in the igphyml tree "+cells[0]);
                     }
+                    rowNumber++;
+                    AIRRobject airRobject = new AIRRobject(sequenceId, row);
+                    ArrayList<AIRRobject> airRobjects = new ArrayList<>();
+                    if (clonalFamToAIIRobjs.containsKey(cloneId)) {
+                        airRobjects = clonalFamToAIIRobjs.get(cloneId);
+                    }
+                    airRobjects.add(airRobject);
+                    clonalFamToAIIRobjs.put(cloneId, airRobjects);
+                } else {
+                    //  System.out.println("This node name is not in the igphyml tree "+sequenceId);
                 }
             }
-            index++;
+        } finally {
+            reader.close();
         }
-        index--;
-        fileReader.close();
-        //System.out.println("Number of heavy sequence processed " + index);
-        //System.out.println("Number of clonal families processed " + clonalFamToAIIRobjs.size());
-
+        //System.out.println("Number of heavy sequence processed " + airrFileIndex.getRowNumber(cloneId));
     }
 
     public TreeMap<String, ArrayList<AIRRobject>> getClonalFamToAIIRobjs() {
@@ -112,33 +135,33 @@ public class TsvAirrParser {
         return isCloneIdPresent;
     }
 
+    public String[] getProjectedColumns() {
+        return projectedColumns;
+    }
+
+    /*
+     * An AIRR row: it only keeps its row number in the column arrays of the parser
+     */
     public class AIRRobject {
         private String sequence_id;
-        private LinkedHashMap<String, String> airrKeyToValue; //already provided by changeo output (airr format)
+        private int row;
 
-        public AIRRobject(String sequence_id, LinkedHashMap<String, String> airrKeyToValue) {
-            setSequence_id(sequence_id);
-            setAirrKeyToValue(airrKeyToValue);
+        public AIRRobject(String sequence_id, int row) {
+            this.sequence_id = sequence_id;
+            this.row = row;
         }
 
         public String getSequence_id() {
             return sequence_id;
         }
 
-        public void setSequence_id(String sequence_id) {
-            this.sequence_id = sequence_id;
-        }
-
-        public LinkedHashMap<String, String> getAirrKeyToValue() {
-            return airrKeyToValue;
-        }
-
-        public void setAirrKeyToValue(LinkedHashMap<String, String> airrKeyToValue) {
-            this.airrKeyToValue = airrKeyToValue;
-        }
-
+        // return null if the column is not in the file or not projected
         public String getValue(String airrkey) {
-            return airrKeyToValue.get(airrkey);
+            Integer slot = columnToSlot.get(airrkey);
+            if (slot == null) {
+                return null;
+            }
+            return columnValues[slot][row];
         }
 
 
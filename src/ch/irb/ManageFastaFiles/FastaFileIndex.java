@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.ManageFastaFiles;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * @author Mathilde This class indexes a fasta file: for each fasta id it stores the byte offset and the length of its
+ * entry. The index is built with a single pass over the file and saved next to it ('.fidx' extension), then the
+ * sequences of some ids are read without parsing the whole file (used for the IgPhyML intermediate sequences)
+ */
+public class FastaFileIndex {
+
+    static Logger logger = Logger.getLogger(FastaFileIndex.class);
+    private static final String INDEX_EXTENSION = ".fidx";
+    private static final int INDEX_MAGIC = 0x46494458; // "FIDX"
+    // version 2: the fasta ids are decoded as UTF-8
+    private static final int INDEX_VERSION = 2;
+    // the indexes already loaded during this session
+    private static HashMap<String, FastaFileIndex> pathToIndex = new HashMap<>();
+
+    private File fastaFile;
+    private long fileLength;
+    private long lastModified;
+    // for each fasta id: offset of the '>' line and length of the entry
+    private HashMap<String, long[]> fastaIdToEntry = new HashMap<>();
+
+    /*
+     * Get the index of the fasta file: from the memory, from the index file if it is up to date, or we build it
+     */
+    public static synchronized FastaFileIndex getIndex(File fastaFile) throws IOException {
+        String path = fastaFile.getAbsolutePath();
+        FastaFileIndex index = pathToIndex.get(path);
+        if (index != null && index.isUpToDate()) {
+            return index;
+        }
+        index = new FastaFileIndex(fastaFile.getAbsoluteFile());
+        File indexFile = new File(path + INDEX_EXTENSION);
+        if (!indexFile.exists() || !index.load(indexFile)) {
+            index.build();
+            index.save(indexFile);
+        }
+        pathToIndex.put(path, index);
+        return index;
+    }
+
+    private FastaFileIndex(File fastaFile) {
+        this.fastaFile = fastaFile;
+        this.fileLength = fastaFile.length();
+        this.lastModified = fastaFile.lastModified();
+    }
+
+    private boolean isUpToDate() {
+        return fastaFile.length() == fileLength && fastaFile.lastModified() == lastModified;
+    }
+
+    private void build() throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(fastaFile), 1 << 16);
+        byte[] buffer = new byte[1 << 16];
+        ByteArrayOutputStream header = null; // the bytes of the '>' line we are reading
+        boolean lineStart = true;
+        String fastaId = null;
+        long entryStart = 0;
+        long offset = 0;
+        int read;
+        try {
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (header != null) {
+                        if (b == '\n') {
+                            fastaId = getFastaId(header);
+                            header = null;
+                        } else {
+                            header.write(b);
+                        }
+                    } else if (lineStart && b == '>') {
+                        //new entry, we record the previous one
+                        addEntry(fastaId, entryStart, offset + i);
+                        entryStart = offset + i;
+                        header = new ByteArrayOutputStream();
+                    }
+                    lineStart = b == '\n';
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        if (header != null) {
+            fastaId = getFastaId(header);
+        }
+        addEntry(fastaId, entryStart, offset);
+    }
+
+    private static String getFastaId(ByteArrayOutputStream header) {
+        return new String(header.toByteArray(), StandardCharsets.UTF_8).replace(">", "").trim();
+    }
+
+    private void addEntry(String fastaId, long entryStart, long entryEnd) {
+        if (fastaId != null) {
+            fastaIdToEntry.put(fastaId, new long[]{entryStart, entryEnd - entryStart});
+        }
+    }
+
+    private boolean load(File indexFile) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION || in.readLong() != fileLength
+                        || in.readLong() != lastModified) {
+                    return false;
+                }
+                int entryNumber = in.readInt();
+                for (int i = 0; i < entryNumber; i++) {
+                    String fastaId = in.readUTF();
+                    fastaIdToEntry.put(fastaId, new long[]{in.readLong(), in.readLong()});
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the fasta index file " + indexFile.getName() + ", it will be rebuilt.");
+            fastaIdToEntry.clear();
+            return false;
+        }
+        return true;
+    }
+
+    private void save(File indexFile) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeLong(fileLength);
+                out.writeLong(lastModified);
+                out.writeInt(fastaIdToEntry.size());
+                for (String fastaId : fastaIdToEntry.keySet()) {
+                    long[] entry = fastaIdToEntry.get(fastaId);
+                    out.writeUTF(fastaId);
+                    out.writeLong(entry[0]);
+                    out.writeLong(entry[1]);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // the folder can be read only, we keep the index in memory only
+            logger.warn("Could not save the fasta index file " + indexFile.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    public boolean containsFastaId(String fastaId) {
+        return fastaIdToEntry.containsKey(fastaId);
+    }
+
+    /*
+     * Read the sequences of the given fasta ids (the ones that are in the file), in the order of the file
+     */
+    public LinkedHashMap<String, String> readSequences(Collection<String> fastaIds) throws IOException {
+        ArrayList<long[]> entries = new ArrayList<>();
+        HashMap<Long, String> offsetToFastaId = new HashMap<>();
+        for (String fastaId : fastaIds) {
+            long[] entry = fastaIdToEntry.get(fastaId);
+            if (entry != null && !offsetToFastaId.containsKey(entry[0])) {
+                entries.add(entry);
+                offsetToFastaId.put(entry[0], fastaId);
+            }
+        }
+        Collections.sort(entries, (entry1, entry2) -> Long.compare(entry1[0], entry2[0]));
+
+        LinkedHashMap<String, String> fastaIdToSequence = new LinkedHashMap<>();
+        RandomAccessFile file = new RandomAccessFile(fastaFile, "r");
+        try {
+            for (long[] entry : entries) {
+                byte[] bytes = new byte[(int) entry[1]];
+                file.seek(entry[0]);
+                file.readFully(bytes);
+                String sequence = parseEntry(bytes);
+                if (sequence.length() > 0) {
+                    fastaIdToSequence.put(offsetToFastaId.get(entry[0]), sequence);
+                }
+            }
+        } finally {
+            file.close();
+        }
+        return fastaIdToSequence;
+    }
+
+    /*
+     * Same rules than FastaFileParser: the lines after the '>' line are trimmed and concatenated, in upper case
+     */
+    private String parseEntry(byte[] bytes) {
+        String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 1; i < lines.length; i++) {
+            sequence.append(lines[i].trim());
+        }
+        return sequence.toString().toUpperCase().trim();
+    }
+}
@@ -15,8 +15,6 @@
  */
 package ch.irb.ManageFastaFiles;
 
-import org.apache.log4j.Logger;
-
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
@@ -24,15 +22,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 /**
  * @author Mathilde This class parses a fasta file it will store the information like the following: IgName to sequence
+ * The file is streamed line by line
  */
 public class FastaFileParser {
 
-    private HashMap<String, String> fastaIdToSequence = new HashMap<>();
+    // the same map is returned for both getters, it keeps the order of the file
     private LinkedHashMap<String, String> sameOrderFastaIdToSequence = new LinkedHashMap<>();
     private File file = null;
 
@@ -45,35 +42,37 @@ public class FastaFileParser {
         BufferedReader fileReader = new BufferedReader(new FileReader(file.getPath()));
         String line = "";
         String fastaId=null;
-        String sequence="";
-        while ((line = fileReader.readLine()) != null) {
-            if (line.matches(">.*")){ //new entry
-                //we record the previous entry
-                if (fastaId!=null && sequence.length()>0){
-                    String seq = sequence.toUpperCase().trim();
-                    fastaIdToSequence.put(fastaId, seq);
-                    sameOrderFastaIdToSequence.put(fastaId, seq);
+        StringBuilder sequence = new StringBuilder();
+        try {
+            while ((line = fileReader.readLine()) != null) {
+                if (line.startsWith(">")){ //new entry
+                    //we record the previous entry
+                    storeEntry(fastaId, sequence);
+                    fastaId= line.replace(">","").trim();
+                    //System.out.println(fastaId);
+                    sequence.setLength(0);
+                }
+                else {
+                    sequence.append(line.trim());
                 }
-                fastaId= line.replace(">","").trim();
-                //System.out.println(fastaId);
-                sequence="";
-            }
-            else {
-                sequence+= line.trim();
             }
+            //we store the last entry
+            storeEntry(fastaId, sequence);
+        } finally {
+            fileReader.close();
         }
+    }
 
-        //we store the last entry
+    private void storeEntry(String fastaId, StringBuilder sequence) {
         if (fastaId!=null && sequence.length()>0){
-            String seq = sequence.toUpperCase().trim();
-            fastaIdToSequence.put(fastaId, seq);
+            String seq = sequence.toString().toUpperCase().trim();
             sameOrderFastaIdToSequence.put(fastaId, seq);
         }
     }
 
 
     public HashMap<String, String> getFastaIdToSequence() {
-        return fastaIdToSequence;
+        return sameOrderFastaIdToSequence;
     }
 
     public LinkedHashMap<String, String> getSameOrderFastaIdToSequence() {
@@ -82,9 +81,8 @@ public class FastaFileParser {
 
     public HashMap<String, ArrayList<String>> getSeqToFastaIds() {
         HashMap<String, ArrayList<String>> seqToIds = new HashMap<>();
-        ;
-        for (String id : fastaIdToSequence.keySet()) {
-            String seq = fastaIdToSequence.get(id);
+        for (String id : sameOrderFastaIdToSequence.keySet()) {
+            String seq = sameOrderFastaIdToSequence.get(id);
             ArrayList<String> ids = new ArrayList<>();
             if (seqToIds.containsKey(seq)) {
                 ids = seqToIds.get(seq);
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.nodes;
+
+import java.util.Arrays;
+
+import javax.xml.bind.annotation.adapters.XmlAdapter;
+
+/**
+ * @author Mathilde This class stores the mutations of a sequence compared to its parent: the positions (sorted) and
+ *         for each one the residue of the parent and the residue of the child. It is written in the XML files as a
+ *         String like ",81:A->C,98:A->T," which is parsed only once when the file is loaded.
+ */
+public final class MutationList {
+
+    private final int[] positions;
+    private final byte[] fromResidues;
+    private final byte[] toResidues;
+
+    private MutationList(int[] positions, byte[] fromResidues, byte[] toResidues) {
+        this.positions = positions;
+        this.fromResidues = fromResidues;
+        this.toResidues = toResidues;
+    }
+
+    /*
+     * The mutations from the parent sequence to the child sequence (nucleotides). Return null if there is no mutation
+     */
+    public static MutationList compare(PackedSequence parentSequence, PackedSequence childSequence) {
+        int[] positions = SequenceDiff.getDifferencePositions(parentSequence, childSequence);
+        if (positions.length == 0) {
+            return null;
+        }
+        byte[] fromResidues = new byte[positions.length];
+        byte[] toResidues = new byte[positions.length];
+        for (int m = 0; m < positions.length; m++) {
+            fromResidues[m] = (byte) parentSequence.charAt(positions[m]);
+            toResidues[m] = (byte) childSequence.charAt(positions[m]);
+        }
+        return new MutationList(positions, fromResidues, toResidues);
+    }
+
+    /*
+     * The mutations from the parent sequence to the child sequence (amino acids). Return null if there is no mutation
+     */
+    public static MutationList compare(String parentSequence, String childSequence) {
+        int[] positions = SequenceDiff.getDifferencePositions(parentSequence, childSequence);
+        if (positions.length == 0) {
+            return null;
+        }
+        byte[] fromResidues = new byte[positions.length];
+        byte[] toResidues = new byte[positions.length];
+        for (int m = 0; m < positions.length; m++) {
+            fromResidues[m] = (byte) parentSequence.charAt(positions[m]);
+            toResidues[m] = (byte) childSequence.charAt(positions[m]);
+        }
+        return new MutationList(positions, fromResidues, toResidues);
+    }
+
+    /*
+     * Parse the String format ",81:A->C,98:A->T,". Return null if the String is null or has no mutation
+     */
+    public static MutationList parse(String mutations) {
+        if (mutations == null) {
+            return null;
+        }
+        String[] mut = mutations.split(",");
+        int[] positions = new int[mut.length];
+        byte[] fromResidues = new byte[mut.length];
+        byte[] toResidues = new byte[mut.length];
+        int m = 0;
+        for (String mutation : mut) {
+            int colon = mutation.indexOf(':');
+            int arrow = mutation.indexOf("->", colon);
+            if (colon < 0 || arrow < 0) {
+                continue;
+            }
+            positions[m] = Integer.parseInt(mutation.substring(0, colon).trim());
+            fromResidues[m] = (byte) mutation.charAt(colon + 1);
+            toResidues[m] = (byte) mutation.charAt(arrow + 2);
+            m++;
+        }
+        if (m == 0) {
+            return null;
+        }
+        MutationList mutationList = new MutationList(Arrays.copyOf(positions, m), Arrays.copyOf(fromResidues, m),
+                Arrays.copyOf(toResidues, m));
+        // the positions are searched by binary search, a file written by hand may not be sorted
+        for (int i = 1; i < m; i++) {
+            if (positions[i] < positions[i - 1]) {
+                mutationList.sortByPosition();
+                break;
+            }
+        }
+        return mutationList;
+    }
+
+    /*
+     * Sort the 3 arrays together by position (the order of the file is kept for a same position)
+     */
+    private void sortByPosition() {
+        long[] keys = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            keys[i] = ((long) positions[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        byte[] from = fromResidues.clone();
+        byte[] to = toResidues.clone();
+        for (int i = 0; i < keys.length; i++) {
+            int index = (int) keys[i];
+            positions[i] = (int) (keys[i] >> 32);
+            fromResidues[i] = from[index];
+            toResidues[i] = to[index];
+        }
+    }
+
+    public int size() {
+        return positions.length;
+    }
+
+    public int getPosition(int index) {
+        return positions[index];
+    }
+
+    public char getFrom(int index) {
+        return (char) fromResidues[index];
+    }
+
+    public char getTo(int index) {
+        return (char) toResidues[index];
+    }
+
+    /*
+     * The mutation as displayed to the user, i.e. "A->C"
+     */
+    public String getMutation(int index) {
+        return getFrom(index) + "->" + getTo(index);
+    }
+
+    /*
+     * The index of the mutation at this position, or a negative value if there is none
+     */
+    public int indexOf(int position) {
+        return Arrays.binarySearch(positions, position);
+    }
+
+    public boolean hasMutationAt(int position) {
+        return indexOf(position) >= 0;
+    }
+
+    /*
+     * True if we have exactly this mutation (same position, same residues)
+     */
+    public boolean contains(int position, char from, char to) {
+        int index = indexOf(position);
+        return index >= 0 && getFrom(index) == from && getTo(index) == to;
+    }
+
+    public String toString() {
+        StringBuilder mutations = new StringBuilder(",");
+        for (int i = 0; i < positions.length; i++) {
+            mutations.append(positions[i]).append(':').append(getFrom(i)).append("->").append(getTo(i)).append(',');
+        }
+        return mutations.toString();
+    }
+
+    /**
+     * Used to write and read the mutations as String in the XML files
+     */
+    public static class Adapter extends XmlAdapter<String, MutationList> {
+
+        @Override
+        public MutationList unmarshal(String mutations) {
+            return parse(mutations);
+        }
+
+        @Override
+        public String marshal(MutationList mutationList) {
+            return mutationList == null ? null : mutationList.toString();
+        }
+    }
+}
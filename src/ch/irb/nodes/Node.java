@@ -357,7 +357,7 @@ public class Node extends NodeObject {
             }
         }
         if (mutation == null) {
-            char nuc = getSequence().charAt(position.intValue());
+            char nuc = sequence.charAt(position.intValue());
             mutation = nuc + "->" + nuc;
         }
         return mutation;
@@ -370,7 +370,7 @@ public class Node extends NodeObject {
      * @return the nucleotide at position
      */
     public char getNucleotideAtPosition(Integer position) {
-        return getSequence().charAt(position.intValue());
+        return sequence.charAt(position.intValue());
     }
 
     /**
@@ -695,27 +695,13 @@ public class Node extends NodeObject {
 		}
 
         if (parent != null) {
-            String mutationsWithParent = ",";
-            String parentSequence = parent.getSequence();
             //logger.debug("For Node "+getNodeId()+" we have the parent sequence of parent "+parent.getNodeId());
-            //logger.debug(parentSequence);
-            char[] parentSeq = parentSequence.toCharArray();
-            char[] seq = sequence.toCharArray();
-            int numberOfMutations = 0;
-            for (int z = 0; z < parentSequence.length(); z++) {
-                String nuc1 = Character.toString(parentSeq[z]);
-                String nuc2 = Character.toString(seq[z]);
-                if (!nuc1.equals(nuc2)) {
-                    numberOfMutations++;
-                    String position = Integer.toString(z);
-                    mutationsWithParent += position + ":" + nuc1 + "->" + nuc2 + ",";
-                }
-            }
-            // logger.warn("Mut with parent "+mutationsWithParent);
-            if (mutationsWithParent.length() > 1) {
-                setMutationsWithParent(mutationsWithParent);
+            MutationList mutations = MutationList.compare(parent.getPackedSequence(), sequence);
+            // logger.warn("Mut with parent "+mutations);
+            if (mutations != null) {
+                setMutations(mutations);
             }
-            setNumberOfNucMutationsWithParent(numberOfMutations);
+            setNumberOfNucMutationsWithParent(mutations == null ? 0 : mutations.size());
             // we translate compare the protein sequences
             String parentProtSequence = parent.getProteinSequence();
             setNumberOfAAMutationsWithParent(compareTwoProteinSequences(proteinSequence, parentProtSequence));
@@ -405,6 +405,10 @@ public class NodeGraph extends NodeObject {
         rectangle2d = new Rectangle2D.Float(x, y, widthOfShapeNode, height);
     }
 
+    public Rectangle2D getRectangle2d() {
+        return rectangle2d;
+    }
+
     public boolean containsPoint2D(Point2D point2d) {
         if (rectangle2d.contains(point2d)) {
             return true;
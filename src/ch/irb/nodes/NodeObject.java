@@ -20,6 +20,7 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
 import org.apache.log4j.Logger;
 
@@ -43,8 +44,10 @@ public class NodeObject {
     protected boolean isDNA = true;
     @XmlAttribute(name = "name")
     protected String nodeId = "";
+    // stored with 2 bits per nucleotide, written as a String in the XML file
     @XmlElement(name = "dnaSequence")
-    protected String sequence;
+    @XmlJavaTypeAdapter(PackedSequence.Adapter.class)
+    protected PackedSequence sequence;
     @XmlElement
     protected String proteinSequence;
     @XmlElement(name = "cdr_fr_regions", required = false)
@@ -70,8 +73,10 @@ public class NodeObject {
     protected String reverseInformation = null;
     @XmlElement(name = "doubleMutation", required = false)
     protected String doubleMutationInformation = null;
+    // written as a String like ",81:A->C,98:A->T," in the XML file
     @XmlElement(name = "mutationsWithParent", required = false)
-    protected String mutationsWithParent = null;
+    @XmlJavaTypeAdapter(MutationList.Adapter.class)
+    protected MutationList mutationsWithParent = null;
     @XmlElement(name = "numberOfNucleotidicMutations")
     protected int numberOfNucMutationsWithParent = 0;
     @XmlElement(name = "numberOfAAMutations")
@@ -136,18 +141,25 @@ public class NodeObject {
 
     @XmlTransient
     public String getSequence() {
+        return sequence == null ? null : sequence.toString();
+    }
+
+    /*
+     * The sequence without unpacking it, to compare it with other sequences or to read some positions
+     */
+    @XmlTransient
+    public PackedSequence getPackedSequence() {
         return sequence;
     }
 
     public void setSequence(String sequence) {
-        this.sequence = sequence;
+        this.sequence = PackedSequence.pack(sequence);
         setProteinSequence();
     }
 
     public void setProteinSequence() {
         //System.out.println("Protein sequence for " + nodeId + " is: " + proteinSequence);
-        Translator translator = new Translator(sequence, isDNA);
-        proteinSequence = translator.getProteinSequence();
+        proteinSequence = Translator.translate(getSequence(), isDNA);
         // logger.debug("Protein sequence for " + nodeId + " is: " + proteinSequence);
     }
 
@@ -181,11 +193,23 @@ public class NodeObject {
 
     // Here we store the mutations with the parent like: 81:A->C, 98:A->T, ...)
     public void setMutationsWithParent(String mutationsWithParent) {
-        this.mutationsWithParent = mutationsWithParent;
+        this.mutationsWithParent = MutationList.parse(mutationsWithParent);
     }
 
     @XmlTransient
     public String getMutationsWithParent() {
+        return mutationsWithParent == null ? null : mutationsWithParent.toString();
+    }
+
+    public void setMutations(MutationList mutationsWithParent) {
+        this.mutationsWithParent = mutationsWithParent;
+    }
+
+    /**
+     * @return the mutations with the parent, null if there is none
+     */
+    @XmlTransient
+    public MutationList getMutations() {
         return mutationsWithParent;
     }
 
@@ -407,8 +431,7 @@ public class NodeObject {
     // This method is used when a BP sequence has the deletion in its shared mutations
     // we want it is displayed in the GUI only in the BP node
     public void removeDeletionIntoTheChild(Integer position) {
-        char[] seq = getSequence().toCharArray();
-        String nuc = Character.toString(seq[position.intValue()]);
+        String nuc = Character.toString(sequence.charAt(position.intValue()));
         if (nuc.equals("-")) {
             deletionNumber--;
         }
@@ -488,8 +511,7 @@ public class NodeObject {
     // This method is used when a BP sequence has the deletion in its shared mutations
     // we want it is displayed in the GUI only in the BP node
     public void removeInsertionIntoTheChild(Integer position, char[] glSequence) {
-        char[] seq = getSequence().toCharArray();
-        String nuc = Character.toString(seq[position.intValue()]);
+        String nuc = Character.toString(sequence.charAt(position.intValue()));
         String rootNuc = Character.toString(glSequence[position.intValue()]);
         if (rootNuc.equals("-") && nuc.matches("\\w")) {
             insertionNumber--;
@@ -500,17 +522,11 @@ public class NodeObject {
     }
 
     public int compareTwoProteinSequences(String protSequence1, String protSequence2) {
-        int numberOfMutations = 0;
         if (protSequence1.length() != protSequence2.length()) {
             logger.error("!!!!!!!!!!!! BE CAREFUL, these 2 protein sequences dont have the same lengt!!");
             return 0;
         }
-        for (int i = 0; i < protSequence1.length(); i++) {
-            if (protSequence1.charAt(i) != protSequence2.charAt(i)) {
-                numberOfMutations++;
-            }
-        }
-        return numberOfMutations;
+        return SequenceDiff.countDifferences(protSequence1, protSequence2);
     }
 
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.nodes;
+
+import java.util.Arrays;
+
+import javax.xml.bind.annotation.adapters.XmlAdapter;
+
+import ch.irb.translation.Translator;
+
+/**
+ * @author Mathilde This class stores a nucleotide sequence with 2 bits per base (A, C, G, T). The other characters
+ *         (gaps, IUPAC codes, lower case...) are stored in a list of exceptions, so the original String is always
+ *         given back. A sequence which is not mostly A/C/G/T (i.e. a protein) is kept as a String. The objects are
+ *         immutable, their hash code is cached and they can be used as keys to find identical sequences.
+ */
+public final class PackedSequence {
+
+    static final int BASES_PER_LONG = 32;
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final int length;
+    private final long[] packedBases;
+    // sorted positions of the characters which are not A/C/G/T, and these characters
+    private final int[] exceptionPositions;
+    private final char[] exceptionChars;
+    // used instead of the 2 bits packing when there are too many exceptions
+    private final String unpackedSequence;
+    private int hash = 0;
+
+    private PackedSequence(String sequence) {
+        length = sequence.length();
+        int exceptionNumber = 0;
+        for (int i = 0; i < length; i++) {
+            if (getCode(sequence.charAt(i)) < 0) {
+                exceptionNumber++;
+            }
+        }
+        if (exceptionNumber > length / 4) {
+            packedBases = null;
+            exceptionPositions = null;
+            exceptionChars = null;
+            unpackedSequence = sequence;
+            return;
+        }
+        packedBases = new long[(length + BASES_PER_LONG - 1) / BASES_PER_LONG];
+        exceptionPositions = new int[exceptionNumber];
+        exceptionChars = new char[exceptionNumber];
+        unpackedSequence = null;
+        int e = 0;
+        for (int i = 0; i < length; i++) {
+            char c = sequence.charAt(i);
+            int code = getCode(c);
+            if (code < 0) {
+                exceptionPositions[e] = i;
+                exceptionChars[e] = c;
+                e++;
+            } else {
+                packedBases[i / BASES_PER_LONG] |= ((long) code) << (2 * (i % BASES_PER_LONG));
+            }
+        }
+    }
+
+    /*
+     * Return null if the sequence is null
+     */
+    public static PackedSequence pack(String sequence) {
+        if (sequence == null) {
+            return null;
+        }
+        return new PackedSequence(sequence);
+    }
+
+    private static int getCode(char c) {
+        switch (c) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /*
+     * The following getters are used by SequenceDiff to compare the packed data directly
+     */
+    boolean isPacked() {
+        return unpackedSequence == null;
+    }
+
+    long[] getPackedBases() {
+        return packedBases;
+    }
+
+    int[] getExceptionPositions() {
+        return exceptionPositions;
+    }
+
+    public char charAt(int index) {
+        if (unpackedSequence != null) {
+            return unpackedSequence.charAt(index);
+        }
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        int e = Arrays.binarySearch(exceptionPositions, index);
+        if (e >= 0) {
+            return exceptionChars[e];
+        }
+        return BASES[(int) (packedBases[index / BASES_PER_LONG] >>> (2 * (index % BASES_PER_LONG))) & 3];
+    }
+
+    /*
+     * The index of the codon starting at the given position, read from the 2 bits codes (the same order as
+     * Translator.getCodonIndex). Return -1 if one of the 3 characters is not A/C/G/T
+     */
+    public int getCodonIndex(int start) {
+        if (unpackedSequence != null) {
+            return Translator.getCodonIndex(charAt(start), charAt(start + 1), charAt(start + 2));
+        }
+        int e = Arrays.binarySearch(exceptionPositions, start);
+        if (e >= 0 || (-e - 1 < exceptionPositions.length && exceptionPositions[-e - 1] <= start + 2)) {
+            return -1;
+        }
+        int codonIndex = 0;
+        for (int i = start; i < start + 3; i++) {
+            int code = (int) (packedBases[i / BASES_PER_LONG] >>> (2 * (i % BASES_PER_LONG))) & 3;
+            codonIndex = (codonIndex << 2) | code;
+        }
+        return codonIndex;
+    }
+
+    public char[] toCharArray() {
+        if (unpackedSequence != null) {
+            return unpackedSequence.toCharArray();
+        }
+        char[] chars = new char[length];
+        for (int l = 0; l < packedBases.length; l++) {
+            long bits = packedBases[l];
+            int end = Math.min(length, (l + 1) * BASES_PER_LONG);
+            for (int i = l * BASES_PER_LONG; i < end; i++) {
+                chars[i] = BASES[(int) bits & 3];
+                bits >>>= 2;
+            }
+        }
+        for (int e = 0; e < exceptionPositions.length; e++) {
+            chars[exceptionPositions[e]] = exceptionChars[e];
+        }
+        return chars;
+    }
+
+    public String toString() {
+        if (unpackedSequence != null) {
+            return unpackedSequence;
+        }
+        return new String(toCharArray());
+    }
+
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof PackedSequence)) {
+            return false;
+        }
+        PackedSequence other = (PackedSequence) object;
+        if (length != other.length || hashCode() != other.hashCode()) {
+            return false;
+        }
+        if (unpackedSequence != null || other.unpackedSequence != null) {
+            return unpackedSequence != null && unpackedSequence.equals(other.unpackedSequence);
+        }
+        return Arrays.equals(packedBases, other.packedBases)
+                && Arrays.equals(exceptionPositions, other.exceptionPositions)
+                && Arrays.equals(exceptionChars, other.exceptionChars);
+    }
+
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            if (unpackedSequence != null) {
+                h = unpackedSequence.hashCode();
+            } else {
+                h = length;
+                h = 31 * h + Arrays.hashCode(packedBases);
+                h = 31 * h + Arrays.hashCode(exceptionPositions);
+                h = 31 * h + Arrays.hashCode(exceptionChars);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Used to write and read the packed sequences as String in the XML files
+     */
+    public static class Adapter extends XmlAdapter<String, PackedSequence> {
+
+        @Override
+        public PackedSequence unmarshal(String sequence) {
+            return pack(sequence);
+        }
+
+        @Override
+        public String marshal(PackedSequence packedSequence) {
+            return packedSequence == null ? null : packedSequence.toString();
+        }
+    }
+}
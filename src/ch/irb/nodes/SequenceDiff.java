@@ -0,0 +1,271 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.nodes;
+
+import java.util.Random;
+
+import ch.irb.translation.Translator;
+
+/**
+ * @author Mathilde This class compares 2 sequences position by position (Hamming distance). The packed nucleotide
+ *         sequences are compared 32 bases at a time (XOR of the 2 bits codes) and the positions of the differences
+ *         are read from the set bits. The sequences are compared on the length of the shortest one.
+ */
+public class SequenceDiff {
+
+    // the low bit of each base of a packed word
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    /*
+     * The number of positions where the 2 sequences are different
+     */
+    public static int countDifferences(PackedSequence sequence1, PackedSequence sequence2) {
+        int length = Math.min(sequence1.length(), sequence2.length());
+        if (!sequence1.isPacked() || !sequence2.isPacked()) {
+            return countDifferences(sequence1.toCharArray(), sequence2.toCharArray(), length);
+        }
+        int count = 0;
+        if (sequence1.getExceptionPositions().length == 0 && sequence2.getExceptionPositions().length == 0) {
+            // only A/C/G/T, we don't need to keep the masks (i.e. for the distance matrices)
+            long[] bases1 = sequence1.getPackedBases();
+            long[] bases2 = sequence2.getPackedBases();
+            int fullWords = length / PackedSequence.BASES_PER_LONG;
+            for (int w = 0; w < fullWords; w++) {
+                long x = bases1[w] ^ bases2[w];
+                count += Long.bitCount((x | (x >>> 1)) & LOW_BITS);
+            }
+            int lastBases = length % PackedSequence.BASES_PER_LONG;
+            if (lastBases != 0) {
+                long x = bases1[fullWords] ^ bases2[fullWords];
+                count += Long.bitCount((x | (x >>> 1)) & LOW_BITS & ((1L << (2 * lastBases)) - 1));
+            }
+            return count;
+        }
+        for (long mask : getDifferenceMasks(sequence1, sequence2, length)) {
+            count += Long.bitCount(mask);
+        }
+        return count;
+    }
+
+    /*
+     * The sorted positions where the 2 sequences are different
+     */
+    public static int[] getDifferencePositions(PackedSequence sequence1, PackedSequence sequence2) {
+        int length = Math.min(sequence1.length(), sequence2.length());
+        if (!sequence1.isPacked() || !sequence2.isPacked()) {
+            return getDifferencePositions(sequence1.toCharArray(), sequence2.toCharArray(), length);
+        }
+        long[] masks = getDifferenceMasks(sequence1, sequence2, length);
+        int count = 0;
+        for (long mask : masks) {
+            count += Long.bitCount(mask);
+        }
+        int[] positions = new int[count];
+        int p = 0;
+        for (int w = 0; w < masks.length; w++) {
+            long mask = masks[w];
+            while (mask != 0) {
+                positions[p++] = w * PackedSequence.BASES_PER_LONG + (Long.numberOfTrailingZeros(mask) >>> 1);
+                mask &= mask - 1;
+            }
+        }
+        return positions;
+    }
+
+    /*
+     * For each word of 32 positions, the low bit of the 2 bits of a position is set if the sequences are different
+     * there (the same layout as the packed bases). The sequences are compared on the length of the shortest one
+     */
+    public static long[] getDifferenceMasks(PackedSequence sequence1, PackedSequence sequence2) {
+        int length = Math.min(sequence1.length(), sequence2.length());
+        if (sequence1.isPacked() && sequence2.isPacked()) {
+            return getDifferenceMasks(sequence1, sequence2, length);
+        }
+        long[] masks = new long[(length + PackedSequence.BASES_PER_LONG - 1) / PackedSequence.BASES_PER_LONG];
+        for (int position : getDifferencePositions(sequence1.toCharArray(), sequence2.toCharArray(), length)) {
+            masks[position / PackedSequence.BASES_PER_LONG] |= 1L << (2 * (position % PackedSequence.BASES_PER_LONG));
+        }
+        return masks;
+    }
+
+    /*
+     * For each word of packed bases, the low bit of a base is set if the bases are different
+     */
+    private static long[] getDifferenceMasks(PackedSequence sequence1, PackedSequence sequence2, int length) {
+        long[] bases1 = sequence1.getPackedBases();
+        long[] bases2 = sequence2.getPackedBases();
+        long[] masks = new long[(length + PackedSequence.BASES_PER_LONG - 1) / PackedSequence.BASES_PER_LONG];
+        for (int w = 0; w < masks.length; w++) {
+            long x = bases1[w] ^ bases2[w];
+            masks[w] = (x | (x >>> 1)) & LOW_BITS;
+        }
+        int lastBases = length % PackedSequence.BASES_PER_LONG;
+        if (lastBases != 0) {
+            masks[masks.length - 1] &= (1L << (2 * lastBases)) - 1;
+        }
+        // the packed bits of an exception (gap, IUPAC code...) are 0, so we compare the characters there
+        int[] exceptions1 = sequence1.getExceptionPositions();
+        int[] exceptions2 = sequence2.getExceptionPositions();
+        int e1 = 0;
+        int e2 = 0;
+        while (e1 < exceptions1.length || e2 < exceptions2.length) {
+            int position;
+            if (e2 >= exceptions2.length || (e1 < exceptions1.length && exceptions1[e1] <= exceptions2[e2])) {
+                position = exceptions1[e1];
+            } else {
+                position = exceptions2[e2];
+            }
+            while (e1 < exceptions1.length && exceptions1[e1] == position) {
+                e1++;
+            }
+            while (e2 < exceptions2.length && exceptions2[e2] == position) {
+                e2++;
+            }
+            if (position >= length) {
+                continue;
+            }
+            long bit = 1L << (2 * (position % PackedSequence.BASES_PER_LONG));
+            if (sequence1.charAt(position) != sequence2.charAt(position)) {
+                masks[position / PackedSequence.BASES_PER_LONG] |= bit;
+            } else {
+                masks[position / PackedSequence.BASES_PER_LONG] &= ~bit;
+            }
+        }
+        return masks;
+    }
+
+    /*
+     * The protein sequences are compared character by character: copying a String to compare it a word at a time
+     * costs more than the comparison itself
+     */
+    public static int countDifferences(String sequence1, String sequence2) {
+        int length = Math.min(sequence1.length(), sequence2.length());
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (sequence1.charAt(i) != sequence2.charAt(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static int[] getDifferencePositions(String sequence1, String sequence2) {
+        int length = Math.min(sequence1.length(), sequence2.length());
+        int[] positions = new int[countDifferences(sequence1, sequence2)];
+        int p = 0;
+        for (int i = 0; i < length; i++) {
+            if (sequence1.charAt(i) != sequence2.charAt(i)) {
+                positions[p++] = i;
+            }
+        }
+        return positions;
+    }
+
+    private static int countDifferences(char[] sequence1, char[] sequence2, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (sequence1[i] != sequence2[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int[] getDifferencePositions(char[] sequence1, char[] sequence2, int length) {
+        int[] positions = new int[countDifferences(sequence1, sequence2, length)];
+        int p = 0;
+        for (int i = 0; i < length; i++) {
+            if (sequence1[i] != sequence2[i]) {
+                positions[p++] = i;
+            }
+        }
+        return positions;
+    }
+
+    /*
+     * Benchmark on 400 nucleotides sequences (and their 133 amino acids translation) with 5% of mutations, compared
+     * to the comparison with one String per character we used before
+     */
+    public static void main(String[] args) {
+        int pairsNumber = 20000;
+        if (args.length > 0) {
+            pairsNumber = Integer.parseInt(args[0]);
+        }
+        Random random = new Random(1);
+        String[] parents = new String[pairsNumber];
+        String[] children = new String[pairsNumber];
+        String[] parentProteins = new String[pairsNumber];
+        String[] childProteins = new String[pairsNumber];
+        PackedSequence[] packedParents = new PackedSequence[pairsNumber];
+        PackedSequence[] packedChildren = new PackedSequence[pairsNumber];
+        for (int i = 0; i < pairsNumber; i++) {
+            char[] parent = new char[400];
+            char[] child = new char[400];
+            for (int j = 0; j < parent.length; j++) {
+                parent[j] = "ACGT".charAt(random.nextInt(4));
+                child[j] = random.nextInt(20) == 0 ? "ACGT-N".charAt(random.nextInt(6)) : parent[j];
+            }
+            parents[i] = new String(parent);
+            children[i] = new String(child);
+            parentProteins[i] = Translator.translate(parents[i], true);
+            childProteins[i] = Translator.translate(children[i], true);
+            packedParents[i] = PackedSequence.pack(parents[i]);
+            packedChildren[i] = PackedSequence.pack(children[i]);
+        }
+        for (int round = 0; round < 5; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < pairsNumber; i++) {
+                for (int z = 0; z < parents[i].length(); z++) {
+                    String nuc1 = Character.toString(parents[i].charAt(z));
+                    String nuc2 = Character.toString(children[i].charAt(z));
+                    if (!nuc1.equals(nuc2)) {
+                        checksum += z;
+                    }
+                }
+            }
+            long oldTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < pairsNumber; i++) {
+                for (int position : getDifferencePositions(packedParents[i], packedChildren[i])) {
+                    checksum -= position;
+                }
+            }
+            long packedTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < pairsNumber; i++) {
+                for (int z = 0; z < parentProteins[i].length(); z++) {
+                    String parentAA = String.valueOf(parentProteins[i].charAt(z));
+                    String nodeAA = String.valueOf(childProteins[i].charAt(z));
+                    if (!parentAA.equals(nodeAA)) {
+                        checksum += z;
+                    }
+                }
+            }
+            long oldProteinTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < pairsNumber; i++) {
+                for (int position : getDifferencePositions(parentProteins[i], childProteins[i])) {
+                    checksum -= position;
+                }
+            }
+            long proteinTime = System.nanoTime() - start;
+            System.out.println("round " + round + " (checksum " + checksum + "): nucleotides "
+                    + oldTime / pairsNumber + " ns -> " + packedTime / pairsNumber + " ns per pair, proteins "
+                    + oldProteinTime / pairsNumber + " ns -> " + proteinTime / pairsNumber + " ns per pair");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+
+/**
+ * @author Mathilde This interface has the drawing operations used by the panels which can be exported (see
+ *         JPanelToExport). The same drawing code can then draw on the screen or in a PNG tile (Graphics2DCanvas), or
+ *         write a vector image (SvgCanvas, PdfCanvas). The methods have the same meaning as in Graphics2D.
+ */
+public interface DrawingCanvas {
+
+    void setColor(Color color);
+
+    void setFont(Font font);
+
+    Font getFont();
+
+    void setStroke(BasicStroke stroke);
+
+    /*
+     * Used to measure the Strings before they are drawn
+     */
+    FontRenderContext getFontRenderContext();
+
+    /*
+     * The part to draw, or null to draw everything
+     */
+    Rectangle getClipBounds();
+
+    void fillRect(int x, int y, int width, int height);
+
+    void drawRect(int x, int y, int width, int height);
+
+    void fillOval(int x, int y, int width, int height);
+
+    void drawOval(int x, int y, int width, int height);
+
+    void fillPolygon(Polygon polygon);
+
+    void drawPolygon(Polygon polygon);
+
+    void drawLine(int x1, int y1, int x2, int y2);
+
+    void drawString(String text, int x, int y);
+
+    /*
+     * The text is rotated by 90 degrees clockwise (it is read from the top to the bottom), (x, y) is the start of its
+     * baseline
+     */
+    void drawVerticalString(String text, int x, int y);
+}
@@ -15,6 +15,7 @@
  */
 package ch.irb.saveImages;
 
+import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
@@ -99,8 +100,20 @@ public class ExportAsEPSListener implements ActionListener {
             g2d.setGraphicContext(new org.apache.xmlgraphics.java2d.GraphicContext());
 
             // Set up the document size
-            g2d.setupDocument(out, jPanel.getWidth(), jPanel.getHeight());
-            jPanel.print(g2d);
+            if (jPanel instanceof JPanelToExport) {
+                // the panel draws itself entirely, even what is not visible on the screen
+                JPanelToExport panelToExport = (JPanelToExport) jPanel;
+                Dimension size = panelToExport.getSizeToExport();
+                try {
+                    g2d.setupDocument(out, (int) Math.ceil(size.getWidth()), (int) Math.ceil(size.getHeight()));
+                    panelToExport.drawToExport(new Graphics2DCanvas(g2d));
+                } finally {
+                    panelToExport.exportFinished();
+                }
+            } else {
+                g2d.setupDocument(out, jPanel.getWidth(), jPanel.getHeight());
+                jPanel.print(g2d);
+            }
 
             // Cleanup
             g2d.finish();
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import org.apache.log4j.Logger;
+
+import ch.irb.currentDirectory.GetSetCurrentDirectory;
+
+/**
+ * @author Mathilde this class exports a JPanelToExport as a SVG or a PDF image. The image is written from the model
+ *         of the panel (not by painting the Swing component), in a background thread, directly into the file.
+ */
+public class ExportAsVectorListener implements ActionListener {
+    static Logger logger = Logger.getLogger(ExportAsVectorListener.class);
+    public static final String SVG = "svg";
+    public static final String PDF = "pdf";
+    private JPanelToExport panelToExport;
+    private Component parent;
+    private GetSetCurrentDirectory getSetCurrentDir;
+    private String format;
+
+    /*
+     * The format is SVG or PDF
+     */
+    public ExportAsVectorListener(JPanelToExport panelToExport, GetSetCurrentDirectory getSetCurrentDir,
+                                  String format) {
+        this.panelToExport = panelToExport;
+        if (panelToExport instanceof Component) {
+            parent = (Component) panelToExport;
+        }
+        this.getSetCurrentDir = getSetCurrentDir;
+        this.format = format;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent arg0) {
+        final String extension = "." + format;
+        final JFileChooser fileChooser = new JFileChooser() {
+            public void approveSelection() {
+                File f = getSelectedFile();
+                if (!f.getName().toLowerCase().endsWith(extension)) {
+                    f = new File(f.getAbsolutePath() + extension);
+                }
+                if (f.exists() && getDialogType() == SAVE_DIALOG) {
+                    int result = JOptionPane.showConfirmDialog(this, "The file exists, overwrite?", "Existing file",
+                            JOptionPane.YES_NO_CANCEL_OPTION);
+                    switch (result) {
+                        case JOptionPane.YES_OPTION:
+                            super.approveSelection();
+                            return;
+                        case JOptionPane.CANCEL_OPTION:
+                            cancelSelection();
+                            return;
+                        default:
+                            return;
+                    }
+                }
+                super.approveSelection();
+            }
+        };
+        fileChooser.setCurrentDirectory(getSetCurrentDir.getCurrentDirectory());
+        fileChooser.setFileFilter(new FileNameExtensionFilter(format.toUpperCase() + " files", format));
+        fileChooser.setDialogTitle("Save as " + extension);
+        int choix = fileChooser.showSaveDialog(parent);
+        if (choix != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        getSetCurrentDir.setCurrentDirectory(fileChooser.getCurrentDirectory());
+        File file = fileChooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(extension)) {
+            file = new File(file.getAbsolutePath() + extension);
+        }
+        export(file);
+    }
+
+    private void export(final File file) {
+        // the layout is computed here, in the thread of the GUI, and kept until exportFinished
+        final Dimension size = panelToExport.getSizeToExport();
+        if (parent != null) {
+            parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        }
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                write(file, size);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                panelToExport.exportFinished();
+                if (parent != null) {
+                    parent.setCursor(Cursor.getDefaultCursor());
+                }
+                try {
+                    get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(parent, "The image " + file.getName() + " could not be saved.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    /*
+     * The image is written while the panel is drawn
+     */
+    public void write(File file, Dimension size) throws Exception {
+        long start = System.currentTimeMillis();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            VectorCanvas canvas;
+            if (format.equals(PDF)) {
+                canvas = new PdfCanvas(out, size);
+            } else {
+                canvas = new SvgCanvas(out, size);
+            }
+            panelToExport.drawToExport(canvas);
+            canvas.finish();
+        } finally {
+            out.close();
+        }
+        logger.info("Image " + file.getName() + " written in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
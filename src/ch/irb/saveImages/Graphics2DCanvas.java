@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+
+/**
+ * @author Mathilde This class draws on a Graphics2D: the screen, a PNG tile...
+ */
+public class Graphics2DCanvas implements DrawingCanvas {
+    private Graphics2D g2d;
+
+    public Graphics2DCanvas(Graphics2D g2d) {
+        this.g2d = g2d;
+    }
+
+    public void setColor(Color color) {
+        g2d.setColor(color);
+    }
+
+    public void setFont(Font font) {
+        g2d.setFont(font);
+    }
+
+    public Font getFont() {
+        return g2d.getFont();
+    }
+
+    public void setStroke(BasicStroke stroke) {
+        g2d.setStroke(stroke);
+    }
+
+    public FontRenderContext getFontRenderContext() {
+        return g2d.getFontMetrics().getFontRenderContext();
+    }
+
+    public Rectangle getClipBounds() {
+        return g2d.getClipBounds();
+    }
+
+    public void fillRect(int x, int y, int width, int height) {
+        g2d.fillRect(x, y, width, height);
+    }
+
+    public void drawRect(int x, int y, int width, int height) {
+        g2d.drawRect(x, y, width, height);
+    }
+
+    public void fillOval(int x, int y, int width, int height) {
+        g2d.fillOval(x, y, width, height);
+    }
+
+    public void drawOval(int x, int y, int width, int height) {
+        g2d.drawOval(x, y, width, height);
+    }
+
+    public void fillPolygon(Polygon polygon) {
+        g2d.fillPolygon(polygon);
+    }
+
+    public void drawPolygon(Polygon polygon) {
+        g2d.drawPolygon(polygon);
+    }
+
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        g2d.drawLine(x1, y1, x2, y2);
+    }
+
+    public void drawString(String text, int x, int y) {
+        g2d.drawString(text, x, y);
+    }
+
+    public void drawVerticalString(String text, int x, int y) {
+        AffineTransform transform = g2d.getTransform();
+        g2d.translate(x, y);
+        g2d.rotate(Math.PI / 2);
+        g2d.drawString(text, 0, 0);
+        g2d.setTransform(transform);
+    }
+}
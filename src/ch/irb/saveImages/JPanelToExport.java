@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.Dimension;
+
+/**
+ * @author Mathilde This interface is implemented by the panels which can draw themselves outside of the screen, piece
+ *         by piece, to be exported as big images (see TiledPngWriter) or as vector images (see SvgCanvas and
+ *         PdfCanvas).
+ */
+public interface JPanelToExport {
+
+    /*
+     * The size of the drawing at scale 1, this method is called (in the thread of the GUI) before the drawing starts.
+     * What is drawn must not change until exportFinished is called
+     */
+    Dimension getSizeToExport();
+
+    /*
+     * Called in the thread of the GUI when the drawing started by getSizeToExport is finished, failed or was canceled
+     */
+    void exportFinished();
+
+    /*
+     * Draw what is in the clip of the canvas (everything if there is no clip), with all the details whatever the zoom
+     * of the panel. This method can be called by several threads at the same time
+     */
+    void drawToExport(DrawingCanvas canvas);
+}
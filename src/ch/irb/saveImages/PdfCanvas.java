@@ -0,0 +1,362 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * @author Mathilde This class writes the drawing as a PDF document of one page. The page content is compressed into
+ *         the stream while it is drawn. The ellipses and the polygons (i.e. the nodes) are written once for each size,
+ *         as form XObjects, and reused at each position with their color. The texts use the standard fonts of PDF
+ *         (Helvetica, Times, Courier), so the document does not embed any font. The objects which are only known at
+ *         the end (the fonts, the shapes and the resources of the page) are written after the page content.
+ */
+public class PdfCanvas extends VectorCanvas {
+    // the biggest size of a page in the PDF specification, the bigger drawings are scaled down
+    private static final float MAX_PAGE_SIZE = 14400;
+    // to draw a quarter of ellipse with a Bezier curve
+    private static final double KAPPA = 0.5522847498;
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+    private static final int PAGE = 3;
+    private static final int RESOURCES = 4;
+    private static final int CONTENT = 5;
+    private static final int CONTENT_LENGTH = 6;
+
+    private CountingOutputStream out;
+    private Deflater deflater = new Deflater();
+    private DeflaterOutputStream compressedContent;
+    private PrintWriter content;
+    private long contentStart;
+    private ArrayList<Long> offsets = new ArrayList<Long>();
+    // the base font -> its name in the resources of the page
+    private LinkedHashMap<String, String> fonts = new LinkedHashMap<String, String>();
+    // the drawing of a shape -> the shape, with its name in the resources of the page
+    private LinkedHashMap<String, Shape> shapes = new LinkedHashMap<String, Shape>();
+    // what is set in the graphic state of the PDF, null when it has to be set
+    private Color fillColor;
+    private Color strokeColor;
+    private BasicStroke pdfStroke;
+
+    public PdfCanvas(OutputStream outputStream, Dimension size) throws IOException {
+        super((int) Math.ceil(size.getWidth()), (int) Math.ceil(size.getHeight()));
+        out = new CountingOutputStream(outputStream);
+        double scale = Math.min(1, MAX_PAGE_SIZE / Math.max(width, height));
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        startObject(CATALOG);
+        write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+        startObject(PAGES);
+        write("<< /Type /Pages /Kids [" + PAGE + " 0 R] /Count 1 >>\nendobj\n");
+        startObject(PAGE);
+        write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + format(width * scale) + " "
+                + format(height * scale) + "] /Resources " + RESOURCES + " 0 R /Contents " + CONTENT + " 0 R >>\n"
+                + "endobj\n");
+        startObject(CONTENT);
+        write("<< /Length " + CONTENT_LENGTH + " 0 R /Filter /FlateDecode >>\nstream\n");
+        out.flush();
+        contentStart = out.getCount();
+        compressedContent = new DeflaterOutputStream(out, deflater, 1 << 16);
+        content = new PrintWriter(new OutputStreamWriter(compressedContent, StandardCharsets.ISO_8859_1));
+        // the y axis goes down as in Java, and the white background
+        content.print(format(scale) + " 0 0 " + format(-scale) + " 0 " + format(height * scale) + " cm\n");
+        content.print("1 g 0 0 " + width + " " + height + " re f\n");
+    }
+
+    public void fillRect(int x, int y, int width, int height) {
+        setFillColor();
+        content.print(x + " " + y + " " + width + " " + height + " re f\n");
+    }
+
+    public void drawRect(int x, int y, int width, int height) {
+        setStrokeColorAndStroke();
+        content.print(x + " " + y + " " + width + " " + height + " re S\n");
+    }
+
+    public void fillOval(int x, int y, int width, int height) {
+        setFillColor();
+        drawShape(x, y, width, height, getEllipse(width, height) + "f\n");
+    }
+
+    public void drawOval(int x, int y, int width, int height) {
+        setStrokeColorAndStroke();
+        drawShape(x, y, width, height, getEllipse(width, height) + "S\n");
+    }
+
+    public void fillPolygon(Polygon polygon) {
+        setFillColor();
+        Rectangle bounds = polygon.getBounds();
+        drawShape(bounds.x, bounds.y, bounds.width, bounds.height, getPath(polygon, bounds) + " f\n");
+    }
+
+    public void drawPolygon(Polygon polygon) {
+        setStrokeColorAndStroke();
+        Rectangle bounds = polygon.getBounds();
+        drawShape(bounds.x, bounds.y, bounds.width, bounds.height, getPath(polygon, bounds) + " S\n");
+    }
+
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        setStrokeColorAndStroke();
+        content.print(x1 + " " + y1 + " m " + x2 + " " + y2 + " l S\n");
+    }
+
+    /*
+     * The text is flipped back because the y axis goes down
+     */
+    public void drawString(String text, int x, int y) {
+        setFillColor();
+        content.print("BT /" + getFontName() + " " + format(font.getSize2D()) + " Tf 1 0 0 -1 " + x + " " + y
+                + " Tm (" + escape(text) + ") Tj ET\n");
+    }
+
+    public void drawVerticalString(String text, int x, int y) {
+        setFillColor();
+        content.print("BT /" + getFontName() + " " + format(font.getSize2D()) + " Tf 0 1 1 0 " + x + " " + y
+                + " Tm (" + escape(text) + ") Tj ET\n");
+    }
+
+    public void finish() throws IOException {
+        content.flush();
+        if (content.checkError()) {
+            throw new IOException("The PDF document could not be written");
+        }
+        compressedContent.finish();
+        deflater.end();
+        long contentLength = out.getCount() - contentStart;
+        write("\nendstream\nendobj\n");
+        startObject(CONTENT_LENGTH);
+        write(contentLength + "\nendobj\n");
+        StringBuilder fontResources = new StringBuilder();
+        for (Entry<String, String> font : fonts.entrySet()) {
+            int number = startObject(0);
+            write("<< /Type /Font /Subtype /Type1 /BaseFont /" + font.getKey()
+                    + " /Encoding /WinAnsiEncoding >>\nendobj\n");
+            fontResources.append(" /").append(font.getValue()).append(' ').append(number).append(" 0 R");
+        }
+        StringBuilder shapeResources = new StringBuilder();
+        for (Shape shape : shapes.values()) {
+            int number = startObject(0);
+            // the margin is for the stroke, which is on both sides of the path
+            write("<< /Type /XObject /Subtype /Form /BBox [-10 -10 " + (shape.width + 10) + " " + (shape.height + 10)
+                    + "] /Length " + shape.drawing.length() + " >>\nstream\n" + shape.drawing
+                    + "endstream\nendobj\n");
+            shapeResources.append(" /").append(shape.name).append(' ').append(number).append(" 0 R");
+        }
+        startObject(RESOURCES);
+        write("<< /ProcSet [/PDF /Text] /Font <<" + fontResources + " >> /XObject <<" + shapeResources
+                + " >> >>\nendobj\n");
+        long xrefStart = out.getCount();
+        write("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+        for (Long offset : offsets) {
+            write(String.format("%010d 00000 n \n", offset));
+        }
+        write("trailer\n<< /Size " + (offsets.size() + 1) + " /Root " + CATALOG + " 0 R >>\nstartxref\n" + xrefStart
+                + "\n%%EOF\n");
+        out.flush();
+    }
+
+    /*
+     * The shapes are drawn at the origin in their form XObject, they take the current color and stroke
+     */
+    private void drawShape(int x, int y, int width, int height, String drawing) {
+        Shape shape = shapes.get(drawing);
+        if (shape == null) {
+            shape = new Shape("X" + (shapes.size() + 1), drawing, width, height);
+            shapes.put(drawing, shape);
+        }
+        content.print("q 1 0 0 1 " + x + " " + y + " cm /" + shape.name + " Do Q\n");
+    }
+
+    private static String getEllipse(int width, int height) {
+        double rx = width / 2.0;
+        double ry = height / 2.0;
+        double kx = KAPPA * rx;
+        double ky = KAPPA * ry;
+        return format(2 * rx) + " " + format(ry) + " m\n"
+                + format(2 * rx) + " " + format(ry + ky) + " " + format(rx + kx) + " " + format(2 * ry) + " "
+                + format(rx) + " " + format(2 * ry) + " c\n"
+                + format(rx - kx) + " " + format(2 * ry) + " 0 " + format(ry + ky) + " 0 " + format(ry) + " c\n"
+                + "0 " + format(ry - ky) + " " + format(rx - kx) + " 0 " + format(rx) + " 0 c\n"
+                + format(rx + kx) + " 0 " + format(2 * rx) + " " + format(ry - ky) + " " + format(2 * rx) + " "
+                + format(ry) + " c h\n";
+    }
+
+    private static String getPath(Polygon polygon, Rectangle bounds) {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < polygon.npoints; i++) {
+            path.append(polygon.xpoints[i] - bounds.x).append(' ').append(polygon.ypoints[i] - bounds.y);
+            path.append(i == 0 ? " m " : " l ");
+        }
+        return path.append('h').toString();
+    }
+
+    private void setFillColor() {
+        if (!color.equals(fillColor)) {
+            fillColor = color;
+            content.print(getRGB(color) + " rg\n");
+        }
+    }
+
+    private void setStrokeColorAndStroke() {
+        if (!color.equals(strokeColor)) {
+            strokeColor = color;
+            content.print(getRGB(color) + " RG\n");
+        }
+        if (!stroke.equals(pdfStroke)) {
+            pdfStroke = stroke;
+            // the caps and joins have the same codes in Java and in PDF
+            content.print(format(stroke.getLineWidth()) + " w " + stroke.getEndCap() + " J " + stroke.getLineJoin()
+                    + " j " + format(stroke.getMiterLimit()) + " M [");
+            if (stroke.getDashArray() != null) {
+                for (float dash : stroke.getDashArray()) {
+                    content.print(" " + format(dash));
+                }
+            }
+            content.print(" ] " + format(stroke.getDashPhase()) + " d\n");
+        }
+    }
+
+    private static String getRGB(Color color) {
+        return format(color.getRed() / 255.0) + " " + format(color.getGreen() / 255.0) + " "
+                + format(color.getBlue() / 255.0);
+    }
+
+    /*
+     * The fonts of the computer are replaced by the standard font which is the closest
+     */
+    private String getFontName() {
+        String name = font.getName().toLowerCase();
+        String baseFont;
+        if (name.contains("courier") || name.contains("mono") || name.equals("dialoginput")) {
+            baseFont = "Courier" + getStyleSuffix("Oblique");
+        } else if (name.contains("times") || name.equals("serif")) {
+            baseFont = font.isBold() || font.isItalic() ? "Times-" + (font.isBold() ? "Bold" : "")
+                    + (font.isItalic() ? "Italic" : "") : "Times-Roman";
+        } else {
+            baseFont = "Helvetica" + getStyleSuffix("Oblique");
+        }
+        String fontName = fonts.get(baseFont);
+        if (fontName == null) {
+            fontName = "F" + (fonts.size() + 1);
+            fonts.put(baseFont, fontName);
+        }
+        return fontName;
+    }
+
+    private String getStyleSuffix(String italic) {
+        if (!font.isBold() && !font.isItalic()) {
+            return "";
+        }
+        return "-" + (font.isBold() ? "Bold" : "") + (font.isItalic() ? italic : "");
+    }
+
+    /*
+     * The characters which are not in the encoding of the standard fonts are replaced by '?'
+     */
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20 || (c >= 0x7F && c < 0xA0) || c > 0xFF) {
+                escaped.append('?');
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /*
+     * The objects are numbered in the order of the calls, except the fixed ones (number > 0)
+     */
+    private int startObject(int number) throws IOException {
+        out.flush();
+        if (number == 0) {
+            number = Math.max(offsets.size(), CONTENT_LENGTH) + 1;
+        }
+        while (offsets.size() < number) {
+            offsets.add(0L);
+        }
+        offsets.set(number - 1, out.getCount());
+        write(number + " 0 obj\n");
+        return number;
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * A shape drawn at the origin, in a box of width x height
+     */
+    private static class Shape {
+        private String name;
+        private String drawing;
+        private int width;
+        private int height;
+
+        Shape(String name, String drawing, int width, int height) {
+            this.name = name;
+            this.drawing = drawing;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * To know the position of the objects in the file
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
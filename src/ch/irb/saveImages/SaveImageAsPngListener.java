@@ -94,6 +94,11 @@ public class SaveImageAsPngListener implements ActionListener {
             }
         }
 
+        if (container instanceof JPanelToExport) {
+            saveInTiles((JPanelToExport) container, file);
+            return;
+        }
+
         final String formatName = "png";
 
         BufferedImage image = new BufferedImage(container.getWidth(), container.getHeight(), // igTreePanel
@@ -141,6 +146,52 @@ public class SaveImageAsPngListener implements ActionListener {
     }
 
 
+    /*
+     * The panels which can be drawn piece by piece (i.e. the tree) are saved at the resolution chosen by the user, in
+     * a background thread, without having the whole image in memory
+     */
+    private void saveInTiles(final JPanelToExport panelToExport, final File file) {
+        String input = JOptionPane.showInputDialog(container, "Resolution of the image (dpi):", "300");
+        if (input == null) {
+            return;
+        }
+        double dpi;
+        try {
+            dpi = Double.parseDouble(input.trim());
+        } catch (NumberFormatException ex) {
+            dpi = 0;
+        }
+        if (dpi <= 0) {
+            JOptionPane.showMessageDialog(container, "The resolution you entered is not a valid number.",
+                    "Wrong resolution", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final TiledPngWriter tiledPngWriter = new TiledPngWriter(panelToExport, dpi);
+        final ProgressMonitor progressMonitor = new ProgressMonitor(container, "Saving " + file.getName() + " ("
+                + tiledPngWriter.getWidth() + "x" + tiledPngWriter.getHeight() + " pixels)", null, 0, 100);
+        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                return tiledPngWriter.write(file, progressMonitor);
+            }
+
+            @Override
+            protected void done() {
+                // the tiles are no longer drawn (see TiledPngWriter.write)
+                panelToExport.exportFinished();
+                progressMonitor.close();
+                try {
+                    get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(container, "The image " + file.getName() + " could not be saved.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
+
     private void setDPI(IIOMetadata metadata) throws IIOInvalidTreeException {
 
         // for PMG, it's dots per millimeter we set the DPI to 1000
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * @author Mathilde This class writes the drawing as a SVG image. The styles (color, stroke, font) are written once as
+ *         CSS classes, the first time they are used, and the elements only refer to their class. The polygons (i.e.
+ *         the hexagons of the nodes) are defined once for each size and reused at each position.
+ */
+public class SvgCanvas extends VectorCanvas {
+    private PrintWriter out;
+    private HashMap<String, String> styleToClass = new HashMap<String, String>();
+    private HashMap<String, String> polygonToId = new HashMap<String, String>();
+
+    public SvgCanvas(OutputStream outputStream, Dimension size) {
+        super((int) Math.ceil(size.getWidth()), (int) Math.ceil(size.getHeight()));
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8),
+                1 << 16));
+        out.print("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.print("<svg xmlns=\"http://www.w3.org/2000/svg\""
+                + " xmlns:xlink=\"http://www.w3.org/1999/xlink\" version=\"1.1\" width=\"" + width + "\" height=\""
+                + height + "\" viewBox=\"0 0 " + width + " " + height + "\" xml:space=\"preserve\">\n");
+        out.print("<rect width=\"" + width + "\" height=\"" + height + "\" fill=\"white\"/>\n");
+    }
+
+    public void fillRect(int x, int y, int width, int height) {
+        out.print("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\" class=\""
+                + getFillClass() + "\"/>\n");
+    }
+
+    public void drawRect(int x, int y, int width, int height) {
+        out.print("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\" class=\""
+                + getStrokeClass() + "\"/>\n");
+    }
+
+    public void fillOval(int x, int y, int width, int height) {
+        writeEllipse(x, y, width, height, getFillClass());
+    }
+
+    public void drawOval(int x, int y, int width, int height) {
+        writeEllipse(x, y, width, height, getStrokeClass());
+    }
+
+    public void fillPolygon(Polygon polygon) {
+        writePolygon(polygon, getFillClass());
+    }
+
+    public void drawPolygon(Polygon polygon) {
+        writePolygon(polygon, getStrokeClass());
+    }
+
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        out.print("<line x1=\"" + x1 + "\" y1=\"" + y1 + "\" x2=\"" + x2 + "\" y2=\"" + y2 + "\" class=\""
+                + getStrokeClass() + "\"/>\n");
+    }
+
+    public void drawString(String text, int x, int y) {
+        out.print("<text x=\"" + x + "\" y=\"" + y + "\" class=\"" + getTextClass() + "\">" + escape(text)
+                + "</text>\n");
+    }
+
+    public void drawVerticalString(String text, int x, int y) {
+        out.print("<text x=\"" + x + "\" y=\"" + y + "\" transform=\"rotate(90 " + x + " " + y + ")\" class=\""
+                + getTextClass() + "\">" + escape(text) + "</text>\n");
+    }
+
+    public void finish() throws IOException {
+        out.print("</svg>\n");
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("The SVG image could not be written");
+        }
+    }
+
+    private void writeEllipse(int x, int y, int width, int height, String styleClass) {
+        out.print("<ellipse cx=\"" + format(x + width / 2.0) + "\" cy=\"" + format(y + height / 2.0) + "\" rx=\""
+                + format(width / 2.0) + "\" ry=\"" + format(height / 2.0) + "\" class=\"" + styleClass + "\"/>\n");
+    }
+
+    /*
+     * The points of the polygon are defined relatively to its bounds, the polygons with the same shape share the
+     * same definition
+     */
+    private void writePolygon(Polygon polygon, String styleClass) {
+        Rectangle bounds = polygon.getBounds();
+        StringBuilder points = new StringBuilder();
+        for (int i = 0; i < polygon.npoints; i++) {
+            if (i > 0) {
+                points.append(' ');
+            }
+            points.append(polygon.xpoints[i] - bounds.x).append(',').append(polygon.ypoints[i] - bounds.y);
+        }
+        String id = polygonToId.get(points.toString());
+        if (id == null) {
+            id = "p" + polygonToId.size();
+            polygonToId.put(points.toString(), id);
+            out.print("<defs><polygon id=\"" + id + "\" points=\"" + points + "\"/></defs>\n");
+        }
+        out.print("<use xlink:href=\"#" + id + "\" x=\"" + bounds.x + "\" y=\"" + bounds.y + "\" class=\""
+                + styleClass + "\"/>\n");
+    }
+
+    private String getFillClass() {
+        return getStyleClass("fill:" + toHexa(color) + getOpacity("fill-opacity") + ";stroke:none");
+    }
+
+    private String getStrokeClass() {
+        StringBuilder style = new StringBuilder("fill:none;stroke:" + toHexa(color) + getOpacity("stroke-opacity"));
+        style.append(";stroke-width:").append(format(stroke.getLineWidth()));
+        if (stroke.getEndCap() == BasicStroke.CAP_SQUARE) {
+            style.append(";stroke-linecap:square");
+        } else if (stroke.getEndCap() == BasicStroke.CAP_ROUND) {
+            style.append(";stroke-linecap:round");
+        }
+        if (stroke.getLineJoin() == BasicStroke.JOIN_ROUND) {
+            style.append(";stroke-linejoin:round");
+        } else if (stroke.getLineJoin() == BasicStroke.JOIN_BEVEL) {
+            style.append(";stroke-linejoin:bevel");
+        }
+        float[] dash = stroke.getDashArray();
+        if (dash != null) {
+            style.append(";stroke-dasharray:");
+            for (int i = 0; i < dash.length; i++) {
+                style.append(i == 0 ? "" : ",").append(format(dash[i]));
+            }
+            if (stroke.getDashPhase() != 0) {
+                style.append(";stroke-dashoffset:").append(format(stroke.getDashPhase()));
+            }
+        }
+        return getStyleClass(style.toString());
+    }
+
+    private String getTextClass() {
+        StringBuilder style = new StringBuilder("fill:" + toHexa(color) + getOpacity("fill-opacity"));
+        style.append(";font-family:").append(getFontFamily(font));
+        style.append(";font-size:").append(format(font.getSize2D())).append("px");
+        if (font.isBold()) {
+            style.append(";font-weight:bold");
+        }
+        if (font.isItalic()) {
+            style.append(";font-style:italic");
+        }
+        return getStyleClass(style.toString());
+    }
+
+    /*
+     * A new style is written in its own style element before the first element which uses it
+     */
+    private String getStyleClass(String style) {
+        String styleClass = styleToClass.get(style);
+        if (styleClass == null) {
+            styleClass = "s" + styleToClass.size();
+            styleToClass.put(style, styleClass);
+            out.print("<style type=\"text/css\">." + styleClass + "{" + style + "}</style>\n");
+        }
+        return styleClass;
+    }
+
+    private String getOpacity(String property) {
+        if (color.getAlpha() == 255) {
+            return "";
+        }
+        return ";" + property + ":" + format(color.getAlpha() / 255.0);
+    }
+
+    private static String toHexa(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    /*
+     * The logical fonts of Java are replaced by the generic families of CSS
+     */
+    private static String getFontFamily(Font font) {
+        String name = font.getName();
+        if (name.equals(Font.DIALOG) || name.equals(Font.SANS_SERIF)) {
+            return "sans-serif";
+        } else if (name.equals(Font.SERIF)) {
+            return "serif";
+        } else if (name.equals(Font.MONOSPACED) || name.equals(Font.DIALOG_INPUT)) {
+            return "monospace";
+        }
+        return "'" + name.replace("'", "") + "',sans-serif";
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                default:
+                    // the control characters are not allowed in XML
+                    escaped.append(c < 0x20 && c != '\t' ? ' ' : c);
+            }
+        }
+        return escaped.toString();
+    }
+}
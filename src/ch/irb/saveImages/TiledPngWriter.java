@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Mathilde This class saves a JPanelToExport as a PNG image of any resolution without having the whole image
+ *         in memory. The image is drawn in tiles by several threads, one band of tiles at a time (the next band is
+ *         drawn while the current one is written), and the rows of pixels are compressed into the PNG file as soon as
+ *         their band is drawn. The size is taken from getSizeToExport when the writer is created, the caller calls
+ *         exportFinished when write returns.
+ */
+public class TiledPngWriter {
+    static Logger logger = Logger.getLogger(TiledPngWriter.class);
+    private static final int TILE_SIZE = 512;
+    // the maximum size of a band of tiles, a band has the width of the image
+    private static final long MAX_BAND_BYTES = 64L * 1024 * 1024;
+    private static final int MINI_BAND_HEIGHT = 16;
+    private static final byte[] PNG_SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    private JPanelToExport panelToExport;
+    private double scale;
+    private double dpi;
+    private int width;
+    private int height;
+    private int bandHeight;
+
+    /*
+     * The drawing of the panel is scaled to the resolution: 72 dpi is the size of the panel on the screen
+     */
+    public TiledPngWriter(JPanelToExport panelToExport, double dpi) {
+        this.panelToExport = panelToExport;
+        this.dpi = dpi;
+        this.scale = dpi / 72;
+        Dimension size = panelToExport.getSizeToExport();
+        width = Math.max(1, (int) Math.ceil(size.getWidth() * scale));
+        height = Math.max(1, (int) Math.ceil(size.getHeight() * scale));
+        bandHeight = (int) Math.min(TILE_SIZE, Math.max(MINI_BAND_HEIGHT, MAX_BAND_BYTES / (4L * width)));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /*
+     * Write the image, return false if the user canceled it (the file is then deleted). The progress monitor can be
+     * null
+     */
+    public boolean write(File file, final ProgressMonitor progressMonitor) throws Exception {
+        int threadsNumber = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threadsNumber);
+        Deflater deflater = new Deflater();
+        boolean isCanceled = false;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.write(PNG_SIGNATURE);
+            writeHeader(out);
+            DeflaterOutputStream pixels = new DeflaterOutputStream(new IdatOutputStream(out), deflater, 1 << 16);
+            byte[] row = new byte[1 + 3 * width]; // the first byte is the filter type (0 = none)
+            ArrayList<Future<BufferedImage>> nextBand = drawBand(executor, 0);
+            for (int bandY = 0; bandY < height; bandY += bandHeight) {
+                ArrayList<Future<BufferedImage>> band = nextBand;
+                if (bandY + bandHeight < height) {
+                    nextBand = drawBand(executor, bandY + bandHeight);
+                }
+                int rowsNumber = Math.min(bandHeight, height - bandY);
+                ArrayList<int[]> tiles = new ArrayList<int[]>();
+                for (Future<BufferedImage> tile : band) {
+                    tiles.add(((DataBufferInt) tile.get().getRaster().getDataBuffer()).getData());
+                }
+                for (int r = 0; r < rowsNumber; r++) {
+                    int b = 1;
+                    for (int t = 0; t < tiles.size(); t++) {
+                        int[] tile = tiles.get(t);
+                        int tileWidth = Math.min(TILE_SIZE, width - t * TILE_SIZE);
+                        for (int i = r * tileWidth, end = i + tileWidth; i < end; i++) {
+                            int rgb = tile[i];
+                            row[b++] = (byte) (rgb >> 16);
+                            row[b++] = (byte) (rgb >> 8);
+                            row[b++] = (byte) rgb;
+                        }
+                    }
+                    pixels.write(row);
+                }
+                if (progressMonitor != null) {
+                    if (progressMonitor.isCanceled()) {
+                        isCanceled = true;
+                        break;
+                    }
+                    final int progress = (int) (100L * (bandY + rowsNumber) / height);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            progressMonitor.setProgress(progress);
+                        }
+                    });
+                }
+            }
+            if (!isCanceled) {
+                pixels.finish();
+                pixels.flush();
+                writeChunk(out, "IEND", new byte[0]);
+            }
+        } finally {
+            // when the export is canceled or failed, we wait for the tiles which are still drawn: the panel can be
+            // changed as soon as this method returns
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            deflater.end();
+            out.close();
+        }
+        if (isCanceled) {
+            file.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * The tiles of one band are drawn in parallel, from left to right
+     */
+    private ArrayList<Future<BufferedImage>> drawBand(ExecutorService executor, final int bandY) {
+        ArrayList<Future<BufferedImage>> tiles = new ArrayList<Future<BufferedImage>>();
+        final int tileHeight = Math.min(bandHeight, height - bandY);
+        for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+            final int x = tileX;
+            final int tileWidth = Math.min(TILE_SIZE, width - tileX);
+            tiles.add(executor.submit(new Callable<BufferedImage>() {
+                public BufferedImage call() {
+                    BufferedImage tile = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g2d = tile.createGraphics();
+                    g2d.setColor(Color.white);
+                    g2d.fillRect(0, 0, tileWidth, tileHeight);
+                    g2d.setClip(0, 0, tileWidth, tileHeight);
+                    g2d.translate(-x, -bandY);
+                    g2d.scale(scale, scale);
+                    panelToExport.drawToExport(new Graphics2DCanvas(g2d));
+                    g2d.dispose();
+                    return tile;
+                }
+            }));
+        }
+        return tiles;
+    }
+
+    /*
+     * IHDR: 8 bits RGB, no interlace. pHYs: the resolution in pixels per meter
+     */
+    private void writeHeader(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8); // bit depth
+        data.writeByte(2); // color type RGB
+        data.writeByte(0); // compression
+        data.writeByte(0); // filter
+        data.writeByte(0); // interlace
+        writeChunk(out, "IHDR", header.toByteArray());
+        header.reset();
+        int pixelsPerMeter = (int) Math.round(dpi / 0.0254);
+        data.writeInt(pixelsPerMeter);
+        data.writeInt(pixelsPerMeter);
+        data.writeByte(1); // the unit is the meter
+        writeChunk(out, "pHYs", header.toByteArray());
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        writeChunk(out, type, data, data.length);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * The compressed pixels are cut in IDAT chunks of 64 KB
+     */
+    private static class IdatOutputStream extends OutputStream {
+        private DataOutputStream out;
+        private byte[] buffer = new byte[1 << 16];
+        private int size = 0;
+
+        IdatOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == buffer.length) {
+                flush();
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == buffer.length) {
+                    flush();
+                }
+                int toCopy = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, toCopy);
+                size += toCopy;
+                off += toCopy;
+                len -= toCopy;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk(out, "IDAT", buffer, size);
+                size = 0;
+            }
+        }
+    }
+}
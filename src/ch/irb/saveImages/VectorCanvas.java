@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.irb.saveImages;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * @author Mathilde This class keeps the state of the canvas (color, font, stroke) for the canvases which write a vector
+ *         image (SvgCanvas, PdfCanvas). The image is written in the stream while it is drawn, the whole drawing is
+ *         never kept in memory. Everything is drawn (there is no clip) and the Strings are measured without
+ *         anti-aliasing, as on the screen.
+ */
+public abstract class VectorCanvas implements DrawingCanvas {
+    private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, false, false);
+
+    protected int width;
+    protected int height;
+    protected Color color = Color.black;
+    protected Font font = new Font("Dialog", Font.PLAIN, 12);
+    protected BasicStroke stroke = new BasicStroke();
+
+    protected VectorCanvas(int width, int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+    }
+
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+    public void setFont(Font font) {
+        this.font = font;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public void setStroke(BasicStroke stroke) {
+        this.stroke = stroke;
+    }
+
+    public FontRenderContext getFontRenderContext() {
+        return FONT_RENDER_CONTEXT;
+    }
+
+    public Rectangle getClipBounds() {
+        return null;
+    }
+
+    /*
+     * Write the end of the image, the stream is not closed
+     */
+    public abstract void finish() throws IOException;
+
+    /*
+     * The numbers are written with a point, whatever the language of the computer
+     */
+    protected static String format(double value) {
+        if (value == Math.rint(value)) {
+            return Long.toString((long) value);
+        }
+        String number = String.format(Locale.US, "%.4f", value);
+        int end = number.length();
+        while (number.charAt(end - 1) == '0') {
+            end--;
+        }
+        return number.substring(0, end);
+    }
+}
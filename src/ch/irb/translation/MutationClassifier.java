@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 - Mathilde Foglierini Perez
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+   This class classifies the nucleotidic mutations between a parent and a child sequence: silent (same amino acid),
+   replacement (different amino acid) or stop gain (the child codon is a stop codon). The classes of all the pairs of
+   codons are computed once in a 64x64 table. Only the mutated codons are visited, they are found from the packed
+   sequences (see SequenceDiff) and looked up in the table with their 2 bits codes.
+ */
+package ch.irb.translation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.irb.nodes.PackedSequence;
+import ch.irb.nodes.SequenceDiff;
+
+public class MutationClassifier {
+
+    public static final byte NO_MUTATION = 0;
+    public static final byte SILENT = 1;
+    public static final byte REPLACEMENT = 2;
+    public static final byte STOP_GAIN = 3;
+
+    // number of positions of a word of the difference masks (see SequenceDiff.getDifferenceMasks)
+    private static final int POSITIONS_PER_MASK = 32;
+
+    // class of the mutation from a parent codon (first index) to a child codon (second index)
+    private static final byte[] CODON_PAIR_CLASSES = new byte[64 * 64];
+
+    static {
+        for (int parentCodon = 0; parentCodon < 64; parentCodon++) {
+            for (int childCodon = 0; childCodon < 64; childCodon++) {
+                CODON_PAIR_CLASSES[parentCodon * 64 + childCodon] = parentCodon == childCodon ? NO_MUTATION
+                        : getClass(Translator.getAminoAcid(parentCodon), Translator.getAminoAcid(childCodon));
+            }
+        }
+    }
+
+    private static byte getClass(char parentAminoAcid, char childAminoAcid) {
+        if (parentAminoAcid == childAminoAcid) {
+            return SILENT;
+        }
+        if (childAminoAcid == '*') {
+            return STOP_GAIN;
+        }
+        return REPLACEMENT;
+    }
+
+    /*
+     * The class of the mutation between 2 codons given as indexes (see Translator.getCodonIndex)
+     */
+    public static byte classifyCodons(int parentCodonIndex, int childCodonIndex) {
+        return CODON_PAIR_CLASSES[parentCodonIndex * 64 + childCodonIndex];
+    }
+
+    /*
+     * The class of each nucleotidic position of the child (NO_MUTATION if it is the same nucleotide than the parent).
+     * A position is classified with its codon in the reading frame of the sequence (see Codon)
+     */
+    public static Classification classify(PackedSequence parentSequence, PackedSequence childSequence) {
+        return classify(parentSequence, childSequence, null);
+    }
+
+    /*
+     * Same as above, the number of replacement and silent mutations of each region (positionToRegion gives the region
+     * of a position, it can be null) are counted in the same pass. Only the mutated positions are visited: they are
+     * read from the XOR of the packed words, and the codons are classified from their 2 bits codes
+     */
+    public static Classification classify(PackedSequence parentSequence, PackedSequence childSequence,
+                                          Map<Integer, String> positionToRegion) {
+        int length = Math.min(parentSequence.length(), childSequence.length());
+        Classification classification = new Classification(childSequence.length());
+        long[] masks = SequenceDiff.getDifferenceMasks(parentSequence, childSequence);
+        int codonStart = -1;
+        byte codonClass = NO_MUTATION;
+        for (int w = 0; w < masks.length; w++) {
+            long mask = masks[w];
+            while (mask != 0) {
+                int position = w * POSITIONS_PER_MASK + (Long.numberOfTrailingZeros(mask) >>> 1);
+                mask &= mask - 1;
+                // the positions are sorted, so a codon with several mutations is classified once
+                if (position - position % 3 != codonStart) {
+                    codonStart = position - position % 3;
+                    codonClass = classifyCodon(parentSequence, childSequence, codonStart, length);
+                }
+                String region = positionToRegion == null ? null : positionToRegion.get(position);
+                classification.add(position, codonClass, region);
+            }
+        }
+        return classification;
+    }
+
+    private static byte classifyCodon(PackedSequence parent, PackedSequence child, int start, int length) {
+        if (start + 3 > length) {
+            // the last codon is not complete
+            return classifyIncompleteCodon(parent.toString(), child.toString(), start);
+        }
+        int parentCodon = parent.getCodonIndex(start);
+        int childCodon = child.getCodonIndex(start);
+        if (parentCodon >= 0 && childCodon >= 0) {
+            return CODON_PAIR_CLASSES[parentCodon * 64 + childCodon];
+        }
+        // gaps, IUPAC code...
+        char parentAminoAcid = Translator.translateCodon(parent.charAt(start), parent.charAt(start + 1),
+                parent.charAt(start + 2));
+        char childAminoAcid = Translator.translateCodon(child.charAt(start), child.charAt(start + 1),
+                child.charAt(start + 2));
+        return getClass(parentAminoAcid, childAminoAcid);
+    }
+
+    private static byte classifyIncompleteCodon(String parent, String child, int start) {
+        String parentAminoAcid = Translator.translate(new Codon(parent, start).getCodon(), true);
+        String childAminoAcid = Translator.translate(new Codon(child, start).getCodon(), true);
+        if (parentAminoAcid.equals(childAminoAcid)) {
+            return SILENT;
+        }
+        return REPLACEMENT;
+    }
+
+    /*
+     * Replacement and stop gain are both counted as replacement mutations (R), the others as silent (S)
+     */
+    public static boolean isReplacement(byte mutationClass) {
+        return mutationClass == REPLACEMENT || mutationClass == STOP_GAIN;
+    }
+
+    /**
+     * The result of a classification: the class of each position and the number of replacement and silent mutations
+     * {R, S} of each region
+     */
+    public static class Classification {
+
+        private final byte[] classes;
+        private final HashMap<String, int[]> regionToCounts = new HashMap<String, int[]>();
+
+        private Classification(int length) {
+            classes = new byte[length];
+        }
+
+        private void add(int position, byte mutationClass, String region) {
+            classes[position] = mutationClass;
+            int[] counts = regionToCounts.get(region);
+            if (counts == null) {
+                counts = new int[2];
+                regionToCounts.put(region, counts);
+            }
+            counts[isReplacement(mutationClass) ? 0 : 1]++;
+        }
+
+        public byte[] getClasses() {
+            return classes;
+        }
+
+        public byte getMutationClass(int position) {
+            return classes[position];
+        }
+
+        /*
+         * The number of replacement and silent mutations {R, S} of the region, {0, 0} if it has no mutation
+         */
+        public int[] getReplacementsAndSilents(String region) {
+            int[] counts = regionToCounts.get(region);
+            if (counts == null) {
+                return new int[2];
+            }
+            return counts.clone();
+        }
+    }
+}
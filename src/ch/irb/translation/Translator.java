@@ -16,125 +16,187 @@
 
 package ch.irb.translation;
 
-import java.util.HashMap;
-
-import javax.swing.JFrame;
-import javax.swing.JOptionPane;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 
 /**
- * @author Mathilde This class take the DNA sequence and translates it into a protein sequence
+ * @author Mathilde This class take the DNA sequence and translates it into a protein sequence. The codon table is
+ *         shared: a codon is an index of 64 slots (2 bits per nucleotide), the translation is written in a char array.
  */
 public class Translator {
     static Logger logger = Logger.getLogger(Translator.class);
+    private static final char UNKNOWN_AMINO_ACID = 'X'; //'X' for not know codon
+    // for each char: A=0, C=1, G=2, T=3, -1 otherwise
+    private static final byte[] NUCLEOTIDE_CODES = new byte[128];
+    private static final char[] CODON_TABLE = new char[64];
+
+    static {
+        Arrays.fill(NUCLEOTIDE_CODES, (byte) -1);
+        NUCLEOTIDE_CODES['A'] = 0;
+        NUCLEOTIDE_CODES['C'] = 1;
+        NUCLEOTIDE_CODES['G'] = 2;
+        NUCLEOTIDE_CODES['T'] = 3;
+        setCodon("ATT", 'I');
+        setCodon("ATC", 'I');
+        setCodon("ATA", 'I');
+        setCodon("CTT", 'L');
+        setCodon("CTC", 'L');
+        setCodon("CTA", 'L');
+        setCodon("CTG", 'L');
+        setCodon("TTA", 'L');
+        setCodon("TTG", 'L');
+        setCodon("GTT", 'V');
+        setCodon("GTC", 'V');
+        setCodon("GTA", 'V');
+        setCodon("GTG", 'V');
+        setCodon("TTT", 'F');
+        setCodon("TTC", 'F');
+        setCodon("ATG", 'M');
+        setCodon("TGT", 'C');
+        setCodon("TGC", 'C');
+        setCodon("GCT", 'A');
+        setCodon("GCC", 'A');
+        setCodon("GCA", 'A');
+        setCodon("GCG", 'A');
+        setCodon("GGT", 'G');
+        setCodon("GGC", 'G');
+        setCodon("GGA", 'G');
+        setCodon("GGG", 'G');
+        setCodon("CCT", 'P');
+        setCodon("CCC", 'P');
+        setCodon("CCA", 'P');
+        setCodon("CCG", 'P');
+        setCodon("ACT", 'T');
+        setCodon("ACA", 'T');
+        setCodon("ACG", 'T');
+        setCodon("ACC", 'T');
+        setCodon("TCT", 'S');
+        setCodon("TCC", 'S');
+        setCodon("TCA", 'S');
+        setCodon("TCG", 'S');
+        setCodon("AGT", 'S');
+        setCodon("AGC", 'S');
+        setCodon("TAT", 'Y');
+        setCodon("TAC", 'Y');
+        setCodon("TGG", 'W');
+        setCodon("CAA", 'Q');
+        setCodon("CAG", 'Q');
+        setCodon("AAT", 'N');
+        setCodon("AAC", 'N');
+        setCodon("CAT", 'H');
+        setCodon("CAC", 'H');
+        setCodon("GAA", 'E');
+        setCodon("GAG", 'E');
+        setCodon("GAT", 'D');
+        setCodon("GAC", 'D');
+        setCodon("AAA", 'K');
+        setCodon("AAG", 'K');
+        setCodon("CGT", 'R');
+        setCodon("CGC", 'R');
+        setCodon("CGA", 'R');
+        setCodon("CGG", 'R');
+        setCodon("AGA", 'R');
+        setCodon("AGG", 'R');
+        setCodon("TAA", '*'); // *=stop codon!
+        setCodon("TAG", '*'); // *=stop codon!
+        setCodon("TGA", '*'); // *=stop codon!
+    }
+
     private String dnaSequence;
     private String protSequence = "";
     private boolean isDNA;
-    private HashMap<String, String> codons = new HashMap<String, String>();
 
     public Translator(String dnaSequence, boolean isDNA) {
         setDNA(isDNA);
         this.dnaSequence = dnaSequence;
+        protSequence = translate(dnaSequence, isDNA);
+    }
+
+    private static void setCodon(String codon, char aminoAcid) {
+        CODON_TABLE[getCodonIndex(codon.charAt(0), codon.charAt(1), codon.charAt(2))] = aminoAcid;
+    }
+
+    /*
+     * Index of the codon in the table (0 to 63), -1 if one of the nucleotides is not A/C/G/T
+     */
+    public static int getCodonIndex(char nuc1, char nuc2, char nuc3) {
+        if (nuc1 >= 128 || nuc2 >= 128 || nuc3 >= 128) {
+            return -1;
+        }
+        int code1 = NUCLEOTIDE_CODES[nuc1];
+        int code2 = NUCLEOTIDE_CODES[nuc2];
+        int code3 = NUCLEOTIDE_CODES[nuc3];
+        if ((code1 | code2 | code3) < 0) {
+            return -1;
+        }
+        return (code1 << 4) | (code2 << 2) | code3;
+    }
+
+    /*
+     * The amino acid of a codon index (see getCodonIndex)
+     */
+    public static char getAminoAcid(int codonIndex) {
+        return CODON_TABLE[codonIndex];
+    }
+
+    public static char translateCodon(char nuc1, char nuc2, char nuc3) {
+        int codonIndex = getCodonIndex(nuc1, nuc2, nuc3);
+        if (codonIndex >= 0) {
+            return CODON_TABLE[codonIndex];
+        }
+        if (nuc1 == '-' && nuc2 == '-' && nuc3 == '-') {
+            return '-'; // DELETION
+        }
+        return UNKNOWN_AMINO_ACID;
+    }
+
+    /*
+     * Translate a DNA sequence (the last nucleotides which are not a full codon are ignored). A protein sequence is
+     * given back as it is
+     */
+    public static String translate(String dnaSequence, boolean isDNA) {
         if (!isDNA) {
-            protSequence = dnaSequence;
-        } else {
-            setCodonsTable();
-            //bug fixed the 12.09.20
-            if (dnaSequence != null) {
-                translate();
-            }
+            return dnaSequence;
+        }
+        //bug fixed the 12.09.20
+        if (dnaSequence == null) {
+            return "";
         }
+        return new String(translate(dnaSequence, new char[dnaSequence.length() / 3]));
     }
 
-    private void translate(){
-        char[] nuc = dnaSequence.toCharArray();
-        String codon = "";
-        int nucleotide = 0;
-        for (int i = 0; i < nuc.length; i++) {
-            nucleotide++;
-            if (nucleotide == 1 || nucleotide == 2 || nucleotide == 3) {
-                codon = codon.concat(String.valueOf(nuc[i]));
+    /*
+     * Translate many DNA sequences, the same buffer is used for all of them
+     */
+    public static String[] translate(String[] dnaSequences) {
+        String[] proteinSequences = new String[dnaSequences.length];
+        char[] buffer = new char[0];
+        for (int s = 0; s < dnaSequences.length; s++) {
+            String dnaSequence = dnaSequences[s];
+            if (dnaSequence == null) {
+                proteinSequences[s] = "";
+                continue;
             }
-            if (nucleotide == 3) {
-                // logger.debug("CODON is "+codon);
-                String aa = codons.get(codon);
-                if (aa == null) {
-                    aa = "X"; //'X' for not know codon
-                }
-                protSequence = protSequence.concat(aa);
-                nucleotide = 0;
-                codon = "";
+            int length = dnaSequence.length() / 3;
+            if (buffer.length < length) {
+                buffer = new char[length];
             }
+            translate(dnaSequence, buffer);
+            proteinSequences[s] = new String(buffer, 0, length);
         }
+        return proteinSequences;
     }
 
-    private void setCodonsTable() {
-        codons.put("ATT", "I");
-        codons.put("ATC", "I");
-        codons.put("ATA", "I");
-        codons.put("CTT", "L");
-        codons.put("CTC", "L");
-        codons.put("CTA", "L");
-        codons.put("CTG", "L");
-        codons.put("TTA", "L");
-        codons.put("TTG", "L");
-        codons.put("GTT", "V");
-        codons.put("GTC", "V");
-        codons.put("GTA", "V");
-        codons.put("GTG", "V");
-        codons.put("TTT", "F");
-        codons.put("TTC", "F");
-        codons.put("ATG", "M");
-        codons.put("TGT", "C");
-        codons.put("TGC", "C");
-        codons.put("GCT", "A");
-        codons.put("GCC", "A");
-        codons.put("GCA", "A");
-        codons.put("GCG", "A");
-        codons.put("GGT", "G");
-        codons.put("GGC", "G");
-        codons.put("GGA", "G");
-        codons.put("GGG", "G");
-        codons.put("CCT", "P");
-        codons.put("CCC", "P");
-        codons.put("CCA", "P");
-        codons.put("CCG", "P");
-        codons.put("ACT", "T");
-        codons.put("ACA", "T");
-        codons.put("ACG", "T");
-        codons.put("ACC", "T");
-        codons.put("TCT", "S");
-        codons.put("TCC", "S");
-        codons.put("TCA", "S");
-        codons.put("TCG", "S");
-        codons.put("AGT", "S");
-        codons.put("AGC", "S");
-        codons.put("TAT", "Y");
-        codons.put("TAC", "Y");
-        codons.put("TGG", "W");
-        codons.put("CAA", "Q");
-        codons.put("CAG", "Q");
-        codons.put("AAT", "N");
-        codons.put("AAC", "N");
-        codons.put("CAT", "H");
-        codons.put("CAC", "H");
-        codons.put("GAA", "E");
-        codons.put("GAG", "E");
-        codons.put("GAT", "D");
-        codons.put("GAC", "D");
-        codons.put("AAA", "K");
-        codons.put("AAG", "K");
-        codons.put("CGT", "R");
-        codons.put("CGC", "R");
-        codons.put("CGA", "R");
-        codons.put("CGG", "R");
-        codons.put("AGA", "R");
-        codons.put("AGG", "R");
-        codons.put("TAA", "*"); // *=stop codon!
-        codons.put("TAG", "*"); // *=stop codon!
-        codons.put("TGA", "*"); // *=stop codon!
-        codons.put("---", "-"); // DELETION
+    /*
+     * Write the translation in the protein array, which must have a length of at least dnaSequence.length()/3
+     */
+    public static char[] translate(CharSequence dnaSequence, char[] protein) {
+        int codonNumber = dnaSequence.length() / 3;
+        for (int c = 0, i = 0; c < codonNumber; c++, i += 3) {
+            protein[c] = translateCodon(dnaSequence.charAt(i), dnaSequence.charAt(i + 1), dnaSequence.charAt(i + 2));
+        }
+        return protein;
     }
 
     public String getProteinSequence() {